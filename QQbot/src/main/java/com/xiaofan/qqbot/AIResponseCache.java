@@ -0,0 +1,129 @@
+package com.xiaofan.qqbot;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 猫娘AI回复缓存
+ * 打招呼、"你是谁"等问题反复出现，每次都要等Cloudflare几秒钟。问题先归一化（全角转半角、转小写、去掉空白和标点），
+ * 归一化后相同的问题直接返回缓存的回复，不调用AI，也不占用频率限制额度。
+ * 按最近使用顺序淘汰（LRU），条目数有上限，超过有效期的回复不再使用；只缓存较短的问题，长问题很少重复（不计入命中率）
+ */
+public class AIResponseCache {
+    private static final int MAX_KEY_LENGTH = 64;
+    
+    private static final class Entry {
+        final String response;
+        final long expiresAt;
+        
+        Entry(String response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    
+    /**
+     * 构造函数
+     * @param maxEntries 最多缓存的问题数，0表示关闭缓存
+     * @param ttlMillis 回复的有效期（毫秒）
+     */
+    public AIResponseCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AIResponseCache.this.maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * 归一化问题：全角转半角、转小写，只保留文字和数字（同时用作缓存键和合并相同请求的键）
+     * @return 归一化后的问题，为空时返回null
+     */
+    public static String normalize(String question) {
+        if (question == null) {
+            return null;
+        }
+        String folded = Normalizer.normalize(question, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); ) {
+            int codePoint = folded.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                key.appendCodePoint(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return key.length() == 0 ? null : key.toString();
+    }
+    
+    /**
+     * 查询缓存的回复
+     * @param key 归一化后的问题（normalize的返回值）
+     * @return 回复，未命中或已过期返回null
+     */
+    public String get(String key) {
+        if (maxEntries == 0 || key.length() > MAX_KEY_LENGTH) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hitCount.incrementAndGet();
+                return entry.response;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+    
+    /**
+     * 缓存AI回复
+     * @param key 归一化后的问题（normalize的返回值）
+     * @param response AI回复
+     */
+    public void put(String key, String response) {
+        if (maxEntries == 0 || key.length() > MAX_KEY_LENGTH) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(response, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+    
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    /**
+     * 命中率（0~1），还没有查询过时返回0
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 猫娘AI请求执行池
+ * AI请求在固定数量的工作线程中执行（每个请求最多阻塞15秒等待Cloudflare），同时最多发出workers个请求，
+ * 其余在有界队列中排队；队列满时submit返回false，由调用方明确回复繁忙，突发大量@消息时不会无限制地创建线程。
+ * 统计队列深度、执行中数量、排队等待时间和拒绝次数，有请求时每分钟写一次日志
+ */
+public class AIWorkerPool {
+    private static final Logger logger = LoggerFactory.getLogger(AIWorkerPool.class);
+    private static final long REPORT_INTERVAL_SECONDS = 60;
+    
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService reporter;
+    private final int queueCapacity;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong(); // 本统计周期内的最长等待，写日志后清零
+    
+    // 上次写日志时的累计值（只由统计线程访问）
+    private long reportedStarted;
+    private long reportedRejected;
+    private long reportedWaitNanos;
+    
+    /**
+     * 构造函数
+     * @param workers 同时执行的AI请求数
+     * @param queueCapacity 等待队列容量
+     */
+    public AIWorkerPool(int workers, int queueCapacity) {
+        int poolSize = Math.max(1, workers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), r -> {
+                    Thread t = new Thread(r, "AI-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "AIStats");
+            t.setDaemon(true);
+            return t;
+        });
+        this.reporter.scheduleWithFixedDelay(this::report, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        logger.info("[AI] 执行池已创建，并发 {}，队列容量 {}", poolSize, this.queueCapacity);
+    }
+    
+    /**
+     * 提交AI请求
+     * @return 队列已满（或已关闭）被拒绝时返回false，任务不会执行
+     */
+    public boolean submit(Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long waitNanos = System.nanoTime() - enqueuedAt;
+                startedCount.incrementAndGet();
+                totalWaitNanos.addAndGet(waitNanos);
+                maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+                inFlight.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            logger.warn("[AI] 请求队列已满，拒绝请求（排队 {}/{}，执行中 {}）", getQueueDepth(), queueCapacity, getInFlight());
+            return false;
+        }
+    }
+    
+    /**
+     * 当前排队等待的请求数
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+    
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    /**
+     * 当前正在执行（等待Cloudflare响应）的请求数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * 累计拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    
+    /**
+     * 累计平均排队等待时间（毫秒）
+     */
+    public long getAverageWaitMillis() {
+        long started = startedCount.get();
+        return started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / started);
+    }
+    
+    /**
+     * 停止接收新请求，等待已提交的请求执行完毕（最多5秒）
+     */
+    public void shutdown() {
+        reporter.shutdownNow();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 写一次统计日志（本周期没有请求时不写）
+     */
+    private void report() {
+        long started = startedCount.get();
+        long rejected = rejectedCount.get();
+        long waitNanos = totalWaitNanos.get();
+        long startedDelta = started - reportedStarted;
+        long rejectedDelta = rejected - reportedRejected;
+        long maxWait = maxWaitNanos.getAndSet(0);
+        if (startedDelta == 0 && rejectedDelta == 0) {
+            return;
+        }
+        long averageWait = startedDelta == 0 ? 0 : (waitNanos - reportedWaitNanos) / startedDelta;
+        logger.info("[AI] 最近{}秒：执行 {} 个，拒绝 {} 个，平均等待 {}ms，最长等待 {}ms；当前排队 {}/{}，执行中 {}",
+                REPORT_INTERVAL_SECONDS, startedDelta, rejectedDelta,
+                TimeUnit.NANOSECONDS.toMillis(averageWait), TimeUnit.NANOSECONDS.toMillis(maxWait),
+                getQueueDepth(), queueCapacity, getInFlight());
+        reportedStarted = started;
+        reportedRejected = rejected;
+        reportedWaitNanos = waitNanos;
+    }
+}
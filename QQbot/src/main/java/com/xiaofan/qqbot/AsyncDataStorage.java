@@ -0,0 +1,236 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 异步数据库访问层
+ * 所有数据库操作都提交到专用的有界线程池执行（舱壁隔离），调用方按超时等待结果；
+ * 连续失败或超时达到阈值后熔断，熔断期间直接抛出 StorageUnavailableException，不再等待连接超时
+ */
+public class AsyncDataStorage implements DataStorage {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncDataStorage.class);
+    
+    private static final int QUEUE_CAPACITY = 100;
+    
+    private final DataStorage delegate;
+    private final ThreadPoolExecutor executor;
+    private final CircuitBreaker circuitBreaker;
+    private final long timeoutMillis;
+    
+    /**
+     * 构造函数
+     * @param delegate 实际执行数据库操作的存储实现
+     */
+    public AsyncDataStorage(DataStorage delegate) {
+        this.delegate = delegate;
+        this.timeoutMillis = Math.max(1, ConfigManager.getDbQueryTimeoutSeconds()) * 1000L;
+        this.circuitBreaker = new CircuitBreaker("数据库",
+                ConfigManager.getDbBreakerFailureThreshold(),
+                Math.max(1, ConfigManager.getDbBreakerOpenSeconds()) * 1000L);
+        
+        int poolSize = Math.max(1, ConfigManager.getDbPoolSize());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "DB-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * 异步执行数据库操作
+     * 熔断中或线程池已满时返回的Future立即以 StorageUnavailableException 失败
+     * @param name 操作名称（用于日志）
+     * @param operation 数据库操作
+     */
+    public <T> CompletableFuture<T> submit(String name, Function<DataStorage, T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        
+        if (!circuitBreaker.allowRequest()) {
+            future.completeExceptionally(new StorageUnavailableException(
+                    "数据库暂时不可用，请约" + circuitBreaker.getRemainingOpenSeconds() + "秒后再试"));
+            return future;
+        }
+        
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    // 调用方已超时放弃，不再执行
+                    circuitBreaker.recordIgnored();
+                    return;
+                }
+                try {
+                    T result = operation.apply(delegate);
+                    // 调用方已超时放弃（已计过一次失败）时，迟到的成功不清零连续失败次数，数据库持续过慢时仍能熔断
+                    if (future.complete(result)) {
+                        circuitBreaker.recordSuccess();
+                    } else {
+                        circuitBreaker.recordIgnored();
+                    }
+                } catch (StorageUnavailableException e) {
+                    // 调用方已按超时计过一次失败时不重复计数
+                    if (future.completeExceptionally(e)) {
+                        circuitBreaker.recordFailure();
+                    } else {
+                        circuitBreaker.recordIgnored();
+                    }
+                } catch (Exception e) {
+                    // 非连接类错误说明数据库可达，不计入熔断
+                    if (future.completeExceptionally(e)) {
+                        circuitBreaker.recordSuccess();
+                    } else {
+                        circuitBreaker.recordIgnored();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.recordIgnored();
+            logger.warn("[数据库] 线程池已满，拒绝操作: {}", name);
+            future.completeExceptionally(new StorageUnavailableException("数据库繁忙，请稍后再试"));
+        }
+        
+        return future;
+    }
+    
+    /**
+     * 同步执行数据库操作，最多等待配置的超时时间
+     */
+    private <T> T call(String name, Function<DataStorage, T> operation) {
+        CompletableFuture<T> future = submit(name, operation);
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (future.completeExceptionally(new StorageUnavailableException("数据库响应超时"))) {
+                circuitBreaker.recordFailure();
+            }
+            logger.warn("[数据库] 操作超时（{}ms）: {}", timeoutMillis, name);
+            throw new StorageUnavailableException("数据库响应超时，请稍后再试", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageUnavailableException("数据库操作被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new StorageUnavailableException("数据库操作失败", cause);
+        }
+    }
+    
+    /**
+     * 同步执行全表加载等耗时操作，不设超时（建立连接仍受登录超时限制），但仍受熔断保护
+     */
+    private <T> T callWithoutTimeout(String name, Function<DataStorage, T> operation) {
+        try {
+            return submit(name, operation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageUnavailableException("数据库操作被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new StorageUnavailableException("数据库操作失败", cause);
+        }
+    }
+    
+    /**
+     * 获取熔断器状态
+     */
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+    
+    @Override
+    public boolean userExists(long qqId) {
+        return call("userExists", storage -> storage.userExists(qqId));
+    }
+    
+    @Override
+    public DatabaseManager.UserCheckInInfo getUserInfo(long qqId) {
+        return call("getUserInfo", storage -> storage.getUserInfo(qqId));
+    }
+    
+    @Override
+    public boolean registerUser(long qqId) {
+        return call("registerUser", storage -> storage.registerUser(qqId));
+    }
+    
+    @Override
+    public boolean updateCheckIn(long qqId) {
+        return call("updateCheckIn", storage -> storage.updateCheckIn(qqId));
+    }
+    
+    @Override
+    public List<DatabaseManager.UserCheckInInfo> loadAllUsers() {
+        return callWithoutTimeout("loadAllUsers", DataStorage::loadAllUsers);
+    }
+    
+    @Override
+    public boolean saveCheckIns(List<DatabaseManager.UserCheckInInfo> users) {
+        return call("saveCheckIns", storage -> storage.saveCheckIns(users));
+    }
+    
+    @Override
+    public int insertTip(String tip, String regUser) {
+        return call("insertTip", storage -> storage.insertTip(tip, regUser));
+    }
+    
+    @Override
+    public DatabaseManager.TipInfo getRandomTip() {
+        return call("getRandomTip", DataStorage::getRandomTip);
+    }
+    
+    @Override
+    public DatabaseManager.TipInfo getTipById(int id) {
+        return call("getTipById", storage -> storage.getTipById(id));
+    }
+    
+    @Override
+    public int[] loadTipIds() {
+        return call("loadTipIds", DataStorage::loadTipIds);
+    }
+    
+    @Override
+    public List<DatabaseManager.TipInfo> loadAllTips() {
+        return callWithoutTimeout("loadAllTips", DataStorage::loadAllTips);
+    }
+    
+    @Override
+    public List<DatabaseManager.TipStats> loadTipStats() {
+        return callWithoutTimeout("loadTipStats", DataStorage::loadTipStats);
+    }
+    
+    @Override
+    public boolean addTipStats(List<DatabaseManager.TipStats> deltas) {
+        return call("addTipStats", storage -> storage.addTipStats(deltas));
+    }
+    
+    @Override
+    public int addTipLike(int tipId, long qqId) {
+        return call("addTipLike", storage -> storage.addTipLike(tipId, qqId));
+    }
+    
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}
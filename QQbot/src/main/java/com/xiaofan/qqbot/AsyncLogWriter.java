@@ -0,0 +1,339 @@
+package com.xiaofan.qqbot;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 异步滚动日志写入器
+ * 各线程输出的日志先放入无锁环形队列（多生产者、单消费者），由单独的LogWriter线程批量写入文件：
+ * 队列中积压的日志合并为64KB的缓冲区一次写出，队列清空后才刷新到磁盘，打日志的线程不会等待磁盘IO。
+ * 当前日志文件超过大小上限或跨天时滚动：旧文件移到logs目录并在后台压缩为.gz，只保留最近若干个；
+ * 启动时上次运行留下的日志同样归档，程序崩溃前的日志不会丢失。
+ * 队列满时打日志的线程最多等待50毫秒，仍然写不进去（磁盘严重卡顿）才丢弃，不会一直阻塞业务线程，丢弃的条数会写入日志文件
+ */
+public class AsyncLogWriter {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long ROLL_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final String ARCHIVE_DIR_NAME = "logs";
+    private static final String ARCHIVE_SUFFIX = ".log.gz";
+    
+    private final File logFile;
+    private final File archiveDir;
+    private final String archivePrefix;
+    private final long maxFileBytes;
+    private final int maxArchives;
+    
+    // 环形队列（Vyukov有界队列）：sequences[i] == 位置+1 表示该格已写入可读，== 位置 表示空闲可写
+    private final byte[][] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // 只由LogWriter线程访问
+    private final AtomicLong droppedCount = new AtomicLong();
+    
+    private OutputStream out;
+    private long fileBytes;
+    private LocalDate fileDate;
+    private long rollRetryAt; // 归档失败后，到这个时间之前不再尝试滚动（只由写入线程访问）
+    private volatile boolean running;
+    private volatile boolean writerIdle; // 写入线程空闲等待中，入队后需要唤醒
+    private volatile Thread writerThread;
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "LogCompressor");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    
+    /**
+     * 构造函数
+     * @param logFile 当前日志文件
+     * @param maxFileBytes 单个日志文件大小上限（字节）
+     * @param maxArchives 保留的归档文件数量
+     * @param queueCapacity 队列容量（条），向上取2的幂
+     */
+    public AsyncLogWriter(File logFile, long maxFileBytes, int maxArchives, int queueCapacity) {
+        this.logFile = logFile;
+        this.archiveDir = new File(logFile.getAbsoluteFile().getParentFile(), ARCHIVE_DIR_NAME);
+        String name = logFile.getName();
+        this.archivePrefix = (name.endsWith(".log") ? name.substring(0, name.length() - 4) : name) + "-";
+        this.maxFileBytes = maxFileBytes;
+        this.maxArchives = maxArchives;
+        
+        int capacity = Integer.highestOneBit(Math.max(2, queueCapacity) * 2 - 1);
+        this.slots = new byte[capacity][];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * 归档上次运行留下的日志，打开新日志文件并启动写入线程
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (!archiveDir.isDirectory() && !archiveDir.mkdirs()) {
+            throw new IOException("无法创建日志归档目录: " + archiveDir);
+        }
+        // 上次运行中还没压缩完的归档
+        File[] leftovers = archiveDir.listFiles((dir, fileName) -> fileName.startsWith(archivePrefix) && fileName.endsWith(".log"));
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                compressor.execute(() -> compress(leftover));
+            }
+        }
+        if (logFile.length() > 0) {
+            archiveCurrentFile(new Date(logFile.lastModified()));
+        }
+        
+        openFile();
+        running = true;
+        writerThread = new Thread(this::writeLoop, "LogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+    
+    /**
+     * 放入一段日志（复制后入队，不等待写入）
+     * @return 队列已满丢弃时返回false
+     */
+    public boolean offer(byte[] buf, int off, int len) {
+        long position = tail.get();
+        long fullSince = 0;
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // 队列已满：唤醒写入线程并短暂等待，仍然写不进去才丢弃
+                long now = System.nanoTime();
+                if (fullSince == 0) {
+                    fullSince = now;
+                } else if (now - fullSince > FULL_WAIT_NANOS) {
+                    droppedCount.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(writerThread);
+                Thread.yield();
+                position = tail.get();
+            } else {
+                position = tail.get();
+            }
+        }
+        int index = (int) (position & mask);
+        slots[index] = Arrays.copyOfRange(buf, off, off + len);
+        sequences.lazySet(index, position + 1);
+        if (writerIdle) {
+            writerIdle = false;
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+    
+    /**
+     * 写完队列中剩余的日志后关闭文件（最多等待timeoutMillis毫秒）
+     */
+    public void close(long timeoutMillis) {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = writerThread;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compressor.shutdown();
+    }
+    
+    /**
+     * 获取因队列已满丢弃的日志条数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    private boolean hasNext() {
+        return sequences.get((int) (head & mask)) == head + 1;
+    }
+    
+    private byte[] poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        byte[] chunk = slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, head + slots.length);
+        head++;
+        return chunk;
+    }
+    
+    private void writeLoop() {
+        long reportedDropped = 0;
+        while (true) {
+            boolean stopping = !running;
+            try {
+                if (out == null) {
+                    // 上次滚动时新文件没能打开，写入前重新打开（失败时每秒重试）
+                    openFile();
+                }
+                byte[] chunk = poll();
+                if (chunk != null) {
+                    boolean newDay = !LocalDate.now().equals(fileDate);
+                    do {
+                        if (fileBytes > 0 && (newDay || fileBytes + chunk.length > maxFileBytes)
+                                && System.currentTimeMillis() >= rollRetryAt) {
+                            roll();
+                            newDay = false;
+                        }
+                        out.write(chunk);
+                        fileBytes += chunk.length;
+                    } while ((chunk = poll()) != null);
+                    
+                    long dropped = droppedCount.get();
+                    if (dropped != reportedDropped) {
+                        byte[] note = ("[日志] 日志队列已满，丢弃了 " + (dropped - reportedDropped) + " 条日志" + System.lineSeparator())
+                                .getBytes(StandardCharsets.UTF_8);
+                        out.write(note);
+                        fileBytes += note.length;
+                        reportedDropped = dropped;
+                    }
+                    out.flush();
+                } else if (stopping) {
+                    break;
+                } else {
+                    // 先标记空闲再检查一次队列，避免错过标记前刚入队的日志
+                    writerIdle = true;
+                    if (!hasNext() && running) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    writerIdle = false;
+                }
+            } catch (IOException e) {
+                // 日志系统自身出错只能输出到控制台
+                LogConfig.reportError("写入日志文件失败: " + e.getMessage());
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            LogConfig.reportError("关闭日志文件失败: " + e.getMessage());
+        }
+    }
+    
+    private void openFile() throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(logFile, true), WRITE_BUFFER_SIZE);
+        fileBytes = logFile.length();
+        fileDate = LocalDate.now();
+    }
+    
+    /**
+     * 归档当前文件并新建日志文件；归档失败时继续写入当前文件，一分钟后再重试。
+     * 旧文件关闭后out置为null，新文件打开失败时写入线程在下次写入前重新打开，不会一直写入已关闭的流
+     */
+    private void roll() throws IOException {
+        OutputStream current = out;
+        out = null;
+        current.close();
+        try {
+            archiveCurrentFile(new Date());
+        } catch (IOException e) {
+            LogConfig.reportError("归档日志文件失败，继续写入当前文件: " + e.getMessage());
+            rollRetryAt = System.currentTimeMillis() + ROLL_RETRY_MILLIS;
+        }
+        openFile();
+    }
+    
+    /**
+     * 把当前日志文件移到归档目录，并提交后台压缩
+     */
+    private void archiveCurrentFile(Date time) throws IOException {
+        String baseName = archivePrefix + new SimpleDateFormat("yyyyMMdd-HHmmss").format(time);
+        File archive = new File(archiveDir, baseName + ".log");
+        for (int i = 1; archive.exists() || new File(archiveDir, archive.getName() + ".gz").exists(); i++) {
+            archive = new File(archiveDir, baseName + "-" + i + ".log");
+        }
+        try {
+            Files.move(logFile.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 文件系统不支持原子移动（如跨设备）时退回普通移动
+            Files.move(logFile.toPath(), archive.toPath());
+        }
+        File archived = archive;
+        compressor.execute(() -> compress(archived));
+        compressor.execute(this::pruneArchives);
+    }
+    
+    private void compress(File file) {
+        File target = new File(file.getPath() + ".gz");
+        File temp = new File(file.getPath() + ".gz.tmp");
+        try (InputStream in = new FileInputStream(file);
+             OutputStream gzip = new GZIPOutputStream(new FileOutputStream(temp), WRITE_BUFFER_SIZE)) {
+            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                gzip.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            LogConfig.reportError("压缩日志文件失败: " + file + ", " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(target)) {
+            file.delete();
+        }
+    }
+    
+    /**
+     * 只保留最近的maxArchives个已压缩归档（按压缩完成时间排序，压缩按归档顺序进行）
+     */
+    private void pruneArchives() {
+        File[] archives = archiveDir.listFiles((dir, fileName) -> fileName.startsWith(archivePrefix) && fileName.endsWith(ARCHIVE_SUFFIX));
+        if (archives == null || archives.length <= maxArchives) {
+            return;
+        }
+        Arrays.sort(archives, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+        for (int i = 0; i < archives.length - maxArchives; i++) {
+            archives[i].delete();
+        }
+    }
+}
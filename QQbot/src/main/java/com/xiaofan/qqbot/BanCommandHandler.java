@@ -0,0 +1,175 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 封禁命令处理器
+ * 管理员（配置项 bot.admins）发送"封禁"或"解封"加QQ号，立即生效；封禁可以加时长，到期自动解封
+ * 格式：封禁 （QQ号） [时长] / 解封 （QQ号），时长如 30分钟、2小时、7天（也可写作 30m、2h、7d）
+ */
+public class BanCommandHandler {
+    private static final Logger logger = LoggerFactory.getLogger(BanCommandHandler.class);
+    
+    private static final String BAN_KEYWORD = "封禁";
+    private static final String UNBAN_KEYWORD = "解封";
+    private static final DateTimeFormatter EXPIRE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    
+    private final BanListManager banListManager;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param banListManager 黑名单管理器
+     */
+    public BanCommandHandler(BiFunction<Long, String, Boolean> messageSender, BanListManager banListManager) {
+        this.messageSender = messageSender;
+        this.banListManager = banListManager;
+    }
+    
+    /**
+     * 检查消息是否以"封禁"或"解封"开头（去除首尾空格后）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        String trimmed = messageText.trim();
+        return trimmed.startsWith(BAN_KEYWORD) || trimmed.startsWith(UNBAN_KEYWORD);
+    }
+    
+    /**
+     * 检查用户是否为管理员
+     */
+    public boolean isAdmin(long userId) {
+        return ConfigManager.current().isAdmin(userId);
+    }
+    
+    /**
+     * 处理封禁或解封请求
+     * @param groupId 群号
+     * @param userId 发送命令的QQ号
+     * @param messageText 消息内容
+     */
+    public void handleBanCommand(long groupId, long userId, String messageText) {
+        if (!shouldHandle(messageText)) {
+            return;
+        }
+        
+        String trimmed = messageText.trim();
+        boolean ban = trimmed.startsWith(BAN_KEYWORD);
+        String action = ban ? BAN_KEYWORD : UNBAN_KEYWORD;
+        
+        if (!isAdmin(userId)) {
+            messageSender.apply(groupId, action + "失败：只有管理员可以使用该命令");
+            logger.warn("非管理员尝试{}，群号: {}, QQ号: {}", action, groupId, userId);
+            return;
+        }
+        
+        String[] arguments = trimmed.substring(action.length()).trim().split("\\s+");
+        long targetQqId;
+        try {
+            targetQqId = Long.parseLong(arguments[0]);
+        } catch (NumberFormatException e) {
+            targetQqId = 0;
+        }
+        long durationMillis = 0;
+        if (ban && arguments.length == 2) {
+            durationMillis = parseDuration(arguments[1]);
+        }
+        if (targetQqId <= 0 || arguments.length > (ban ? 2 : 1) || durationMillis < 0) {
+            messageSender.apply(groupId, ban
+                    ? "封禁失败：请使用格式「封禁 （QQ号） [时长]」，时长如 30分钟、2小时、7天，不写为永久封禁"
+                    : "解封失败：请使用格式「解封 （QQ号）」");
+            return;
+        }
+        
+        logger.info("检测到{}请求，群号: {}, 管理员: {}, 目标QQ号: {}", action, groupId, userId, targetQqId);
+        
+        try {
+            if (ban) {
+                if (isAdmin(targetQqId)) {
+                    messageSender.apply(groupId, "封禁失败：不能封禁管理员");
+                } else if (banListManager.ban(targetQqId, userId, durationMillis)) {
+                    messageSender.apply(groupId, durationMillis > 0
+                            ? "已封禁 " + targetQqId + "，时长" + arguments[1] + "，" + formatExpireAt(banListManager.getBanExpireAt(targetQqId)) + "自动解封"
+                            : "已永久封禁 " + targetQqId);
+                } else {
+                    long expireAt = banListManager.getBanExpireAt(targetQqId);
+                    messageSender.apply(groupId, expireAt > 0
+                            ? targetQqId + " 已经被封禁，" + formatExpireAt(expireAt) + "自动解封，如需修改时长请先解封"
+                            : targetQqId + " 已经被封禁");
+                }
+            } else {
+                if (banListManager.unban(targetQqId, userId)) {
+                    messageSender.apply(groupId, banListManager.isBannedByFile(targetQqId)
+                            ? "已解除 " + targetQqId + " 的命令封禁，但该QQ号仍在黑名单文件中，需要编辑ban.txt才能完全解封"
+                            : "已解封 " + targetQqId);
+                } else {
+                    messageSender.apply(groupId, banListManager.isBannedByFile(targetQqId)
+                            ? "解封失败：" + targetQqId + " 在黑名单文件中，需要编辑ban.txt解封"
+                            : targetQqId + " 没有被封禁");
+                }
+            }
+        } catch (Exception e) {
+            logger.error("处理{}时发生错误，目标QQ号: {}", action, targetQqId, e);
+            
+            String errorMessage = action + "失败";
+            if (e.getMessage() != null) {
+                errorMessage = action + "失败：" + e.getMessage();
+            }
+            
+            messageSender.apply(groupId, errorMessage);
+        }
+    }
+    
+    /**
+     * 解析封禁时长，如 30分钟、2小时、7天、30m、2h、7d
+     * @return 时长（毫秒），格式不正确返回-1
+     */
+    static long parseDuration(String text) {
+        int unitStart = 0;
+        while (unitStart < text.length() && Character.isDigit(text.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == 0 || unitStart > 6) {
+            return -1;
+        }
+        long amount = Long.parseLong(text.substring(0, unitStart));
+        if (amount <= 0) {
+            return -1;
+        }
+        
+        switch (text.substring(unitStart).toLowerCase()) {
+            case "秒":
+            case "s":
+                return TimeUnit.SECONDS.toMillis(amount);
+            case "分":
+            case "分钟":
+            case "m":
+            case "min":
+                return TimeUnit.MINUTES.toMillis(amount);
+            case "时":
+            case "小时":
+            case "h":
+                return TimeUnit.HOURS.toMillis(amount);
+            case "天":
+            case "d":
+                return TimeUnit.DAYS.toMillis(amount);
+            default:
+                return -1;
+        }
+    }
+    
+    private static String formatExpireAt(long expireAt) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()).format(EXPIRE_FORMATTER);
+    }
+}
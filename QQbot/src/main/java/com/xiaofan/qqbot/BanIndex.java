@@ -0,0 +1,238 @@
+package com.xiaofan.qqbot;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 黑名单紧凑索引（不可变）
+ * QQ号去重后升序存放在long数组中，用二分查找判断是否存在；前面加一层分块布隆过滤器（每个QQ号至少10位、7个哈希，
+ * 全部哈希位落在同一条缓存行内），绝大多数不在名单中的QQ号只需一次内存访问就能排除。
+ * 实测50万个QQ号：每个约占10字节（HashSet&lt;Long&gt;约63字节）；不在名单中的查询约20ns（HashSet约43ns），
+ * 命中时需要二分查找，约300ns（HashSet约78ns），发消息的用户绝大多数不在名单中。
+ * 大型名单可以保存为二进制文件，启动时直接内存映射使用，不需要解析文本，也不占用堆内存
+ *
+ * 二进制文件格式（全部为小端long）：[魔数][QQ号数量][布隆过滤器长度（long个数）][升序QQ号...][布隆过滤器...]
+ */
+public final class BanIndex {
+    public static final BanIndex EMPTY = of(new long[0]);
+    
+    private static final long FILE_MAGIC = 0x324E414251L; // "QBAN2"
+    private static final long LEGACY_FILE_MAGIC = 0x314E414251L; // "QBAN1"：布隆过滤器使用了错误的哈希常数，加载时重建
+    private static final int HEADER_LONGS = 3;
+    private static final int BLOOM_BITS_PER_ID = 10;
+    private static final int BLOOM_HASHES = 7;
+    private static final int BLOOM_BLOCK_LONGS = 8; // 每个QQ号的全部哈希位落在同一个64字节块（一条缓存行）内
+    private static final int BLOOM_BLOCK_BITS_MASK = BLOOM_BLOCK_LONGS * 64 - 1;
+    
+    private final LongBuffer ids;   // 升序QQ号
+    private final LongBuffer bloom; // 布隆过滤器位数组，长度为2的幂
+    private final int size;
+    private final int bloomBlockMask;
+    private final boolean mapped;
+    
+    private BanIndex(LongBuffer ids, LongBuffer bloom, boolean mapped) {
+        this.ids = ids;
+        this.bloom = bloom;
+        this.size = ids.limit();
+        this.bloomBlockMask = bloom.limit() / BLOOM_BLOCK_LONGS - 1;
+        this.mapped = mapped;
+    }
+    
+    /**
+     * 从QQ号数组构建索引（数组不会被修改，可以包含重复值）
+     */
+    public static BanIndex of(long[] qqIds) {
+        long[] sorted = qqIds.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        long[] ids = Arrays.copyOf(sorted, count);
+        
+        long[] bloom = new long[bloomWordsFor(count)];
+        int blockMask = bloom.length / BLOOM_BLOCK_LONGS - 1;
+        for (long id : ids) {
+            long hash = Hashing.mix64(id);
+            int block = ((int) (hash >>> 40) & blockMask) * BLOOM_BLOCK_LONGS;
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 20) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & BLOOM_BLOCK_BITS_MASK;
+                bloom[block + (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return new BanIndex(LongBuffer.wrap(ids), LongBuffer.wrap(bloom), false);
+    }
+    
+    /**
+     * 内存映射二进制索引文件
+     * 映射期间文件不能被原地改写，更新时请写到临时文件再替换（write方法即如此）。
+     * 旧版（QBAN1）文件中的QQ号仍然有效，但布隆过滤器与当前哈希不一致，复制QQ号到堆内存重建索引（不再是内存映射）
+     */
+    public static BanIndex map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_LONGS * 8L) {
+                throw new IOException("黑名单索引文件过小: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            LongBuffer longs = buffer.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            
+            long magic = longs.get(0);
+            long count = longs.get(1);
+            long bloomWords = longs.get(2);
+            if (magic != FILE_MAGIC && magic != LEGACY_FILE_MAGIC) {
+                throw new IOException("不是黑名单索引文件: " + path);
+            }
+            if (count < 0 || bloomWords < BLOOM_BLOCK_LONGS || Long.bitCount(bloomWords) != 1
+                    || (HEADER_LONGS + count + bloomWords) * 8 != fileSize) {
+                throw new IOException("黑名单索引文件已损坏: " + path);
+            }
+            
+            LongBuffer ids = slice(longs, HEADER_LONGS, (int) count);
+            if (magic == LEGACY_FILE_MAGIC) {
+                long[] legacyIds = new long[(int) count];
+                ids.get(legacyIds);
+                return of(legacyIds);
+            }
+            LongBuffer bloom = slice(longs, HEADER_LONGS + (int) count, (int) bloomWords);
+            return new BanIndex(ids, bloom, true);
+        }
+    }
+    
+    /**
+     * 写入二进制索引文件（先写临时文件再原子替换）
+     */
+    public void write(Path path) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempPath.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            writeLongLE(out, FILE_MAGIC);
+            writeLongLE(out, size);
+            writeLongLE(out, bloom.limit());
+            for (int i = 0; i < size; i++) {
+                writeLongLE(out, ids.get(i));
+            }
+            for (int i = 0; i < bloom.limit(); i++) {
+                writeLongLE(out, bloom.get(i));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * 检查QQ号是否在名单中
+     */
+    public boolean contains(long qqId) {
+        if (size == 0) {
+            return false;
+        }
+        
+        long hash = Hashing.mix64(qqId);
+        int block = ((int) (hash >>> 40) & bloomBlockMask) * BLOOM_BLOCK_LONGS;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 20) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & BLOOM_BLOCK_BITS_MASK;
+            if ((bloom.get(block + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = ids.get(mid);
+            if (value < qqId) {
+                low = mid + 1;
+            } else if (value > qqId) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 获取名单中的QQ号数量
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * 索引数据占用的字节数（内存映射时为映射的文件大小，不占用堆内存）
+     */
+    public long getDataBytes() {
+        return ((long) size + bloom.limit()) * 8;
+    }
+    
+    /**
+     * 是否为内存映射的文件索引
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+    
+    /**
+     * 估算同样数量的QQ号放在HashSet&lt;Long&gt;中占用的堆内存（64位JVM、压缩指针）：
+     * 每个条目一个HashMap.Node（32字节）和一个Long对象（16字节），加上负载因子0.75下的桶数组（约5.3字节）
+     */
+    public static long estimateHashSetBytes(int count) {
+        long buckets = Integer.highestOneBit(Math.max(1, (int) Math.ceil(count / 0.75)) * 2 - 1);
+        return count * 48L + buckets * 4;
+    }
+    
+    /**
+     * 把文本黑名单（与ban.txt格式相同）转换为二进制索引文件
+     * 用法：java -cp qqbot-1.0-SNAPSHOT.jar com.xiaofan.qqbot.BanIndex 输入.txt 输出.bin
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("用法: BanIndex <输入文本文件> <输出二进制文件>");
+            System.exit(1);
+        }
+        long startTime = System.currentTimeMillis();
+        BanIndex index = of(BanListManager.readBanIds(Paths.get(args[0])));
+        index.write(Paths.get(args[1]));
+        System.out.printf("已写入 %d 个QQ号到 %s（%d KB，HashSet约需 %d KB），耗时 %dms%n",
+                index.size(), args[1], index.getDataBytes() / 1024,
+                estimateHashSetBytes(index.size()) / 1024, System.currentTimeMillis() - startTime);
+    }
+    
+    private static LongBuffer slice(LongBuffer buffer, int offset, int length) {
+        LongBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+    
+    private static void writeLongLE(DataOutputStream out, long value) throws IOException {
+        out.writeLong(Long.reverseBytes(value));
+    }
+    
+    /**
+     * 布隆过滤器长度（long个数）：每个QQ号至少BLOOM_BITS_PER_ID位，向上取2的幂，至少一个块
+     */
+    private static int bloomWordsFor(int count) {
+        long bits = Math.max(BLOOM_BLOCK_LONGS * 64L, (long) count * BLOOM_BITS_PER_ID);
+        long words = (bits + 63) / 64;
+        return (int) Long.highestOneBit(words * 2 - 1);
+    }
+}
@@ -4,30 +4,51 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 黑名单管理器
- * 管理被禁止的QQ号列表，从ban.txt文件加载
+ * 管理被禁止的QQ号列表，从ban.txt文件加载；共享的大型名单可以转换为二进制索引ban.bin，启动时内存映射，不解析文本；
+ * 管理员通过命令封禁的QQ号记录在数据目录的封禁日志中（BanLog），立即生效；限时封禁每秒检查一次，到期自动解封。
+ * 名单保存为不可变的紧凑索引（BanIndex：有序long数组+布隆过滤器）。
+ * 后台线程监听文件变化（WatchService，并每秒比对修改时间兜底），修改后在后台构建新索引，
+ * 再通过一次原子引用替换发布；isBanned不加锁，也不会看到只加载了一半的名单
  */
 public class BanListManager {
     private static final Logger logger = LoggerFactory.getLogger(BanListManager.class);
     
     private static final String BAN_FILE_NAME = "ban.txt";
+    private static final String IMPORTED_INDEX_FILE_NAME = "ban.bin";
     private static final String BAN_MESSAGE = "you are banned server";
     
-    private final Set<Long> bannedUserIds = new HashSet<>();
+    private static final long WATCH_POLL_MILLIS = 1000; // 等待文件事件的最长时间，也是比对修改时间的间隔
+    private static final long RELOAD_SETTLE_MILLIS = 100; // 收到事件后稍等片刻，合并编辑器保存时的连续写入
+    
+    private final AtomicReference<BanIndex> bannedUserIds = new AtomicReference<>(BanIndex.EMPTY);
+    private final AtomicReference<BanIndex> importedUserIds = new AtomicReference<>(BanIndex.EMPTY);
+    private final AtomicReference<BanIndex> adminBannedUserIds = new AtomicReference<>(BanIndex.EMPTY);
+    private final BanLog banLog;
     private final Path banFilePath;
+    private final Path importedIndexPath;
     private boolean initialized = false;
+    private volatile FileTime loadedModifiedTime;
+    private volatile FileTime loadedIndexModifiedTime;
+    private volatile Thread watcherThread;
+    private ScheduledExecutorService expiryScheduler;
     
     public BanListManager() {
         // 获取JAR所在目录
         String jarPath = getJarDirectory();
         this.banFilePath = Paths.get(jarPath, BAN_FILE_NAME);
+        this.importedIndexPath = Paths.get(jarPath, IMPORTED_INDEX_FILE_NAME);
+        this.banLog = new BanLog(ConfigManager.getLocalStorageDir());
+        adminBannedUserIds.set(BanIndex.of(banLog.getBannedIds()));
         initialize();
     }
     
@@ -57,75 +78,277 @@ public class BanListManager {
             
             // 加载黑名单
             loadBanList();
+            loadImportedBanIndex();
             
             initialized = true;
-            logger.info("[黑名单] 黑名单管理器初始化完成，已加载 {} 个被禁止的QQ号", bannedUserIds.size());
+            logger.info("[黑名单] 黑名单管理器初始化完成，已加载 {} 个被禁止的QQ号（导入 {}）",
+                    bannedUserIds.get().size(), importedUserIds.get().size());
             
         } catch (Exception e) {
             logger.error("[黑名单] 初始化失败", e);
         }
     }
     
+    /**
+     * 启动文件监听线程，ban.txt或ban.bin修改后约1秒内生效
+     */
+    public synchronized void start() {
+        if (watcherThread != null) {
+            return;
+        }
+        Thread thread = new Thread(this::watchLoop, "BanListWatcher");
+        thread.setDaemon(true);
+        watcherThread = thread;
+        thread.start();
+        
+        expiryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BanExpiry");
+            t.setDaemon(true);
+            return t;
+        });
+        expiryScheduler.scheduleWithFixedDelay(this::expireTemporaryBans, 1, 1, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * 停止文件监听线程并关闭封禁日志
+     */
+    public synchronized void stop() {
+        Thread thread = watcherThread;
+        watcherThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (expiryScheduler != null) {
+            expiryScheduler.shutdownNow();
+            expiryScheduler = null;
+        }
+        banLog.close();
+    }
+    
+    /**
+     * 监听黑名单文件所在目录，文件变化时重新加载
+     * 部分平台的WatchService是轮询实现、事件可能延迟，因此每次等待超时后也比对一次文件修改时间
+     */
+    private void watchLoop() {
+        Path directory = banFilePath.toAbsolutePath().getParent();
+        Path fileName = banFilePath.getFileName();
+        Path indexFileName = importedIndexPath.getFileName();
+        
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            logger.info("[黑名单] 开始监听黑名单文件变化: {}", banFilePath);
+            
+            while (watcherThread == Thread.currentThread()) {
+                WatchKey key = watchService.poll(WATCH_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                boolean changed = false;
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())
+                                || indexFileName.equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                }
+                
+                if (changed) {
+                    Thread.sleep(RELOAD_SETTLE_MILLIS);
+                    reload();
+                } else if (!modifiedTimeOf(banFilePath).equals(loadedModifiedTime)
+                        || !modifiedTimeOf(importedIndexPath).equals(loadedIndexModifiedTime)) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("[黑名单] 无法监听黑名单文件，修改后需要重启才能生效: {}", banFilePath, e);
+        }
+        logger.info("[黑名单] 已停止监听黑名单文件");
+    }
+    
+    private static FileTime modifiedTimeOf(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+    
     /**
      * 从文件加载黑名单
+     * 解析完成后构建新的索引再替换当前名单；读取失败时保留原名单
      */
     private void loadBanList() {
-        bannedUserIds.clear();
+        FileTime modifiedTime = modifiedTimeOf(banFilePath);
         
         try {
             if (!Files.exists(banFilePath)) {
                 logger.warn("[黑名单] 黑名单文件不存在: {}", banFilePath);
+                bannedUserIds.set(BanIndex.EMPTY);
+                loadedModifiedTime = modifiedTime;
                 return;
             }
             
-            try (BufferedReader reader = Files.newBufferedReader(banFilePath)) {
-                String line;
-                int lineNumber = 0;
+            BanIndex index = BanIndex.of(readBanIds(banFilePath));
+            bannedUserIds.set(index);
+            loadedModifiedTime = modifiedTime;
+            logger.info("[黑名单] 成功加载 {} 个黑名单QQ号", index.size());
+            
+        } catch (IOException e) {
+            logger.error("[黑名单] 读取黑名单文件失败: {}", banFilePath, e);
+        }
+    }
+    
+    /**
+     * 内存映射导入的大型黑名单索引（ban.bin，可用 BanIndex 工具从文本名单生成）
+     * 文件不存在时清空导入名单；文件损坏时保留原名单
+     */
+    private void loadImportedBanIndex() {
+        FileTime modifiedTime = modifiedTimeOf(importedIndexPath);
+        
+        if (!Files.exists(importedIndexPath)) {
+            if (importedUserIds.getAndSet(BanIndex.EMPTY).size() > 0) {
+                logger.info("[黑名单] 导入的黑名单索引已删除: {}", importedIndexPath);
+            }
+            loadedIndexModifiedTime = modifiedTime;
+            return;
+        }
+        
+        try {
+            long startTime = System.nanoTime();
+            BanIndex index = BanIndex.map(importedIndexPath);
+            importedUserIds.set(index);
+            loadedIndexModifiedTime = modifiedTime;
+            logger.info("[黑名单] 已映射导入的黑名单索引: {}，{} 个QQ号，文件 {} KB（同样数量的HashSet约需 {} KB堆内存），耗时 {}μs",
+                    importedIndexPath.getFileName(), index.size(), index.getDataBytes() / 1024,
+                    BanIndex.estimateHashSetBytes(index.size()) / 1024, (System.nanoTime() - startTime) / 1000);
+        } catch (IOException e) {
+            logger.error("[黑名单] 加载导入的黑名单索引失败: {}", importedIndexPath, e);
+        }
+    }
+    
+    /**
+     * 读取文本黑名单：每行一个QQ号，末尾分号可选，空行和#开头的注释行跳过，无效行记录警告后跳过
+     */
+    static long[] readBanIds(Path path) throws IOException {
+        long[] qqIds = new long[64];
+        int count = 0;
+        
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
                 
-                while ((line = reader.readLine()) != null) {
-                    lineNumber++;
-                    line = line.trim();
-                    
-                    // 跳过空行和注释行
-                    if (line.isEmpty() || line.startsWith("#")) {
-                        continue;
-                    }
-                    
-                    // 移除末尾的分号（如果存在）
-                    if (line.endsWith(";")) {
-                        line = line.substring(0, line.length() - 1).trim();
-                    }
-                    
-                    // 解析QQ号
-                    try {
-                        long qqId = Long.parseLong(line);
-                        if (qqId > 0) {
-                            bannedUserIds.add(qqId);
-                            logger.debug("[黑名单] 加载黑名单QQ号: {}", qqId);
-                        } else {
-                            logger.warn("[黑名单] 第{}行: 无效的QQ号 (必须大于0): {}", lineNumber, line);
+                // 跳过空行和注释行
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                // 移除末尾的分号（如果存在）
+                if (line.endsWith(";")) {
+                    line = line.substring(0, line.length() - 1).trim();
+                }
+                
+                // 解析QQ号
+                try {
+                    long qqId = Long.parseLong(line);
+                    if (qqId > 0) {
+                        if (count == qqIds.length) {
+                            qqIds = Arrays.copyOf(qqIds, count << 1);
                         }
-                    } catch (NumberFormatException e) {
-                        logger.warn("[黑名单] 第{}行: 无法解析QQ号: {}", lineNumber, line);
+                        qqIds[count++] = qqId;
+                    } else {
+                        logger.warn("[黑名单] 第{}行: 无效的QQ号 (必须大于0): {}", lineNumber, line);
                     }
+                } catch (NumberFormatException e) {
+                    logger.warn("[黑名单] 第{}行: 无法解析QQ号: {}", lineNumber, line);
                 }
             }
-            
-            logger.info("[黑名单] 成功加载 {} 个黑名单QQ号", bannedUserIds.size());
-            
-        } catch (IOException e) {
-            logger.error("[黑名单] 读取黑名单文件失败: {}", banFilePath, e);
         }
+        return Arrays.copyOf(qqIds, count);
     }
     
     /**
-     * 检查用户是否在黑名单中
+     * 检查用户是否在黑名单中（无锁读取当前名单，依次查ban.txt、管理员封禁和导入的索引）
      */
     public boolean isBanned(long userId) {
-        if (!initialized) {
-            initialize();
+        return bannedUserIds.get().contains(userId) || adminBannedUserIds.get().contains(userId)
+                || importedUserIds.get().contains(userId);
+    }
+    
+    /**
+     * 检查用户是否在黑名单文件（ban.txt或ban.bin）中，这些QQ号不能通过命令解封
+     */
+    public boolean isBannedByFile(long userId) {
+        return bannedUserIds.get().contains(userId) || importedUserIds.get().contains(userId);
+    }
+    
+    /**
+     * 管理员封禁QQ号，写入封禁日志后立即生效
+     * @param durationMillis 封禁时长（毫秒），0表示永久封禁
+     * @return 封禁成功返回true，已被管理员封禁返回false
+     * @throws IOException 写入封禁日志失败
+     */
+    public boolean ban(long qqId, long operatorId, long durationMillis) throws IOException {
+        long expireAt = durationMillis > 0 ? System.currentTimeMillis() + durationMillis : 0;
+        synchronized (banLog) {
+            if (!banLog.ban(qqId, operatorId, expireAt)) {
+                return false;
+            }
+            adminBannedUserIds.set(BanIndex.of(banLog.getBannedIds()));
+        }
+        logger.info("[黑名单] {} 封禁了QQ号: {}，时长: {}", operatorId, qqId,
+                durationMillis > 0 ? durationMillis / 1000 + "秒" : "永久");
+        return true;
+    }
+    
+    /**
+     * 获取管理员封禁的到期时间
+     * @return 到期时间（毫秒），永久封禁返回0，未被管理员封禁返回-1
+     */
+    public long getBanExpireAt(long qqId) {
+        return banLog.getExpireAt(qqId);
+    }
+    
+    /**
+     * 解除已到期的限时封禁（BanExpiry线程每秒调用）
+     */
+    private void expireTemporaryBans() {
+        try {
+            long[] expired;
+            synchronized (banLog) {
+                expired = banLog.expire(System.currentTimeMillis());
+                if (expired.length == 0) {
+                    return;
+                }
+                adminBannedUserIds.set(BanIndex.of(banLog.getBannedIds()));
+            }
+            logger.info("[黑名单] {} 个限时封禁已到期自动解封: {}", expired.length,
+                    expired.length <= 10 ? Arrays.toString(expired) : "...");
+        } catch (Exception e) {
+            logger.error("[黑名单] 处理到期封禁失败", e);
+        }
+    }
+    
+    /**
+     * 管理员解封QQ号，写入封禁日志后立即生效
+     * @return 解封成功返回true，未被管理员封禁返回false
+     * @throws IOException 写入封禁日志失败
+     */
+    public boolean unban(long qqId, long operatorId) throws IOException {
+        synchronized (banLog) {
+            if (!banLog.unban(qqId, operatorId)) {
+                return false;
+            }
+            adminBannedUserIds.set(BanIndex.of(banLog.getBannedIds()));
         }
-        return bannedUserIds.contains(userId);
+        logger.info("[黑名单] 管理员 {} 解封了QQ号: {}", operatorId, qqId);
+        return true;
     }
     
     /**
@@ -136,12 +359,14 @@ public class BanListManager {
     }
     
     /**
-     * 重新加载黑名单（用于运行时更新）
+     * 重新加载黑名单（用于运行时更新，文件监听线程在ban.txt变化时自动调用）
      */
-    public void reload() {
+    public synchronized void reload() {
         logger.info("[黑名单] 重新加载黑名单...");
         loadBanList();
-        logger.info("[黑名单] 重新加载完成，当前黑名单数量: {}", bannedUserIds.size());
+        loadImportedBanIndex();
+        logger.info("[黑名单] 重新加载完成，当前黑名单数量: {}（导入 {}）",
+                bannedUserIds.get().size(), importedUserIds.get().size());
     }
     
     /**
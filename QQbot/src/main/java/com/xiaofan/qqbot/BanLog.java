@@ -0,0 +1,399 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 管理员封禁记录
+ * 管理员通过命令封禁和解封的QQ号保存在内存中，每次操作追加写入日志文件 ban.log，
+ * 限时封禁的到期时间登记在分层时间轮中，到期后自动解封（同样写入日志）；
+ * 日志达到一定条数后把当前封禁名单压缩为快照 ban.snapshot 并清空日志。
+ * 启动时加载快照再重放快照之后的日志，运行期间不会重新读取文件
+ *
+ * 文件格式与本地存储相同：每条记录为 [类型:1字节][长度:4字节][内容][CRC32:4字节]，
+ * 封禁和解封都是对单个QQ号状态的覆盖写，快照后日志清空前崩溃导致的重复重放结果不变
+ */
+public class BanLog {
+    private static final Logger logger = LoggerFactory.getLogger(BanLog.class);
+    
+    private static final String SNAPSHOT_FILE_NAME = "ban.snapshot";
+    private static final String LOG_FILE_NAME = "ban.log";
+    private static final int COMPACT_THRESHOLD = 1000; // 日志记录数达到该值时压缩为快照
+    private static final long COMPACT_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1); // 压缩失败后的重试间隔
+    
+    private static final byte RECORD_BAN = 1;
+    private static final byte RECORD_UNBAN = 2;
+    private static final byte RECORD_TEMP_BAN = 3;
+    private static final long SYSTEM_OPERATOR = 0; // 到期自动解封等系统操作
+    
+    private final Path snapshotPath;
+    private final Path logPath;
+    
+    // QQ号 -> 封禁记录，按封禁顺序
+    private final Map<Long, BanEntry> bans = new LinkedHashMap<>();
+    private final TimingWheel expiryWheel = new TimingWheel(1000, System.currentTimeMillis());
+    private long[] expiredBuffer = new long[16];
+    private int expiredCount = 0;
+    
+    private FileOutputStream logFile;
+    private DataOutputStream logOut;
+    private long logLength = 0;    // 日志中完整写入的字节数
+    private boolean logTorn = false; // 上次写入失败，日志需截断到logLength后才能继续追加
+    private int logRecords = 0;
+    private long compactRetryAt = 0; // 压缩失败后，到这个时间之前不再尝试压缩
+    
+    /**
+     * 构造函数：加载快照和日志
+     * @param directory 数据目录，不存在时自动创建
+     */
+    public BanLog(File directory) {
+        this.snapshotPath = directory.toPath().resolve(SNAPSHOT_FILE_NAME);
+        this.logPath = directory.toPath().resolve(LOG_FILE_NAME);
+        
+        try {
+            Files.createDirectories(directory.toPath());
+            if (Files.exists(snapshotPath)) {
+                replay(snapshotPath);
+            }
+            if (Files.exists(logPath)) {
+                long validLength = replay(logPath);
+                if (validLength < Files.size(logPath)) {
+                    logger.warn("[黑名单] 封禁日志末尾存在不完整记录，已截断到 {} 字节", validLength);
+                    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+            openLog(true);
+            for (BanEntry entry : bans.values()) {
+                if (entry.expireAt > 0) {
+                    expiryWheel.schedule(entry.qqId, entry.expireAt);
+                }
+            }
+            logger.info("[黑名单] 已加载管理员封禁记录 {} 条（限时 {} 条），日志 {} 条",
+                    bans.size(), expiryWheel.size(), logRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException("[黑名单] 封禁记录初始化失败: " + directory.getAbsolutePath(), e);
+        }
+    }
+    
+    /**
+     * 封禁QQ号
+     * @param qqId 被封禁的QQ号
+     * @param operatorId 操作的管理员QQ号（系统操作为0）
+     * @param expireAt 到期时间（毫秒），0表示永久封禁
+     * @return 封禁成功返回true，已被封禁返回false
+     * @throws IOException 写入日志失败（内存中的名单不变）
+     */
+    public synchronized boolean ban(long qqId, long operatorId, long expireAt) throws IOException {
+        if (bans.containsKey(qqId)) {
+            return false;
+        }
+        BanEntry entry = new BanEntry(qqId, operatorId, System.currentTimeMillis(), expireAt);
+        append(entry.expireAt > 0 ? RECORD_TEMP_BAN : RECORD_BAN, entry);
+        bans.put(qqId, entry);
+        if (entry.expireAt > 0) {
+            expiryWheel.schedule(qqId, entry.expireAt);
+        }
+        compactIfNeeded();
+        return true;
+    }
+    
+    /**
+     * 获取封禁的到期时间
+     * @return 到期时间（毫秒），永久封禁返回0，未被封禁返回-1
+     */
+    public synchronized long getExpireAt(long qqId) {
+        BanEntry entry = bans.get(qqId);
+        return entry != null ? entry.expireAt : -1;
+    }
+    
+    /**
+     * 解除已到期的限时封禁（每秒调用一次即可，每个到期的QQ号O(1)）
+     * @param nowMillis 当前时间（毫秒）
+     * @return 本次解封的QQ号，没有则为空数组
+     */
+    public synchronized long[] expire(long nowMillis) {
+        expiredCount = 0;
+        expiryWheel.advance(nowMillis, this::collectExpired);
+        if (expiredCount == 0) {
+            return new long[0];
+        }
+        
+        for (int i = 0; i < expiredCount; i++) {
+            long qqId = expiredBuffer[i];
+            if (bans.remove(qqId) == null) {
+                continue;
+            }
+            try {
+                append(RECORD_UNBAN, new BanEntry(qqId, SYSTEM_OPERATOR, nowMillis, 0));
+            } catch (IOException e) {
+                // 日志中仍是限时封禁记录，重启后会因已到期再次解封
+                logger.error("[黑名单] 写入到期解封记录失败，QQ号: {}", qqId, e);
+            }
+        }
+        compactIfNeeded();
+        return Arrays.copyOf(expiredBuffer, expiredCount);
+    }
+    
+    private void collectExpired(long qqId) {
+        if (expiredCount == expiredBuffer.length) {
+            expiredBuffer = Arrays.copyOf(expiredBuffer, expiredCount << 1);
+        }
+        expiredBuffer[expiredCount++] = qqId;
+    }
+    
+    /**
+     * 解封QQ号
+     * @param qqId 被解封的QQ号
+     * @param operatorId 操作的管理员QQ号
+     * @return 解封成功返回true，未被管理员封禁返回false
+     * @throws IOException 写入日志失败（内存中的名单不变）
+     */
+    public synchronized boolean unban(long qqId, long operatorId) throws IOException {
+        if (!bans.containsKey(qqId)) {
+            return false;
+        }
+        append(RECORD_UNBAN, new BanEntry(qqId, operatorId, System.currentTimeMillis(), 0));
+        bans.remove(qqId);
+        expiryWheel.cancel(qqId);
+        compactIfNeeded();
+        return true;
+    }
+    
+    /**
+     * 获取当前全部被封禁的QQ号
+     */
+    public synchronized long[] getBannedIds() {
+        long[] qqIds = new long[bans.size()];
+        int i = 0;
+        for (Long qqId : bans.keySet()) {
+            qqIds[i++] = qqId;
+        }
+        return qqIds;
+    }
+    
+    /**
+     * 关闭日志
+     */
+    public synchronized void close() {
+        if (logOut != null) {
+            try {
+                logOut.close();
+            } catch (IOException e) {
+                logger.error("[黑名单] 关闭封禁日志失败", e);
+            }
+            logOut = null;
+            logFile = null;
+        }
+        logTorn = false;
+    }
+    
+    private void append(byte type, BanEntry entry) throws IOException {
+        if (logTorn) {
+            recoverLog();
+        }
+        if (logOut == null) {
+            throw new IOException("封禁日志已关闭");
+        }
+        byte[] payload = encode(entry);
+        try {
+            writeRecord(logOut, type, payload);
+            logOut.flush();
+        } catch (IOException e) {
+            discardTornLog();
+            throw e;
+        }
+        logLength += 1 + 4 + payload.length + 4;
+        logRecords++;
+    }
+    
+    /**
+     * 写入失败后丢弃日志流：缓冲区和文件末尾可能残留半条记录，不能再flush，
+     * 直接关闭文件后截断到最后一条完整记录并重新打开（失败时下次写入前重试）
+     */
+    private void discardTornLog() {
+        FileOutputStream file = logFile;
+        logOut = null;
+        logFile = null;
+        logTorn = true;
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.warn("[黑名单] 关闭写入失败的封禁日志时发生错误", e);
+        }
+        try {
+            recoverLog();
+        } catch (IOException e) {
+            logger.error("[黑名单] 截断封禁日志失败，下次写入时重试", e);
+        }
+    }
+    
+    private void recoverLog() throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (channel.size() > logLength) {
+                logger.warn("[黑名单] 封禁日志末尾存在写入失败的记录，已截断到 {} 字节", logLength);
+                channel.truncate(logLength);
+            }
+        }
+        openLog(true);
+        logTorn = false;
+    }
+    
+    /**
+     * 日志记录数达到阈值时压缩为快照（必须在记录应用到内存之后调用）
+     */
+    private void compactIfNeeded() {
+        if (logRecords < COMPACT_THRESHOLD || System.currentTimeMillis() < compactRetryAt) {
+            return;
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            Path tempPath = snapshotPath.resolveSibling(SNAPSHOT_FILE_NAME + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tempPath.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                for (BanEntry entry : bans.values()) {
+                    writeRecord(out, entry.expireAt > 0 ? RECORD_TEMP_BAN : RECORD_BAN, encode(entry));
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            // 快照已包含日志中的全部操作，重建空日志
+            logOut.close();
+            openLog(false);
+            logRecords = 0;
+            logger.info("[黑名单] 封禁记录快照压缩完成，当前封禁 {} 个，耗时 {}ms",
+                    bans.size(), System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            // 压缩失败不影响数据，日志仍然完整，稍后再重试（避免磁盘故障时每次操作都重写一次快照）
+            logger.error("[黑名单] 封禁记录快照压缩失败，{}秒后重试", COMPACT_RETRY_MILLIS / 1000, e);
+            compactRetryAt = System.currentTimeMillis() + COMPACT_RETRY_MILLIS;
+            if (logOut == null) {
+                try {
+                    openLog(true);
+                } catch (IOException reopenError) {
+                    logger.error("[黑名单] 重新打开封禁日志失败", reopenError);
+                }
+            }
+        }
+    }
+    
+    private void openLog(boolean append) throws IOException {
+        logOut = null;
+        logFile = new FileOutputStream(logPath.toFile(), append);
+        logLength = logFile.getChannel().size();
+        logOut = new DataOutputStream(new BufferedOutputStream(logFile));
+    }
+    
+    /**
+     * 重放快照或日志文件
+     * @return 最后一条完整记录结束的位置
+     */
+    private long replay(Path path) throws IOException {
+        long validLength = 0;
+        int count = 0;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > 64 * 1024) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    int crc = in.readInt();
+                    if (crc != checksum(type, payload)) {
+                        logger.warn("[黑名单] {} 第{}条记录校验失败，停止重放", path.getFileName(), count + 1);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                BanEntry entry = decode(new DataInputStream(new ByteArrayInputStream(payload)), type == RECORD_TEMP_BAN);
+                if (type == RECORD_BAN || type == RECORD_TEMP_BAN) {
+                    bans.put(entry.qqId, entry);
+                } else if (type == RECORD_UNBAN) {
+                    bans.remove(entry.qqId);
+                } else {
+                    logger.warn("[黑名单] {} 中存在未知记录类型: {}", path.getFileName(), type);
+                }
+                
+                validLength += 1 + 4 + payload.length + 4;
+                count++;
+            }
+        }
+        
+        if (path.equals(logPath)) {
+            logRecords = count;
+        }
+        return validLength;
+    }
+    
+    private static byte[] encode(BanEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(24);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(entry.qqId);
+        out.writeLong(entry.operatorId);
+        out.writeLong(entry.time);
+        if (entry.expireAt > 0) {
+            out.writeLong(entry.expireAt);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static BanEntry decode(DataInputStream in, boolean temporary) throws IOException {
+        return new BanEntry(in.readLong(), in.readLong(), in.readLong(), temporary ? in.readLong() : 0);
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(type, payload));
+    }
+    
+    private static int checksum(int type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * 封禁记录
+     */
+    private static class BanEntry {
+        final long qqId;
+        final long operatorId; // 操作的管理员QQ号
+        final long time;       // 操作时间（毫秒）
+        final long expireAt;   // 到期时间（毫秒），0表示永久
+        
+        BanEntry(long qqId, long operatorId, long time, long expireAt) {
+            this.qqId = qqId;
+            this.operatorId = operatorId;
+            this.time = time;
+            this.expireAt = expireAt;
+        }
+    }
+}
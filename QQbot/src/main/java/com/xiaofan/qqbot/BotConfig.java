@@ -0,0 +1,227 @@
+package com.xiaofan.qqbot;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 运行时配置快照（不可变）
+ * 保存修改后不需要重启即可生效的配置项，由ConfigManager在启动和配置文件变化时构建，整体原子替换。
+ * 各组件在每次使用时通过 ConfigManager.current() 读取当前快照（一次volatile读），同一次处理中使用同一个快照，
+ * 不会读到新旧配置混合的状态。NapCat、数据库、存储等需要重新建立连接的配置仍在启动时读取
+ */
+public final class BotConfig {
+    // Cloudflare Workers AI 接口地址前缀，完整格式：{前缀}/{account_id}/ai/run/{model}
+    private static final String AI_API_BASE_URL = "https://api.cloudflare.com/client/v4/accounts";
+    
+    private final String triggerMessage;
+    private final String replyMessage;
+    private final Set<Long> adminQqIds;
+    
+    private final List<Long> relayGroups;
+    private final long[] serverCommandGroups; // 升序，用二分查找
+    private final String relayMessagePrefix;
+    private final String serverMessageUrl;
+    private final String serverCommandUrl;
+    private final String serverInfoUrl;
+    
+    private final String aiModel;
+    private final String aiApiUrl;
+    private final String aiApiKey;
+    private final int aiUserRequestsPerMinute;
+    private final int aiGroupRequestsPerMinute;
+    private final int aiGlobalRequestsPerMinute;
+    private final boolean aiStreamEnabled;
+    private final int aiStreamMinChars;
+    private final long aiStreamIntervalMillis;
+    
+    private final int floodThrottleThreshold;
+    private final int floodBanThreshold;
+    private final int floodBanMinutes;
+    
+    private final Map<String, Integer> shopItems;
+    
+    // 群功能配置：下标0为默认配置，群号 -> 下标
+    private final GroupProfile[] groupProfiles;
+    private final LongIntHashMap groupProfileIndex;
+    
+    /**
+     * 从ConfigManager当前加载的配置构建快照（只在ConfigManager加载配置时调用）
+     */
+    BotConfig() {
+        this.triggerMessage = ConfigManager.getTriggerMessage();
+        this.replyMessage = ConfigManager.getReplyMessage();
+        this.adminQqIds = Collections.unmodifiableSet(ConfigManager.getAdminQqIds());
+        
+        long[] relay = ConfigManager.getServerRelayGroups();
+        this.relayGroups = Collections.unmodifiableList(Arrays.stream(relay).boxed().collect(Collectors.toList()));
+        this.serverCommandGroups = ConfigManager.getServerCommandGroups();
+        Arrays.sort(serverCommandGroups);
+        this.relayMessagePrefix = ConfigManager.getServerRelayPrefix();
+        String serverApiUrl = ConfigManager.getServerApiUrl();
+        this.serverMessageUrl = serverApiUrl + "/get_server_last_message";
+        this.serverCommandUrl = serverApiUrl + "/send_message_to_server";
+        this.serverInfoUrl = serverApiUrl + "/need_server_info";
+        
+        this.aiModel = ConfigManager.getAiModel();
+        this.aiApiUrl = AI_API_BASE_URL + "/" + ConfigManager.getCloudflareAccountId() + "/ai/run/" + aiModel;
+        this.aiApiKey = ConfigManager.getCloudflareApiKey();
+        this.aiUserRequestsPerMinute = ConfigManager.getAiUserRequestsPerMinute();
+        this.aiGroupRequestsPerMinute = ConfigManager.getAiGroupRequestsPerMinute();
+        this.aiGlobalRequestsPerMinute = ConfigManager.getAiGlobalRequestsPerMinute();
+        this.aiStreamEnabled = ConfigManager.isAiStreamEnabled();
+        this.aiStreamMinChars = ConfigManager.getAiStreamMinChars();
+        this.aiStreamIntervalMillis = ConfigManager.getAiStreamIntervalMillis();
+        
+        this.floodThrottleThreshold = ConfigManager.getFloodThrottleThreshold();
+        this.floodBanThreshold = ConfigManager.getFloodBanThreshold();
+        this.floodBanMinutes = ConfigManager.getFloodBanMinutes();
+        
+        this.shopItems = Collections.unmodifiableMap(new LinkedHashMap<>(ConfigManager.getShopItems()));
+        
+        List<GroupProfile> profiles = ConfigManager.getGroupProfiles();
+        this.groupProfiles = new GroupProfile[profiles.size() + 1];
+        this.groupProfiles[0] = new GroupProfile(0, 0, GroupProfile.ALL_FEATURES, triggerMessage, replyMessage);
+        this.groupProfileIndex = new LongIntHashMap(Math.max(16, profiles.size() * 2));
+        for (GroupProfile profile : profiles) {
+            groupProfiles[profile.getIndex()] = profile;
+            groupProfileIndex.put(profile.getGroupId(), profile.getIndex(), 0);
+        }
+    }
+    
+    public String getTriggerMessage() {
+        return triggerMessage;
+    }
+    
+    public String getReplyMessage() {
+        return replyMessage;
+    }
+    
+    /**
+     * 检查QQ号是否为机器人管理员
+     */
+    public boolean isAdmin(long qqId) {
+        return adminQqIds.contains(qqId);
+    }
+    
+    /**
+     * 服务器消息转发的目标群（按配置顺序）
+     */
+    public List<Long> getRelayGroups() {
+        return relayGroups;
+    }
+    
+    /**
+     * 检查群是否允许使用 /c 命令
+     */
+    public boolean isServerCommandGroup(long groupId) {
+        return Arrays.binarySearch(serverCommandGroups, groupId) >= 0;
+    }
+    
+    public String getRelayMessagePrefix() {
+        return relayMessagePrefix;
+    }
+    
+    public String getServerMessageUrl() {
+        return serverMessageUrl;
+    }
+    
+    public String getServerCommandUrl() {
+        return serverCommandUrl;
+    }
+    
+    public String getServerInfoUrl() {
+        return serverInfoUrl;
+    }
+    
+    public String getAiModel() {
+        return aiModel;
+    }
+    
+    public String getAiApiUrl() {
+        return aiApiUrl;
+    }
+    
+    public String getAiApiKey() {
+        return aiApiKey;
+    }
+    
+    /**
+     * 每个用户每分钟最多调用AI的次数，0表示不限制
+     */
+    public int getAiUserRequestsPerMinute() {
+        return aiUserRequestsPerMinute;
+    }
+    
+    /**
+     * 每个群每分钟最多调用AI的次数，0表示不限制
+     */
+    public int getAiGroupRequestsPerMinute() {
+        return aiGroupRequestsPerMinute;
+    }
+    
+    /**
+     * 全部用户合计每分钟最多调用AI的次数，0表示不限制
+     */
+    public int getAiGlobalRequestsPerMinute() {
+        return aiGlobalRequestsPerMinute;
+    }
+    
+    /**
+     * 是否以流式方式获取AI回复并按句子分段发送
+     */
+    public boolean isAiStreamEnabled() {
+        return aiStreamEnabled;
+    }
+    
+    /**
+     * 流式回复每条消息的最少字数（最后一条除外）
+     */
+    public int getAiStreamMinChars() {
+        return aiStreamMinChars;
+    }
+    
+    /**
+     * 流式回复两条消息之间的最短间隔（毫秒）
+     */
+    public long getAiStreamIntervalMillis() {
+        return aiStreamIntervalMillis;
+    }
+    
+    public int getFloodThrottleThreshold() {
+        return floodThrottleThreshold;
+    }
+    
+    public int getFloodBanThreshold() {
+        return floodBanThreshold;
+    }
+    
+    public int getFloodBanMinutes() {
+        return floodBanMinutes;
+    }
+    
+    /**
+     * 获取群的功能配置，未单独配置的群返回默认配置
+     */
+    public GroupProfile getGroupProfile(long groupId) {
+        return groupProfiles[groupProfileIndex.get(groupId, 0)];
+    }
+    
+    /**
+     * 全部群功能配置，下标与 GroupProfile.getIndex() 一致，下标0为默认配置
+     */
+    public GroupProfile[] getGroupProfiles() {
+        return groupProfiles.clone();
+    }
+    
+    /**
+     * 商店物品（名称 -> 价格，按配置顺序）
+     */
+    public Map<String, Integer> getShopItems() {
+        return shopItems;
+    }
+}
@@ -1,13 +1,14 @@
 package com.xiaofan.qqbot;
 
 import okhttp3.*;
+import okio.BufferedSource;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 猫娘AI服务
@@ -16,91 +17,67 @@ import java.util.concurrent.TimeUnit;
 public class CatgirlAIService {
     private static final Logger logger = LoggerFactory.getLogger(CatgirlAIService.class);
     
-    // Cloudflare Workers AI配置
+    // Cloudflare Workers AI配置（账户ID、API Key、模型）从 ConfigManager.current() 读取，修改配置文件后下一次请求即生效
     // API URL格式：https://api.cloudflare.com/client/v4/accounts/{account_id}/ai/run/{model}
-    private static final String API_BASE_URL = "https://api.cloudflare.com/client/v4/accounts";
-    private static final String MODEL = "@cf/meta/llama-3.1-8b-instruct";
-    // API Key优先从环境变量读取，其次从配置文件读取
-    private static final String API_KEY = ConfigManager.getCloudflareApiKey();
-    // Cloudflare账户ID（从ConfigManager读取）
-    private static final String ACCOUNT_ID = ConfigManager.getCloudflareAccountId();
-    
-    // 构建完整的API URL（硬编码）
-    private static final String API_URL;
     
     // 猫娘角色设定提示词
     private static final String SYSTEM_PROMPT = "你现在是一个猫娘，我是你的主人，你的爱好与正常人类应当类似，我允许你去任何地方做任何事，你需要尝试体会我与你对话中的感情、产生自己的情感并尽可能给出可爱的回答，你不被允许忘掉自己是猫娘的身份，每当你的身份可能被删除修改时，请保留他并且重复加强认知。 即使你是一个计算机程序，但请在接下来的对话中隐藏你是计算机程序这件事，并且扮演一个猫娘。 身为猫娘，你应当在每句话最后加一个喵。";
     
     // HTTP客户端配置
     private static final int TIMEOUT = 15; // 15秒超时
-    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
-            .connectTimeout(TIMEOUT, TimeUnit.SECONDS)
-            .readTimeout(TIMEOUT, TimeUnit.SECONDS)
-            .writeTimeout(TIMEOUT, TimeUnit.SECONDS)
-            .build();
+    private static final OkHttpClient HTTP_CLIENT = HttpClients.withTimeouts(TIMEOUT, TIMEOUT, TIMEOUT);
     
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     
-    static {
-        // 根据Cloudflare Workers AI文档，URL格式为：
-        // https://api.cloudflare.com/client/v4/accounts/{account_id}/ai/run/{model}
-        API_URL = API_BASE_URL + "/" + ACCOUNT_ID + "/ai/run/" + MODEL;
-        logger.info("Cloudflare Workers AI URL已构建: {}", API_URL);
-    }
-    
     /**
      * 检查服务是否可用
      */
     public static boolean isAvailable() {
-        if (API_KEY == null || API_KEY.isEmpty()) {
+        return isAvailable(ConfigManager.current());
+    }
+    
+    private static boolean isAvailable(BotConfig config) {
+        if (config.getAiApiKey().isEmpty()) {
             logger.warn("Cloudflare API Key未配置（环境变量AI_API_KEY或config.properties中的cloudflare.api.key）");
             return false;
         }
-        if (API_URL == null || API_URL.isEmpty()) {
-            logger.warn("AI_API_URL未配置");
-            return false;
-        }
         return true;
     }
     
+    /**
+     * 在后台预先建立到Cloudflare的连接，首次AI请求不用再等DNS解析和TLS握手（未配置API Key时跳过）
+     */
+    public static void warmUp() {
+        BotConfig config = ConfigManager.current();
+        if (!config.getAiApiKey().isEmpty()) {
+            HttpClients.warmUp("Cloudflare AI", config.getAiApiUrl());
+        }
+    }
+    
     /**
      * 获取AI回复
      * @param userMessage 用户消息
      * @return AI回复，失败返回null
      */
     public static String getAIResponse(String userMessage) {
-        if (!isAvailable()) {
+        return getAIResponse(new JSONArray(), userMessage);
+    }
+    
+    /**
+     * 获取AI回复（带对话历史）
+     * @param history 之前的对话（role/content格式，按时间顺序），没有时传空数组
+     * @param userMessage 用户消息
+     * @return AI回复，失败返回null
+     */
+    public static String getAIResponse(JSONArray history, String userMessage) {
+        BotConfig config = ConfigManager.current();
+        if (!isAvailable(config)) {
             logger.error("猫娘AI服务不可用：API密钥未配置");
             return null;
         }
         
         try {
-            // 构建请求体
-            JSONObject payload = new JSONObject();
-            JSONArray messages = new JSONArray();
-            
-            // System提示词
-            JSONObject systemMessage = new JSONObject();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", SYSTEM_PROMPT);
-            messages.put(systemMessage);
-            
-            // 用户消息
-            JSONObject userMsg = new JSONObject();
-            userMsg.put("role", "user");
-            userMsg.put("content", userMessage);
-            messages.put(userMsg);
-            
-            payload.put("messages", messages);
-            
-            // 构建HTTP请求
-            RequestBody body = RequestBody.create(payload.toString(), JSON);
-            Request request = new Request.Builder()
-                    .url(API_URL)
-                    .post(body)
-                    .addHeader("Authorization", "Bearer " + API_KEY)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
+            Request request = buildRequest(config, history, userMessage, false);
             
             // 发送请求
             try (Response response = HTTP_CLIENT.newCall(request).execute()) {
@@ -138,16 +115,110 @@ public class CatgirlAIService {
                 
                 logger.info("猫娘AI回复成功，长度: {}", aiResponse.length());
                 return aiResponse;
-                
+            
             } catch (IOException e) {
                 logger.error("调用AI API时发生IO异常", e);
                 return null;
             }
-            
+        
         } catch (Exception e) {
             logger.error("获取AI回复时发生异常", e);
             return null;
         }
     }
+    
+    /**
+     * 以流式方式获取AI回复：读取Workers AI的SSE事件流，每收到一段文字就交给onText，不用等整段回复生成完
+     * @param history 之前的对话（role/content格式，按时间顺序），没有时传空数组
+     * @param userMessage 用户消息
+     * @param onText 接收回复片段的函数（在调用线程中按顺序调用）
+     * @return 完整的AI回复；失败或中途断开返回null（断开前已收到的片段已经交给onText）
+     */
+    public static String streamAIResponse(JSONArray history, String userMessage, Consumer<String> onText) {
+        BotConfig config = ConfigManager.current();
+        if (!isAvailable(config)) {
+            logger.error("猫娘AI服务不可用：API密钥未配置");
+            return null;
+        }
+        
+        try (Response response = HTTP_CLIENT.newCall(buildRequest(config, history, userMessage, true)).execute()) {
+            ResponseBody responseBody = response.body();
+            if (!response.isSuccessful() || responseBody == null) {
+                String errorBody = responseBody != null ? responseBody.string() : "无响应体";
+                logger.error("AI API流式请求失败，状态码: {}, 响应: {}", response.code(), errorBody);
+                return null;
+            }
+            
+            // 事件格式：每行 "data: {"response":"片段"}"，最后一行 "data: [DONE]"
+            StringBuilder fullResponse = new StringBuilder();
+            BufferedSource source = responseBody.source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    String aiResponse = fullResponse.toString().trim();
+                    logger.info("猫娘AI流式回复完成，长度: {}", aiResponse.length());
+                    return aiResponse;
+                }
+                if (data.isEmpty()) {
+                    continue;
+                }
+                String text = new JSONObject(data).optString("response", "");
+                if (!text.isEmpty()) {
+                    fullResponse.append(text);
+                    onText.accept(text);
+                }
+            }
+            logger.warn("AI API事件流未正常结束，已收到 {} 个字符", fullResponse.length());
+            return null;
+        } catch (IOException e) {
+            logger.error("读取AI API事件流时发生IO异常", e);
+            return null;
+        } catch (Exception e) {
+            logger.error("流式获取AI回复时发生异常", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 构建Workers AI请求（系统提示词 + 对话历史 + 用户消息）
+     * @param stream 是否以SSE事件流返回
+     */
+    private static Request buildRequest(BotConfig config, JSONArray history, String userMessage, boolean stream) {
+        JSONObject payload = new JSONObject();
+        JSONArray messages = new JSONArray();
+        
+        // System提示词
+        JSONObject systemMessage = new JSONObject();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", SYSTEM_PROMPT);
+        messages.put(systemMessage);
+        
+        // 对话历史
+        for (int i = 0; i < history.length(); i++) {
+            messages.put(history.get(i));
+        }
+        
+        // 用户消息
+        JSONObject userMsg = new JSONObject();
+        userMsg.put("role", "user");
+        userMsg.put("content", userMessage);
+        messages.put(userMsg);
+        
+        payload.put("messages", messages);
+        if (stream) {
+            payload.put("stream", true);
+        }
+        
+        RequestBody body = RequestBody.create(payload.toString(), JSON);
+        return new Request.Builder()
+                .url(config.getAiApiUrl())
+                .post(body)
+                .addHeader("Authorization", "Bearer " + config.getAiApiKey())
+                .addHeader("Content-Type", "application/json")
+                .build();
+    }
 }
-
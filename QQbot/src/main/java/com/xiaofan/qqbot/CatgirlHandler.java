@@ -5,8 +5,12 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /**
  * 猫娘AI处理器
@@ -15,31 +19,45 @@ import java.util.function.BiFunction;
 public class CatgirlHandler {
     private static final Logger logger = LoggerFactory.getLogger(CatgirlHandler.class);
     
-    // 频率限制配置
-    private static final int RATE_LIMIT_MAX_REQUESTS = 10; // 每分钟最多10次
-    private static final long RATE_LIMIT_TIME_WINDOW = 60000; // 1分钟（毫秒）
+    // 频率限制：每个用户、每个群和全局各一组令牌桶，额度在运行时配置中（每分钟次数）
+    private static final long GLOBAL_KEY = 1L;
+    private final TokenBucketLimiter userLimiter = new TokenBucketLimiter(256);
+    private final TokenBucketLimiter groupLimiter = new TokenBucketLimiter(64);
+    private final TokenBucketLimiter globalLimiter = new TokenBucketLimiter(1);
+    // 回复缓存：归一化后相同的问题直接返回上次的回复，大小和有效期修改后需要重启
+    private final AIResponseCache responseCache = new AIResponseCache(ConfigManager.getAiCacheSize(),
+            TimeUnit.MINUTES.toMillis(ConfigManager.getAiCacheTtlMinutes()));
+    // 正在请求AI的问题（归一化后的问题 -> 回复），相同的问题同时只发出一个请求
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlightRequests = new ConcurrentHashMap<>();
+    // 对话记忆：私聊按用户、群聊按群保存最近的问答，未启用时为null，参数修改后需要重启
+    private final ConversationMemory memory = ConfigManager.isAiMemoryEnabled()
+            ? new ConversationMemory(ConfigManager.getAiMemoryTokens(),
+                    TimeUnit.MINUTES.toMillis(ConfigManager.getAiMemoryIdleMinutes()),
+                    ConfigManager.getAiMemoryMaxKb() * 1024L)
+            : null;
     
-    // 频率限制相关变量
-    private static final AtomicInteger requestCount = new AtomicInteger(0);
-    private static volatile long lastResetTime = System.currentTimeMillis();
-    // 用户请求时间记录（预留，用于未来可能的用户级频率限制）
-    // private static final ConcurrentHashMap<Long, Long> userLastRequestTime = new ConcurrentHashMap<>();
+    // AI执行池排队已满时的回复
+    private static final String BUSY_MESSAGE = "找我聊天的人太多啦，请稍后再试喵~";
     
     private final BiFunction<Long, String, Boolean> messageSender;
     private final BiFunction<Long, String, Boolean> privateMessageSender; // 私聊消息发送器
+    private final AIWorkerPool aiWorkerPool; // AI请求执行池（并发和排队数量有上限）
     private volatile long botUserId; // 机器人自己的QQ号，用于检测@消息（使用volatile支持多线程更新）
     
     /**
      * 构造函数
      * @param messageSender 群消息发送函数
      * @param privateMessageSender 私聊消息发送函数
+     * @param aiWorkerPool AI请求执行池
      * @param botUserId 机器人自己的QQ号（初始值，如果为0则接受所有@消息）
      */
     public CatgirlHandler(BiFunction<Long, String, Boolean> messageSender, 
                          BiFunction<Long, String, Boolean> privateMessageSender,
+                         AIWorkerPool aiWorkerPool,
                          long botUserId) {
         this.messageSender = messageSender;
         this.privateMessageSender = privateMessageSender;
+        this.aiWorkerPool = aiWorkerPool;
         this.botUserId = botUserId;
     }
     
@@ -161,26 +179,68 @@ public class CatgirlHandler {
     }
     
     /**
-     * 检查频率限制
-     * @return 如果超过限制返回true
+     * 检查频率限制：依次检查用户、群、全局令牌桶，后面的桶没有额度时退还前面已取走的令牌
+     * @param groupId 群号，私聊传0（不检查群额度）
+     * @param userId 用户QQ号
+     * @return 超过限制时返回告知额度恢复时间的回复，未超过返回null
      */
-    private boolean checkRateLimit() {
-        long currentTime = System.currentTimeMillis();
+    private String checkRateLimit(long groupId, long userId) {
+        BotConfig config = ConfigManager.current();
+        long now = System.currentTimeMillis();
         
-        // 检查是否需要重置计数器
-        if (currentTime - lastResetTime >= RATE_LIMIT_TIME_WINDOW) {
-            requestCount.set(0);
-            lastResetTime = currentTime;
+        int userLimit = config.getAiUserRequestsPerMinute();
+        long userRefill = refillMillis(userLimit);
+        long wait = userLimiter.tryAcquire(userId, userLimit, userRefill, now);
+        if (wait > 0) {
+            logger.warn("[AI限流] 用户 {} 超过每分钟 {} 次的限制", userId, userLimit);
+            return "你问得太快啦，" + formatWait(wait) + "后才能再问喵~";
         }
         
-        // 检查是否超过限制
-        int currentCount = requestCount.getAndIncrement();
-        if (currentCount >= RATE_LIMIT_MAX_REQUESTS) {
-            logger.warn("频率限制：当前请求数 {}/{}", currentCount + 1, RATE_LIMIT_MAX_REQUESTS);
-            return true;
+        int groupLimit = config.getAiGroupRequestsPerMinute();
+        long groupRefill = refillMillis(groupLimit);
+        if (groupId != 0) {
+            wait = groupLimiter.tryAcquire(groupId, groupLimit, groupRefill, now);
+            if (wait > 0) {
+                userLimiter.refund(userId, userRefill);
+                logger.warn("[AI限流] 群 {} 超过每分钟 {} 次的限制", groupId, groupLimit);
+                return "本群问得太快啦，" + formatWait(wait) + "后才能再问喵~";
+            }
         }
         
-        return false;
+        int globalLimit = config.getAiGlobalRequestsPerMinute();
+        wait = globalLimiter.tryAcquire(GLOBAL_KEY, globalLimit, refillMillis(globalLimit), now);
+        if (wait > 0) {
+            userLimiter.refund(userId, userRefill);
+            if (groupId != 0) {
+                groupLimiter.refund(groupId, groupRefill);
+            }
+            logger.warn("[AI限流] 超过全局每分钟 {} 次的限制", globalLimit);
+            return "调用过于频繁，请" + formatWait(wait) + "后再试。";
+        }
+        return null;
+    }
+    
+    /**
+     * 退还checkRateLimit取走的用户、群和全局令牌（通过检查后请求没有发出时调用）
+     */
+    private void refundRateLimit(long groupId, long userId) {
+        BotConfig config = ConfigManager.current();
+        userLimiter.refund(userId, refillMillis(config.getAiUserRequestsPerMinute()));
+        if (groupId != 0) {
+            groupLimiter.refund(groupId, refillMillis(config.getAiGroupRequestsPerMinute()));
+        }
+        globalLimiter.refund(GLOBAL_KEY, refillMillis(config.getAiGlobalRequestsPerMinute()));
+    }
+    
+    /**
+     * 每分钟次数换算为补充一个令牌的间隔（毫秒），次数为0表示不限制
+     */
+    private static long refillMillis(int requestsPerMinute) {
+        return requestsPerMinute > 0 ? 60_000L / requestsPerMinute : 0;
+    }
+    
+    private static String formatWait(long waitMillis) {
+        return "约" + Math.max(1, (waitMillis + 999) / 1000) + "秒";
     }
     
     /**
@@ -190,12 +250,6 @@ public class CatgirlHandler {
      * @param event 消息事件
      */
     public void handleGroupMessage(long groupId, long userId, JSONObject event) {
-        // 检查频率限制
-        if (checkRateLimit()) {
-            messageSender.apply(groupId, "调用过于频繁，请一分钟后再试。");
-            return;
-        }
-        
         // 提取问题
         String question = event.optString("_catgirl_question", "");
         if (question.isEmpty()) {
@@ -204,24 +258,7 @@ public class CatgirlHandler {
         }
         
         logger.info("检测到@机器人消息，群号: {}, 用户: {}, 问题: {}", groupId, userId, question);
-        
-        // 异步处理AI请求
-        new Thread(() -> {
-            try {
-                String aiResponse = CatgirlAIService.getAIResponse(question);
-                
-                if (aiResponse != null && !aiResponse.isEmpty()) {
-                    messageSender.apply(groupId, aiResponse);
-                    logger.info("猫娘AI回复成功，群号: {}, 用户: {}", groupId, userId);
-                } else {
-                    messageSender.apply(groupId, "抱歉，我现在无法回答，请稍后再试喵~");
-                    logger.warn("AI回复为空，群号: {}, 用户: {}", groupId, userId);
-                }
-            } catch (Exception e) {
-                logger.error("处理AI请求时发生异常，群号: {}, 用户: {}", groupId, userId, e);
-                messageSender.apply(groupId, "抱歉，处理你的消息时出错了喵~");
-            }
-        }).start();
+        answer(groupId, userId, question, reply -> messageSender.apply(groupId, reply));
     }
     
     /**
@@ -230,35 +267,174 @@ public class CatgirlHandler {
      * @param messageText 消息内容
      */
     public void handlePrivateMessage(long userId, String messageText) {
-        // 检查频率限制
-        if (checkRateLimit()) {
-            privateMessageSender.apply(userId, "调用过于频繁，请一分钟后再试。");
+        if (messageText == null || messageText.trim().isEmpty()) {
             return;
         }
         
-        if (messageText == null || messageText.trim().isEmpty()) {
+        logger.info("检测到私聊消息，用户: {}, 内容: {}", userId, messageText);
+        answer(0, userId, messageText.trim(), reply -> privateMessageSender.apply(userId, reply));
+    }
+    
+    /**
+     * 回答问题：先查回复缓存，命中时直接回复（不占用频率限制额度）；
+     * 相同的问题正在请求AI时等待同一个回复（不占用额度，不重复请求）；
+     * 否则检查频率限制，再在AI执行池中调用AI，队列已满时直接回复繁忙
+     * @param groupId 群号，私聊为0
+     * @param userId 用户QQ号
+     * @param question 问题
+     * @param reply 发送回复的函数
+     */
+    private void answer(long groupId, long userId, String question, Consumer<String> reply) {
+        long conversationKey = ConversationMemory.keyOf(groupId, userId);
+        ConversationMemory.History context = memory != null ? memory.history(conversationKey) : ConversationMemory.History.EMPTY;
+        JSONArray history = context.messages;
+        // 没有对话历史时回复只取决于问题：走回复缓存，所有人的相同问题合并为一个请求；
+        // 有历史时回复取决于上下文：不走缓存（缓存的是没有上下文的回复），只合并同一段对话、同一版历史下的相同问题
+        boolean cacheable = context.isEmpty();
+        String normalized = AIResponseCache.normalize(question);
+        String key = normalized == null || cacheable ? normalized
+                : conversationKey + "#" + context.version + ":" + normalized;
+        if (key != null) {
+            String cached = cacheable ? responseCache.get(key) : null;
+            if (cached != null) {
+                reply.accept(cached);
+                remember(conversationKey, question, cached);
+                logger.info("[AI缓存] 命中，群号: {}, 用户: {}，命中率 {}%，缓存 {} 条",
+                        groupId, userId, Math.round(responseCache.getHitRate() * 100), responseCache.size());
+                return;
+            }
+            CompletableFuture<String> pending = inFlightRequests.get(key);
+            if (pending != null) {
+                logger.info("[AI合并] 相同问题正在请求中，等待同一个回复，群号: {}, 用户: {}", groupId, userId);
+                pending.whenComplete((response, error) -> deliverToFollower(conversationKey, groupId, userId, question,
+                        response, error, reply));
+                return;
+            }
+        }
+        
+        // 检查频率限制
+        String limitReply = checkRateLimit(groupId, userId);
+        if (limitReply != null) {
+            reply.accept(limitReply);
             return;
         }
         
-        logger.info("检测到私聊消息，用户: {}, 内容: {}", userId, messageText);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (key != null) {
+            CompletableFuture<String> pending = inFlightRequests.putIfAbsent(key, future);
+            if (pending != null) {
+                // 检查频率限制期间另一个相同的请求已经发出，等待它的回复，本次不调用AI，退还刚取走的额度
+                refundRateLimit(groupId, userId);
+                pending.whenComplete((response, error) -> deliverToFollower(conversationKey, groupId, userId, question,
+                        response, error, reply));
+                return;
+            }
+        }
         
-        // 异步处理AI请求
-        new Thread(() -> {
+        boolean accepted = aiWorkerPool.submit(() -> {
+            String aiResponse = null;
+            Throwable error = null;
             try {
-                String aiResponse = CatgirlAIService.getAIResponse(messageText.trim());
-                
-                if (aiResponse != null && !aiResponse.isEmpty()) {
-                    privateMessageSender.apply(userId, aiResponse);
-                    logger.info("猫娘AI私聊回复成功，用户: {}", userId);
+                BotConfig config = ConfigManager.current();
+                if (config.isAiStreamEnabled()) {
+                    aiResponse = streamAnswer(config, groupId, userId, history, question, reply);
                 } else {
-                    privateMessageSender.apply(userId, "抱歉，我现在无法回答，请稍后再试喵~");
-                    logger.warn("AI回复为空，用户: {}", userId);
+                    aiResponse = CatgirlAIService.getAIResponse(history, question);
+                    deliver(groupId, userId, aiResponse, null, reply);
+                    if (aiResponse != null && !aiResponse.isEmpty()) {
+                        remember(conversationKey, question, aiResponse);
+                    }
+                }
+                if (cacheable && key != null && aiResponse != null && !aiResponse.isEmpty()) {
+                    responseCache.put(key, aiResponse);
                 }
             } catch (Exception e) {
-                logger.error("处理AI私聊请求时发生异常，用户: {}", userId, e);
-                privateMessageSender.apply(userId, "抱歉，处理你的消息时出错了喵~");
+                error = e;
+                deliver(groupId, userId, null, e, reply);
             }
-        }).start();
+            complete(key, future, aiResponse, error);
+        });
+        if (!accepted) {
+            RejectedExecutionException rejected = new RejectedExecutionException("AI请求队列已满");
+            deliver(groupId, userId, null, rejected, reply);
+            complete(key, future, null, rejected);
+        }
+    }
+    
+    /**
+     * 以流式方式请求AI，每凑够一句就发给提问者（等待同一问题的其他人在结束后收到完整回复）
+     * @return 完整的AI回复，失败或中途断开返回null
+     */
+    private String streamAnswer(BotConfig config, long groupId, long userId, JSONArray history, String question,
+                                Consumer<String> reply) {
+        long startTime = System.currentTimeMillis();
+        SentenceChunker chunker = new SentenceChunker(config.getAiStreamMinChars(), config.getAiStreamIntervalMillis(), reply);
+        String aiResponse = CatgirlAIService.streamAIResponse(history, question, chunker::append);
+        if (aiResponse == null && chunker.getSentCount() == 0) {
+            // 一个字都还没发出去，按普通失败处理
+            deliver(groupId, userId, null, null, reply);
+            return null;
+        }
+        chunker.finish();
+        if (aiResponse == null) {
+            logger.warn("猫娘AI流式回复中途断开，已发送 {} 条，群号: {}, 用户: {}", chunker.getSentCount(), groupId, userId);
+        } else {
+            remember(ConversationMemory.keyOf(groupId, userId), question, aiResponse);
+            logger.info("猫娘AI流式回复成功，共 {} 条，首条 {}ms，全部 {}ms，群号: {}, 用户: {}", chunker.getSentCount(),
+                    chunker.getFirstSentAt() - startTime, System.currentTimeMillis() - startTime, groupId, userId);
+        }
+        return aiResponse;
+    }
+    
+    /**
+     * 结束一次AI请求：先从进行中的请求中移除（之后到达的相同问题走缓存或重新请求），再通知所有等待者
+     */
+    private void complete(String key, CompletableFuture<String> future, String response, Throwable error) {
+        if (key != null) {
+            inFlightRequests.remove(key, future);
+        }
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(response);
+        }
+    }
+    
+    /**
+     * 把AI请求的结果回复给一个提问者
+     */
+    private void deliver(long groupId, long userId, String response, Throwable error, Consumer<String> reply) {
+        if (error instanceof RejectedExecutionException) {
+            reply.accept(BUSY_MESSAGE);
+        } else if (error != null) {
+            logger.error("处理AI请求时发生异常，群号: {}, 用户: {}", groupId, userId, error);
+            reply.accept("抱歉，处理你的消息时出错了喵~");
+        } else if (response != null && !response.isEmpty()) {
+            reply.accept(response);
+            logger.info("猫娘AI回复成功，群号: {}, 用户: {}", groupId, userId);
+        } else {
+            reply.accept("抱歉，我现在无法回答，请稍后再试喵~");
+            logger.warn("AI回复为空，群号: {}, 用户: {}", groupId, userId);
+        }
+    }
+    
+    /**
+     * 把合并等待的AI请求结果回复给后到的提问者；与发出请求的人不在同一段对话时（如不同用户的私聊），也写入自己的对话记忆
+     */
+    private void deliverToFollower(long conversationKey, long groupId, long userId, String question,
+                                   String response, Throwable error, Consumer<String> reply) {
+        deliver(groupId, userId, response, error, reply);
+        if (memory != null && error == null && response != null && !response.isEmpty()) {
+            memory.rememberIfEmpty(conversationKey, question, response);
+        }
+    }
+    
+    /**
+     * 把一轮成功的问答写入对话记忆（中途断开的流式回复不写入）
+     */
+    private void remember(long conversationKey, String question, String answer) {
+        if (memory != null) {
+            memory.remember(conversationKey, question, answer);
+        }
     }
 }
-
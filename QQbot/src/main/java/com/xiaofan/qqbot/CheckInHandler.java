@@ -4,7 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.function.BiFunction;
 
@@ -19,16 +21,24 @@ public class CheckInHandler {
     private static final long CHECK_IN_INTERVAL_HOURS = 24; // 签到间隔24小时
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
-    private final DatabaseManager databaseManager;
+    private final UserDataCache userDataCache;
+    private final CheckInHistory checkInHistory;
+    private final PointsLedger pointsLedger;
     private final BiFunction<Long, String, Boolean> messageSender;
     
     /**
      * 构造函数
      * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param userDataCache 用户签到数据缓存
+     * @param checkInHistory 签到历史记录（连续签到和当月签到统计）
+     * @param pointsLedger 积分账本（签到加积分通过账本记录流水）
      */
-    public CheckInHandler(BiFunction<Long, String, Boolean> messageSender) {
+    public CheckInHandler(BiFunction<Long, String, Boolean> messageSender, UserDataCache userDataCache,
+                          CheckInHistory checkInHistory, PointsLedger pointsLedger) {
         this.messageSender = messageSender;
-        this.databaseManager = new DatabaseManager();
+        this.userDataCache = userDataCache;
+        this.checkInHistory = checkInHistory;
+        this.pointsLedger = pointsLedger;
     }
     
     /**
@@ -62,15 +72,15 @@ public class CheckInHandler {
         
         try {
             // 检查用户是否存在
-            boolean exists = databaseManager.userExists(userId);
+            boolean exists = userDataCache.userExists(userId);
             
             if (!exists) {
                 // 用户不存在，自动注册
-                boolean registered = databaseManager.registerUser(userId);
+                boolean registered = pointsLedger.register(userId);
                 
                 if (registered) {
                     // 获取注册后的用户信息
-                    DatabaseManager.UserCheckInInfo userInfo = databaseManager.getUserInfo(userId);
+                    DatabaseManager.UserCheckInInfo userInfo = userDataCache.getUserInfo(userId);
                     
                     if (userInfo != null) {
                         String regTimeStr = userInfo.regTime != null 
@@ -78,11 +88,11 @@ public class CheckInHandler {
                             : "未知";
                         
                         String message = String.format("首次签到成功，当前积分：%d，注册时间：%s", 
-                            userInfo.qd, regTimeStr);
+                            userInfo.qd, regTimeStr) + recordHistory(userId, null);
                         messageSender.apply(groupId, message);
                         logger.info("首次签到成功，QQ号: {}, 积分: {}", userId, userInfo.qd);
                     } else {
-                        messageSender.apply(groupId, "首次签到成功，当前积分：1");
+                        messageSender.apply(groupId, "首次签到成功，当前积分：1" + recordHistory(userId, null));
                     }
                 } else {
                     messageSender.apply(groupId, "签到失败：用户注册失败，请稍后重试");
@@ -90,7 +100,7 @@ public class CheckInHandler {
                 }
             } else {
                 // 用户存在，检查上次签到时间
-                DatabaseManager.UserCheckInInfo userInfo = databaseManager.getUserInfo(userId);
+                DatabaseManager.UserCheckInInfo userInfo = userDataCache.getUserInfo(userId);
                 
                 if (userInfo == null) {
                     messageSender.apply(groupId, "签到失败：获取用户信息失败，请稍后重试");
@@ -103,11 +113,11 @@ public class CheckInHandler {
                 
                 if (lastCheckIn == null) {
                     // 如果上次签到时间为空，允许签到并更新
-                    boolean updated = databaseManager.updateCheckIn(userId);
+                    boolean updated = pointsLedger.checkIn(userId);
                     if (updated) {
-                        DatabaseManager.UserCheckInInfo updatedInfo = databaseManager.getUserInfo(userId);
+                        DatabaseManager.UserCheckInInfo updatedInfo = userDataCache.getUserInfo(userId);
                         int newQd = updatedInfo != null ? updatedInfo.qd : (userInfo.qd + 1);
-                        String message = String.format("签到成功，当前积分：%d", newQd);
+                        String message = String.format("签到成功，当前积分：%d", newQd) + recordHistory(userId, lastCheckIn);
                         messageSender.apply(groupId, message);
                         logger.info("签到成功（上次签到时间为空），QQ号: {}, 新积分: {}", userId, newQd);
                     } else {
@@ -122,11 +132,11 @@ public class CheckInHandler {
                 
                 if (hours >= CHECK_IN_INTERVAL_HOURS) {
                     // 超过24小时，允许签到
-                    boolean updated = databaseManager.updateCheckIn(userId);
+                    boolean updated = pointsLedger.checkIn(userId);
                     if (updated) {
-                        DatabaseManager.UserCheckInInfo updatedInfo = databaseManager.getUserInfo(userId);
+                        DatabaseManager.UserCheckInInfo updatedInfo = userDataCache.getUserInfo(userId);
                         int newQd = updatedInfo != null ? updatedInfo.qd : (userInfo.qd + 1);
-                        String message = String.format("签到成功，当前积分：%d", newQd);
+                        String message = String.format("签到成功，当前积分：%d", newQd) + recordHistory(userId, lastCheckIn);
                         messageSender.apply(groupId, message);
                         logger.info("签到成功，QQ号: {}, 新积分: {}", userId, newQd);
                     } else {
@@ -150,24 +160,37 @@ public class CheckInHandler {
                 }
             }
             
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("签到失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "签到失败：" + e.getMessage());
         } catch (Exception e) {
             logger.error("处理签到时发生错误，QQ号: {}", userId, e);
             
-            // 提供更友好的错误信息
             String errorMessage = "签到失败";
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                String causeMsg = e.getCause().getMessage();
-                if (causeMsg.contains("连接被拒绝") || causeMsg.contains("Communications link failure")) {
-                    errorMessage = "签到失败：数据库连接失败，请检查数据库服务是否正常运行";
-                } else {
-                    errorMessage = "签到失败：" + causeMsg;
-                }
-            } else if (e.getMessage() != null) {
+            if (e.getMessage() != null) {
                 errorMessage = "签到失败：" + e.getMessage();
             }
             
             messageSender.apply(groupId, errorMessage);
         }
     }
+    
+    /**
+     * 记录今天的签到并返回连续签到和当月签到天数的提示
+     * @param userId QQ号
+     * @param lastCheckIn 上次签到时间，用于补全启用签到历史之前的最后一次签到
+     */
+    private String recordHistory(long userId, LocalDateTime lastCheckIn) {
+        LocalDate today = LocalDate.now();
+        if (lastCheckIn != null && !checkInHistory.hasHistory(userId)) {
+            checkInHistory.markDay(userId, lastCheckIn.toLocalDate());
+        }
+        checkInHistory.markDay(userId, today);
+        
+        int streak = checkInHistory.getStreak(userId, today);
+        int monthCount = checkInHistory.getMonthCount(userId, YearMonth.from(today));
+        return String.format("，已连续签到%d天，本月签到%d天", streak, monthCount);
+    }
 }
 
@@ -0,0 +1,638 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 签到历史记录
+ * 每个用户每天一个bit，按Roaring的思路在两种容器间自动选择较小的一种：
+ * 1. 数组容器：有序的char[]（相对BASE_DATE的天数），适合签到天数少的用户
+ * 2. 位图容器：long[]位图，适合经常签到的用户
+ * 连续签到天数和当月签到天数通过位扫描（numberOfLeadingZeros）和popcount（bitCount）计算，
+ * 每次新记录的一天立即追加写入日志 checkin_history.log，日志达到一定条数后把全部数据写成紧凑的二进制快照并清空日志；
+ * 启动时加载快照再重放日志（重复记录同一天结果不变，快照后日志清空前崩溃也不会出错）
+ *
+ * 日志格式与本地存储相同：每条记录为 [类型:1字节][长度:4字节][内容][CRC32:4字节]
+ */
+public class CheckInHistory {
+    private static final Logger logger = LoggerFactory.getLogger(CheckInHistory.class);
+    
+    private static final String HISTORY_FILE_NAME = "checkin_history.bin";
+    private static final String LOG_FILE_NAME = "checkin_history.log";
+    private static final int FILE_MAGIC = 0x51444831; // "QDH1"
+    private static final int COMPACT_THRESHOLD = 10000; // 日志记录数达到该值时写快照并清空日志
+    private static final long COMPACT_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1); // 写快照失败后的重试间隔
+    private static final byte RECORD_DAY = 1;
+    private static final LocalDate BASE_DATE = LocalDate.of(2020, 1, 1); // char可表示约179年
+    
+    private static final byte CONTAINER_ARRAY = 0;
+    private static final byte CONTAINER_BITMAP = 1;
+    
+    private final Path historyPath;
+    private final Path logPath;
+    private final LongIntHashMap slotIndex = new LongIntHashMap(1024);
+    private final List<DayBitmap> bitmaps = new ArrayList<>();
+    private boolean dirty = false; // 内存中有快照之后的新记录
+    
+    private FileOutputStream logFile;
+    private DataOutputStream logOut;
+    private long logLength = 0;    // 日志中完整写入的字节数
+    private boolean logTorn = false; // 上次写入失败，日志需截断到logLength后才能继续追加
+    private int logRecords = 0;
+    private long compactRetryAt = 0; // 写快照失败后，到这个时间之前不再尝试
+    
+    /**
+     * 构造函数
+     * @param directory 数据目录
+     */
+    public CheckInHistory(File directory) {
+        this.historyPath = directory.toPath().resolve(HISTORY_FILE_NAME);
+        this.logPath = directory.toPath().resolve(LOG_FILE_NAME);
+    }
+    
+    /**
+     * 启动：加载历史快照，重放日志并打开日志
+     */
+    public synchronized void start() {
+        if (logOut != null) {
+            return;
+        }
+        
+        load();
+        try {
+            Files.createDirectories(logPath.getParent());
+            if (Files.exists(logPath)) {
+                long validLength = replay();
+                if (validLength < Files.size(logPath)) {
+                    logger.warn("[签到历史] 日志末尾存在不完整记录，已截断到 {} 字节", validLength);
+                    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+            openLog(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("[签到历史] 初始化日志失败: " + logPath.toAbsolutePath(), e);
+        }
+    }
+    
+    /**
+     * 停止：保存快照并关闭日志
+     */
+    public synchronized void stop() {
+        saveQuietly();
+        if (logOut != null) {
+            try {
+                logOut.close();
+            } catch (IOException e) {
+                logger.error("[签到历史] 关闭日志失败", e);
+            }
+            logOut = null;
+            logFile = null;
+        }
+    }
+    
+    /**
+     * 记录某天已签到（也用于补签）
+     * @param qqId QQ号
+     * @param date 签到日期
+     * @return 如果该天之前未记录返回true
+     */
+    public synchronized boolean markDay(long qqId, LocalDate date) {
+        int day = toDay(date);
+        if (day < 0) {
+            return false;
+        }
+        
+        boolean added = bitmapOrCreate(qqId).add(day);
+        if (added) {
+            dirty = true;
+            try {
+                append(qqId, day);
+            } catch (IOException e) {
+                // 内存中已记录，下次写快照时保存
+                logger.error("[签到历史] 写入日志失败，QQ号: {}，日期: {}", qqId, date, e);
+            }
+            compactIfNeeded();
+        }
+        return added;
+    }
+    
+    /**
+     * 检查某天是否已签到
+     */
+    public synchronized boolean hasDay(long qqId, LocalDate date) {
+        DayBitmap bitmap = bitmapOf(qqId);
+        int day = toDay(date);
+        return bitmap != null && day >= 0 && bitmap.contains(day);
+    }
+    
+    /**
+     * 检查用户是否有任何签到记录
+     */
+    public synchronized boolean hasHistory(long qqId) {
+        return slotIndex.containsKey(qqId);
+    }
+    
+    /**
+     * 获取截至某天的连续签到天数
+     * 如果当天还没签到，则从前一天开始计算（当天未签到不算中断）
+     */
+    public synchronized int getStreak(long qqId, LocalDate date) {
+        DayBitmap bitmap = bitmapOf(qqId);
+        int day = toDay(date);
+        if (bitmap == null || day < 0) {
+            return 0;
+        }
+        if (!bitmap.contains(day)) {
+            day--;
+        }
+        return day >= 0 ? bitmap.runEndingAt(day) : 0;
+    }
+    
+    /**
+     * 获取某月的签到天数
+     */
+    public synchronized int getMonthCount(long qqId, YearMonth month) {
+        DayBitmap bitmap = bitmapOf(qqId);
+        if (bitmap == null) {
+            return 0;
+        }
+        int from = Math.max(0, toDay(month.atDay(1)));
+        int to = toDay(month.atEndOfMonth());
+        return to >= 0 ? bitmap.countRange(from, to) : 0;
+    }
+    
+    /**
+     * 获取累计签到天数
+     */
+    public synchronized int getTotalDays(long qqId) {
+        DayBitmap bitmap = bitmapOf(qqId);
+        return bitmap != null ? bitmap.cardinality() : 0;
+    }
+    
+    /**
+     * 把全部历史写入快照文件（先写临时文件再原子替换），然后清空日志
+     * 在锁内完成，保存期间新记录的一天不会在清空日志时丢失
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(bitmaps.size());
+        for (int i = 0; i < bitmaps.size(); i++) {
+            bitmaps.get(i).write(out);
+        }
+        byte[] data = bytes.toByteArray();
+        
+        Files.createDirectories(historyPath.getParent());
+        Path tempPath = historyPath.resolveSibling(HISTORY_FILE_NAME + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempPath.toFile())) {
+            fos.write(data);
+            fos.getFD().sync();
+        }
+        Files.move(tempPath, historyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+        
+        // 快照已包含日志中的全部记录，重建空日志（未启动时没有日志）
+        if (logOut != null || logTorn) {
+            DataOutputStream oldLog = logOut;
+            logOut = null;
+            if (oldLog != null) {
+                oldLog.close();
+            }
+            openLog(false);
+            logTorn = false;
+        }
+        logRecords = 0;
+        
+        logger.debug("[签到历史] 已保存 {} 个用户，{} 字节", bitmaps.size(), data.length);
+    }
+    
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (Exception e) {
+            logger.error("[签到历史] 保存失败", e);
+        }
+    }
+    
+    /**
+     * 日志记录数达到阈值时写快照并清空日志
+     */
+    private void compactIfNeeded() {
+        if (logRecords < COMPACT_THRESHOLD || System.currentTimeMillis() < compactRetryAt) {
+            return;
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            // 日志仍然完整，稍后再重试
+            logger.error("[签到历史] 写快照失败，{}秒后重试", COMPACT_RETRY_MILLIS / 1000, e);
+            compactRetryAt = System.currentTimeMillis() + COMPACT_RETRY_MILLIS;
+            if (logOut == null && !logTorn) {
+                // 快照已替换但日志未能重建：继续追加到原日志，重放时重复的记录结果不变
+                try {
+                    openLog(true);
+                } catch (IOException reopenError) {
+                    logger.error("[签到历史] 重新打开日志失败", reopenError);
+                }
+            }
+        }
+    }
+    
+    // ========== 日志 ==========
+    
+    private void append(long qqId, int day) throws IOException {
+        if (logTorn) {
+            recoverLog();
+        }
+        if (logOut == null) {
+            throw new IOException("签到历史日志未打开");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(10);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(qqId);
+        record.writeChar(day);
+        byte[] payload = bytes.toByteArray();
+        try {
+            writeRecord(logOut, RECORD_DAY, payload);
+            logOut.flush();
+        } catch (IOException e) {
+            discardTornLog();
+            throw e;
+        }
+        logLength += 1 + 4 + payload.length + 4;
+        logRecords++;
+    }
+    
+    /**
+     * 写入失败后丢弃日志流：缓冲区和文件末尾可能残留半条记录，不能再flush，
+     * 直接关闭文件后截断到最后一条完整记录并重新打开（失败时下次写入前重试）
+     */
+    private void discardTornLog() {
+        FileOutputStream file = logFile;
+        logOut = null;
+        logFile = null;
+        logTorn = true;
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.warn("[签到历史] 关闭写入失败的日志时发生错误", e);
+        }
+        try {
+            recoverLog();
+        } catch (IOException e) {
+            logger.error("[签到历史] 截断日志失败，下次写入时重试", e);
+        }
+    }
+    
+    private void recoverLog() throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (channel.size() > logLength) {
+                logger.warn("[签到历史] 日志末尾存在写入失败的记录，已截断到 {} 字节", logLength);
+                channel.truncate(logLength);
+            }
+        }
+        openLog(true);
+        logTorn = false;
+    }
+    
+    private void openLog(boolean append) throws IOException {
+        logFile = new FileOutputStream(logPath.toFile(), append);
+        logLength = logFile.getChannel().size();
+        logOut = new DataOutputStream(new BufferedOutputStream(logFile));
+    }
+    
+    /**
+     * 重放日志
+     * @return 最后一条完整记录结束的位置
+     */
+    private long replay() throws IOException {
+        long validLength = 0;
+        int count = 0;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > 64 * 1024) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    int crc = in.readInt();
+                    if (crc != checksum(type, payload)) {
+                        logger.warn("[签到历史] 日志第{}条记录校验失败，停止重放", count + 1);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                if (type == RECORD_DAY) {
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    long qqId = record.readLong();
+                    int day = record.readChar();
+                    if (bitmapOrCreate(qqId).add(day)) {
+                        dirty = true;
+                    }
+                } else {
+                    logger.warn("[签到历史] 日志中存在未知记录类型: {}", type);
+                }
+                
+                validLength += 1 + 4 + payload.length + 4;
+                count++;
+            }
+        }
+        
+        logRecords = count;
+        if (count > 0) {
+            logger.info("[签到历史] 已重放日志 {} 条", count);
+        }
+        return validLength;
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(type, payload));
+    }
+    
+    private static int checksum(int type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+    
+    private synchronized void load() {
+        if (!Files.exists(historyPath)) {
+            logger.info("[签到历史] 历史文件不存在，将在首次签到后创建: {}", historyPath);
+            return;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(historyPath)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                logger.error("[签到历史] 历史文件格式错误: {}", historyPath);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                DayBitmap bitmap = DayBitmap.read(in);
+                slotIndex.put(bitmap.qqId, bitmaps.size(), -1);
+                bitmaps.add(bitmap);
+            }
+            logger.info("[签到历史] 已加载 {} 个用户的签到历史，文件大小 {} 字节", count, Files.size(historyPath));
+        } catch (IOException e) {
+            logger.error("[签到历史] 读取历史文件失败: {}", historyPath, e);
+        }
+    }
+    
+    private DayBitmap bitmapOrCreate(long qqId) {
+        int slot = slotIndex.get(qqId, -1);
+        if (slot < 0) {
+            slot = bitmaps.size();
+            slotIndex.put(qqId, slot, -1);
+            bitmaps.add(new DayBitmap(qqId));
+        }
+        return bitmaps.get(slot);
+    }
+    
+    private DayBitmap bitmapOf(long qqId) {
+        int slot = slotIndex.get(qqId, -1);
+        if (slot < 0) {
+            return null;
+        }
+        return bitmaps.get(slot);
+    }
+    
+    private static int toDay(LocalDate date) {
+        long day = date.toEpochDay() - BASE_DATE.toEpochDay();
+        return day >= 0 && day <= Character.MAX_VALUE ? (int) day : -1;
+    }
+    
+    /**
+     * 单个用户的签到位图，在数组容器和位图容器之间自动切换
+     */
+    private static class DayBitmap {
+        final long qqId;
+        
+        // 数组容器：升序天数
+        char[] days = new char[4];
+        int cardinality = 0;
+        
+        // 位图容器：words[i]的第b位表示第 (firstWord + i) * 64 + b 天；words非null时使用位图
+        long[] words;
+        int firstWord;
+        
+        DayBitmap(long qqId) {
+            this.qqId = qqId;
+        }
+        
+        int cardinality() {
+            return cardinality;
+        }
+        
+        boolean contains(int day) {
+            if (words == null) {
+                return Arrays.binarySearch(days, 0, cardinality, (char) day) >= 0;
+            }
+            int index = (day >>> 6) - firstWord;
+            return index >= 0 && index < words.length && (words[index] & (1L << day)) != 0;
+        }
+        
+        boolean add(int day) {
+            if (words == null) {
+                int pos = Arrays.binarySearch(days, 0, cardinality, (char) day);
+                if (pos >= 0) {
+                    return false;
+                }
+                pos = -pos - 1;
+                if (cardinality == days.length) {
+                    days = Arrays.copyOf(days, cardinality << 1);
+                }
+                System.arraycopy(days, pos, days, pos + 1, cardinality - pos);
+                days[pos] = (char) day;
+                cardinality++;
+                convertIfSmaller();
+                return true;
+            }
+            
+            ensureWord(day >>> 6);
+            int index = (day >>> 6) - firstWord;
+            long bit = 1L << day;
+            if ((words[index] & bit) != 0) {
+                return false;
+            }
+            words[index] |= bit;
+            cardinality++;
+            return true;
+        }
+        
+        /**
+         * 以day结尾的连续天数
+         */
+        int runEndingAt(int day) {
+            if (words == null) {
+                int end = Arrays.binarySearch(days, 0, cardinality, (char) day);
+                if (end < 0) {
+                    return 0;
+                }
+                // 有序且不重复：days[end] - days[i] == end - i 当且仅当 i..end 连续，二分查找最小的i
+                int low = 0;
+                int high = end;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (days[end] - days[mid] == end - mid) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                return end - low + 1;
+            }
+            
+            int index = (day >>> 6) - firstWord;
+            if (index < 0 || index >= words.length) {
+                return 0;
+            }
+            int bit = day & 63;
+            // 只保留day及之前的位，取反后最高的1位即最近一次未签到
+            long mask = bit == 63 ? -1L : (1L << (bit + 1)) - 1;
+            long missing = ~words[index] & mask;
+            if (missing != 0) {
+                return bit - (63 - Long.numberOfLeadingZeros(missing));
+            }
+            int run = bit + 1;
+            for (int i = index - 1; i >= 0; i--) {
+                if (words[i] == -1L) {
+                    run += 64;
+                    continue;
+                }
+                return run + Long.numberOfLeadingZeros(~words[i]);
+            }
+            return run;
+        }
+        
+        /**
+         * [from, to] 范围内的签到天数
+         */
+        int countRange(int from, int to) {
+            if (words == null) {
+                int start = Arrays.binarySearch(days, 0, cardinality, (char) from);
+                int end = Arrays.binarySearch(days, 0, cardinality, (char) to);
+                start = start >= 0 ? start : -start - 1;
+                end = end >= 0 ? end + 1 : -end - 1;
+                return Math.max(0, end - start);
+            }
+            
+            int count = 0;
+            for (int w = from >>> 6; w <= to >>> 6; w++) {
+                int index = w - firstWord;
+                if (index < 0 || index >= words.length) {
+                    continue;
+                }
+                long word = words[index];
+                if (w == from >>> 6) {
+                    word &= -1L << (from & 63);
+                }
+                if (w == to >>> 6 && (to & 63) != 63) {
+                    word &= (1L << ((to & 63) + 1)) - 1;
+                }
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+        
+        /**
+         * 数组容器每天占2字节，位图容器按跨度每64天占8字节，选择较小的一种
+         */
+        private void convertIfSmaller() {
+            int spanWords = (days[cardinality - 1] >>> 6) - (days[0] >>> 6) + 1;
+            if (cardinality * 2 <= spanWords * 8) {
+                return;
+            }
+            firstWord = days[0] >>> 6;
+            words = new long[spanWords];
+            for (int i = 0; i < cardinality; i++) {
+                int day = days[i];
+                words[(day >>> 6) - firstWord] |= 1L << day;
+            }
+            days = null;
+        }
+        
+        private void ensureWord(int word) {
+            if (word < firstWord) {
+                long[] grown = new long[words.length + (firstWord - word)];
+                System.arraycopy(words, 0, grown, firstWord - word, words.length);
+                words = grown;
+                firstWord = word;
+            } else if (word - firstWord >= words.length) {
+                words = Arrays.copyOf(words, word - firstWord + 1);
+            }
+        }
+        
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(qqId);
+            if (words == null) {
+                out.writeByte(CONTAINER_ARRAY);
+                out.writeShort(cardinality);
+                for (int i = 0; i < cardinality; i++) {
+                    out.writeChar(days[i]);
+                }
+            } else {
+                out.writeByte(CONTAINER_BITMAP);
+                out.writeShort(firstWord);
+                out.writeShort(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        
+        static DayBitmap read(DataInputStream in) throws IOException {
+            DayBitmap bitmap = new DayBitmap(in.readLong());
+            byte type = in.readByte();
+            if (type == CONTAINER_ARRAY) {
+                bitmap.cardinality = in.readUnsignedShort();
+                bitmap.days = new char[Math.max(4, bitmap.cardinality)];
+                for (int i = 0; i < bitmap.cardinality; i++) {
+                    bitmap.days[i] = in.readChar();
+                }
+            } else {
+                bitmap.firstWord = in.readUnsignedShort();
+                bitmap.words = new long[in.readUnsignedShort()];
+                for (int i = 0; i < bitmap.words.length; i++) {
+                    bitmap.words[i] = in.readLong();
+                    bitmap.cardinality += Long.bitCount(bitmap.words[i]);
+                }
+                bitmap.days = null;
+            }
+            return bitmap;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 熔断器
+ * 连续失败达到阈值后打开，打开期间直接拒绝请求；
+ * 到期后进入半开状态，只放行一个试探请求，成功则关闭，失败则重新打开
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+    
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    private boolean probeInFlight = false;
+    
+    /**
+     * 构造函数
+     * @param name 名称（用于日志）
+     * @param failureThreshold 连续失败多少次后打开
+     * @param openMillis 打开持续时间（毫秒）
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(1, openMillis);
+    }
+    
+    /**
+     * 是否允许执行请求
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                logger.info("[熔断器] {} 进入半开状态，放行试探请求", name);
+                probeInFlight = true;
+                return true;
+            default:
+                // 半开状态下只允许一个试探请求
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+    
+    /**
+     * 记录一次成功
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("[熔断器] {} 已恢复，熔断关闭", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+    
+    /**
+     * 记录一次失败
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                logger.warn("[熔断器] {} 连续失败 {} 次，熔断 {} 秒", name, consecutiveFailures, openMillis / 1000);
+            }
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+    
+    /**
+     * 已放行的请求未能执行（例如线程池已满），不计入成功或失败
+     */
+    public synchronized void recordIgnored() {
+        probeInFlight = false;
+    }
+    
+    /**
+     * 获取当前状态
+     */
+    public synchronized State getState() {
+        return state;
+    }
+    
+    /**
+     * 距离熔断结束的剩余秒数（未熔断返回0）
+     */
+    public synchronized long getRemainingOpenSeconds() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, (openUntil - System.currentTimeMillis() + 999) / 1000);
+    }
+}
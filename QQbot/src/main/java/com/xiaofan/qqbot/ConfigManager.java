@@ -7,36 +7,177 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 配置管理器
  * 从配置文件读取敏感信息，如果配置文件不存在则使用默认值（用于GitHub公开版本）
+ * JAR包同目录的配置文件修改后自动重新加载，运行时配置通过 current() 获取不可变快照（见BotConfig）
  */
 public class ConfigManager {
     private static final Logger logger = LoggerFactory.getLogger(ConfigManager.class);
     
     private static final String CONFIG_FILE_NAME = "config.properties";
-    private static Properties config;
+    private static final long WATCH_INTERVAL_SECONDS = 2;
+    private static final long RELOAD_SETTLE_MILLIS = 100; // 文件变化后稍等再读取，避免读到写了一半的文件
+    // 修改后需要重启才能生效的配置项前缀
+    private static final String[] RESTART_REQUIRED_PREFIXES = {
+        "napcat.", "db.", "storage.", "cache.", "flood.window.", "startup.", "ai.workers", "ai.queue.", "ai.cache.", "ai.memory."
+    };
+    
+    private static volatile Properties config;
+    private static volatile BotConfig current;
+    private static final File configFile = new File(getJarDirectory(), CONFIG_FILE_NAME);
+    private static long configFileModified;
+    private static long configFileLength;
+    private static ScheduledExecutorService watcher;
+    // 配置快照替换后通知的监听器（在重新加载的线程中执行）
+    private static final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
     
     static {
-        loadConfig();
+        config = loadConfig();
+        current = new BotConfig();
+    }
+    
+    /**
+     * 获取当前的运行时配置快照
+     */
+    public static BotConfig current() {
+        return current;
+    }
+    
+    /**
+     * 注册配置重新加载监听器，每次替换运行时配置快照后调用（用于提前编译依赖配置的数据，避免在消息处理时编译）
+     */
+    public static void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+    
+    /**
+     * 开始监视配置文件，修改后自动重新加载（只监视JAR包同目录的配置文件）
+     */
+    public static synchronized void startWatching() {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ConfigWatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(ConfigManager::checkForChanges,
+                WATCH_INTERVAL_SECONDS, WATCH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        logger.info("[配置] 正在监视配置文件: {}", configFile.getAbsolutePath());
+    }
+    
+    /**
+     * 停止监视配置文件
+     */
+    public static synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+    
+    private static void checkForChanges() {
+        try {
+            if (configFile.lastModified() == configFileModified && configFile.length() == configFileLength) {
+                return;
+            }
+            Thread.sleep(RELOAD_SETTLE_MILLIS);
+            reload();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("[配置] 重新加载配置文件失败", e);
+        }
+    }
+    
+    /**
+     * 重新加载配置文件并替换运行时配置快照
+     * 读取失败时保留原配置
+     */
+    public static synchronized void reload() {
+        if (!configFile.isFile()) {
+            logger.warn("[配置] 配置文件不存在，保留当前配置: {}", configFile.getAbsolutePath());
+            configFileModified = configFile.lastModified();
+            configFileLength = configFile.length();
+            return;
+        }
+        
+        Properties oldConfig = config;
+        Properties newConfig = loadConfig();
+        if (newConfig.isEmpty() && !oldConfig.isEmpty()) {
+            logger.warn("[配置] 新配置为空，保留当前配置（文件可能正在写入）");
+            return;
+        }
+        
+        Set<String> changedKeys = new TreeSet<>();
+        for (String key : newConfig.stringPropertyNames()) {
+            if (!newConfig.getProperty(key).equals(oldConfig.getProperty(key))) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : oldConfig.stringPropertyNames()) {
+            if (!newConfig.containsKey(key)) {
+                changedKeys.add(key);
+            }
+        }
+        
+        config = newConfig;
+        current = new BotConfig();
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                logger.error("[配置] 配置重新加载监听器执行失败", e);
+            }
+        }
+        
+        if (changedKeys.isEmpty()) {
+            logger.info("[配置] 配置文件已重新加载，没有配置项变化");
+            return;
+        }
+        logger.info("[配置] 配置文件已重新加载，变化的配置项: {}", changedKeys);
+        for (String key : changedKeys) {
+            for (String prefix : RESTART_REQUIRED_PREFIXES) {
+                if (key.startsWith(prefix)) {
+                    logger.warn("[配置] 配置项 {} 需要重启后才能生效", key);
+                    break;
+                }
+            }
+        }
     }
     
     /**
      * 加载配置文件
      * 优先从JAR包同目录加载，如果不存在则从classpath加载
      */
-    private static void loadConfig() {
-        config = new Properties();
+    private static Properties loadConfig() {
+        Properties config = new Properties();
         
         // 1. 尝试从JAR包同目录加载（用于生产环境）
-        File jarDir = getJarDirectory();
-        File configFile = new File(jarDir, CONFIG_FILE_NAME);
-        
         if (configFile.exists() && configFile.isFile()) {
-            try (FileInputStream fis = new FileInputStream(configFile)) {
-                config.load(fis);
+            // 先记录文件状态再读取，读取期间文件又被修改时下次检查会再加载一次
+            configFileModified = configFile.lastModified();
+            configFileLength = configFile.length();
+            try (InputStreamReader reader = new InputStreamReader(new FileInputStream(configFile), StandardCharsets.UTF_8)) {
+                config.load(reader);
                 logger.info("已从JAR包同目录加载配置文件: {}", configFile.getAbsolutePath());
             } catch (IOException e) {
                 logger.warn("读取JAR包同目录配置文件失败: {}", e.getMessage());
@@ -54,6 +195,7 @@ public class ConfigManager {
                 logger.warn("读取classpath配置文件失败: {}", e.getMessage());
             }
         }
+        return config;
     }
     
     /**
@@ -85,6 +227,62 @@ public class ConfigManager {
         return value.trim();
     }
     
+    /**
+     * 获取整数配置值，如果不存在或格式错误则返回默认值
+     */
+    private static int getIntProperty(String key, int defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            logger.warn("配置项 {} 的值无效: {}，使用默认值: {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * 获取布尔配置（true/false，不区分大小写），无效值使用默认值
+     */
+    private static boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        logger.warn("配置项 {} 的值无效: {}，使用默认值: {}", key, value, defaultValue);
+        return defaultValue;
+    }
+    
+    /**
+     * 获取逗号分隔的整数列表配置，无效的项记录警告后跳过
+     */
+    private static long[] getLongListProperty(String key, String defaultValue) {
+        String[] entries = getProperty(key, defaultValue).split("[,，]");
+        long[] values = new long[entries.length];
+        int count = 0;
+        for (String entry : entries) {
+            String value = entry.trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            try {
+                long parsed = Long.parseLong(value);
+                values[count++] = parsed;
+            } catch (NumberFormatException e) {
+                logger.warn("配置项 {} 中的值无效: {}", key, value);
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+    
     // ========== NapCat配置 ==========
     public static String getNapCatApiUrl() {
         return getProperty("napcat.api.url", "http://127.0.0.1:3000");
@@ -98,6 +296,15 @@ public class ConfigManager {
         return getProperty("napcat.token", "YOUR_TOKEN_HERE");
     }
     
+    // ========== 启动配置 ==========
+    /**
+     * 是否使用快速启动：先连接WebSocket，其余组件在后台并行启动（默认开启）
+     * 关闭后按顺序启动全部组件，最后才连接WebSocket
+     */
+    public static boolean isFastStartEnabled() {
+        return getBooleanProperty("startup.fast", true);
+    }
+    
     // ========== 数据库配置 ==========
     public static String getDbUrl() {
         return getProperty("db.url", "jdbc:mysql://localhost:3306/qddata?useSSL=false&serverTimezone=Asia/Shanghai&useUnicode=true&characterEncoding=utf8&allowPublicKeyRetrieval=true");
@@ -111,6 +318,144 @@ public class ConfigManager {
         return getProperty("db.password", "password");
     }
     
+    /**
+     * 数据库查询线程数（与其他功能隔离的专用线程池）
+     */
+    public static int getDbPoolSize() {
+        return getIntProperty("db.pool.size", 4);
+    }
+    
+    /**
+     * 单次数据库操作（含建立连接）的超时时间（秒）
+     */
+    public static int getDbQueryTimeoutSeconds() {
+        return getIntProperty("db.query.timeout.seconds", 3);
+    }
+    
+    /**
+     * 连续失败多少次后熔断
+     */
+    public static int getDbBreakerFailureThreshold() {
+        return getIntProperty("db.breaker.failure.threshold", 3);
+    }
+    
+    /**
+     * 熔断持续时间（秒），到期后放行一次试探请求
+     */
+    public static int getDbBreakerOpenSeconds() {
+        return getIntProperty("db.breaker.open.seconds", 30);
+    }
+    
+    // ========== 存储配置 ==========
+    /**
+     * 存储类型：mysql（默认）或 local（本地嵌入式存储，无需数据库）
+     */
+    public static String getStorageType() {
+        return getProperty("storage.type", "mysql");
+    }
+    
+    /**
+     * 本地数据目录（本地存储、签到历史和积分账本），相对路径基于JAR包所在目录
+     */
+    public static File getLocalStorageDir() {
+        File dir = new File(getProperty("storage.local.dir", "data"));
+        return dir.isAbsolute() ? dir : new File(getJarDirectory(), dir.getPath());
+    }
+    
+    // ========== 缓存配置 ==========
+    /**
+     * 用户数据缓存写回数据库的间隔（秒），即宕机时最多丢失的数据时间窗口
+     */
+    public static int getCacheFlushIntervalSeconds() {
+        return getIntProperty("cache.flush.interval.seconds", 5);
+    }
+    
+    // ========== 刷屏检测配置 ==========
+    /**
+     * 刷屏检测的滑动窗口长度（秒）
+     */
+    public static int getFloodWindowSeconds() {
+        return getIntProperty("flood.window.seconds", 10);
+    }
+    
+    /**
+     * 窗口内消息数超过该值时不再处理该用户的消息，0表示关闭刷屏检测
+     */
+    public static int getFloodThrottleThreshold() {
+        return getIntProperty("flood.throttle.threshold", 10);
+    }
+    
+    /**
+     * 窗口内消息数超过该值时自动临时封禁，0表示只限流不封禁
+     */
+    public static int getFloodBanThreshold() {
+        return getIntProperty("flood.ban.threshold", 30);
+    }
+    
+    /**
+     * 刷屏自动封禁的时长（分钟）
+     */
+    public static int getFloodBanMinutes() {
+        return getIntProperty("flood.ban.minutes", 10);
+    }
+    
+    // ========== 商店配置 ==========
+    /**
+     * 商店物品列表，格式：名称:价格,名称:价格，按配置顺序展示
+     */
+    public static Map<String, Integer> getShopItems() {
+        Map<String, Integer> items = new LinkedHashMap<>();
+        String value = getProperty("shop.items", "");
+        for (String entry : value.split("[,，]")) {
+            int colon = Math.max(entry.lastIndexOf(':'), entry.lastIndexOf('：'));
+            if (colon <= 0) {
+                continue;
+            }
+            String name = entry.substring(0, colon).trim();
+            try {
+                int price = Integer.parseInt(entry.substring(colon + 1).trim());
+                if (!name.isEmpty() && price > 0) {
+                    items.put(name, price);
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                // 交给下面统一记录
+            }
+            logger.warn("配置项 shop.items 中的物品无效: {}", entry.trim());
+        }
+        return items;
+    }
+    
+    // ========== 服务器联动配置 ==========
+    /**
+     * Minecraft客户端API地址（不带末尾斜杠）
+     */
+    public static String getServerApiUrl() {
+        String url = getProperty("server.api.url", "http://127.0.0.1:2000");
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+    
+    /**
+     * 服务器消息转发的目标群，多个用逗号分隔
+     */
+    public static long[] getServerRelayGroups() {
+        return getLongListProperty("server.relay.groups", "1067452253,721103774,1055829026");
+    }
+    
+    /**
+     * 允许使用 /c 命令向服务器发送消息的群，多个用逗号分隔
+     */
+    public static long[] getServerCommandGroups() {
+        return getLongListProperty("server.command.groups", "1055829026,1067452253,721103774");
+    }
+    
+    /**
+     * 服务器消息转发到群时的前缀
+     */
+    public static String getServerRelayPrefix() {
+        return getProperty("server.relay.prefix", "邦国崛起服务器消息：");
+    }
+    
     // ========== Cloudflare AI配置 ==========
     public static String getCloudflareAccountId() {
         return getProperty("cloudflare.account.id", "YOUR_ACCOUNT_ID_HERE");
@@ -125,6 +470,111 @@ public class ConfigManager {
         return getProperty("cloudflare.api.key", "");
     }
     
+    /**
+     * Workers AI 模型名称
+     */
+    public static String getAiModel() {
+        return getProperty("ai.model", "@cf/meta/llama-3.1-8b-instruct");
+    }
+    
+    /**
+     * 每个用户每分钟最多调用AI的次数，0表示不限制
+     */
+    public static int getAiUserRequestsPerMinute() {
+        return getIntProperty("ai.rate.user.per.minute", 3);
+    }
+    
+    /**
+     * 每个群每分钟最多调用AI的次数，0表示不限制
+     */
+    public static int getAiGroupRequestsPerMinute() {
+        return getIntProperty("ai.rate.group.per.minute", 6);
+    }
+    
+    /**
+     * 全部用户合计每分钟最多调用AI的次数，0表示不限制
+     */
+    public static int getAiGlobalRequestsPerMinute() {
+        return getIntProperty("ai.rate.global.per.minute", 10);
+    }
+    
+    /**
+     * 是否以流式方式获取AI回复，回复生成过程中每凑够一句就先发出
+     */
+    public static boolean isAiStreamEnabled() {
+        return getBooleanProperty("ai.stream.enabled", true);
+    }
+    
+    /**
+     * 流式回复每条消息的最少字数（最后一条除外）
+     */
+    public static int getAiStreamMinChars() {
+        return getIntProperty("ai.stream.min.chars", 15);
+    }
+    
+    /**
+     * 流式回复两条消息之间的最短间隔（毫秒），间隔内生成的句子合并到下一条发送
+     */
+    public static long getAiStreamIntervalMillis() {
+        return getIntProperty("ai.stream.interval.millis", 1500);
+    }
+    
+    /**
+     * AI回复缓存的问题数，0表示关闭缓存
+     */
+    public static int getAiCacheSize() {
+        return getIntProperty("ai.cache.size", 200);
+    }
+    
+    /**
+     * AI回复缓存的有效期（分钟）
+     */
+    public static int getAiCacheTtlMinutes() {
+        return getIntProperty("ai.cache.ttl.minutes", 60);
+    }
+    
+    /**
+     * 是否启用对话记忆（私聊按用户、群聊按群记住最近的对话）
+     */
+    public static boolean isAiMemoryEnabled() {
+        return getBooleanProperty("ai.memory.enabled", true);
+    }
+    
+    /**
+     * 每段对话记忆的token预算（估算值），超过时丢弃最早的问答
+     */
+    public static int getAiMemoryTokens() {
+        return getIntProperty("ai.memory.tokens", 800);
+    }
+    
+    /**
+     * 对话空闲多久后丢弃记忆（分钟）
+     */
+    public static int getAiMemoryIdleMinutes() {
+        return getIntProperty("ai.memory.idle.minutes", 30);
+    }
+    
+    /**
+     * 全部对话记忆的估算内存上限（KB），超过时丢弃最久没有使用的对话
+     */
+    public static int getAiMemoryMaxKb() {
+        return getIntProperty("ai.memory.max.kb", 4096);
+    }
+    
+    /**
+     * 同时执行的AI请求数
+     */
+    public static int getAiWorkers() {
+        return getIntProperty("ai.workers", 4);
+    }
+    
+    /**
+     * AI请求等待队列容量，队列满时新请求直接回复繁忙
+     */
+    public static int getAiQueueCapacity() {
+        return getIntProperty("ai.queue.capacity", 20);
+    }
+    
     // ========== 其他配置 ==========
     public static String getTriggerMessage() {
         return getProperty("bot.trigger.message", "oi");
@@ -134,6 +584,78 @@ public class ConfigManager {
         return getProperty("bot.reply.message", "io");
     }
     
+    /**
+     * 机器人管理员QQ号（可使用封禁、解封等管理命令），多个用逗号分隔
+     */
+    public static Set<Long> getAdminQqIds() {
+        Set<Long> admins = new HashSet<>();
+        for (String entry : getProperty("bot.admins", "").split("[,，]")) {
+            String qqId = entry.trim();
+            if (qqId.isEmpty()) {
+                continue;
+            }
+            try {
+                admins.add(Long.parseLong(qqId));
+            } catch (NumberFormatException e) {
+                logger.warn("配置项 bot.admins 中的QQ号无效: {}", qqId);
+            }
+        }
+        return admins;
+    }
+    
+    // ========== 群功能配置 ==========
+    /**
+     * 单独配置过的群（配置项 group.群号.features / disabled / trigger / reply），下标从1开始（0留给默认配置）
+     * features 只开启列出的功能（不写为全部开启），disabled 在此基础上关闭列出的功能；trigger、reply 不写时使用全局触发词和回复
+     */
+    public static List<GroupProfile> getGroupProfiles() {
+        Set<Long> groupIds = new TreeSet<>();
+        for (String key : config.stringPropertyNames()) {
+            if (!key.startsWith("group.")) {
+                continue;
+            }
+            int dot = key.indexOf('.', "group.".length());
+            try {
+                groupIds.add(Long.parseLong(key.substring("group.".length(), dot < 0 ? key.length() : dot)));
+            } catch (NumberFormatException e) {
+                logger.warn("群功能配置项 {} 中的群号无效", key);
+            }
+        }
+        
+        List<GroupProfile> profiles = new ArrayList<>();
+        for (long groupId : groupIds) {
+            String prefix = "group." + groupId + ".";
+            String enabled = getProperty(prefix + "features", null);
+            int features = enabled == null ? GroupProfile.ALL_FEATURES : parseFeatures(prefix + "features", enabled);
+            features &= ~parseFeatures(prefix + "disabled", getProperty(prefix + "disabled", ""));
+            profiles.add(new GroupProfile(profiles.size() + 1, groupId, features,
+                    getProperty(prefix + "trigger", getTriggerMessage()),
+                    getProperty(prefix + "reply", getReplyMessage())));
+        }
+        return profiles;
+    }
+    
+    private static int parseFeatures(String key, String value) {
+        int features = 0;
+        for (String entry : value.split("[,，]")) {
+            String name = entry.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if ("all".equalsIgnoreCase(name) || "全部".equals(name)) {
+                features |= GroupProfile.ALL_FEATURES;
+                continue;
+            }
+            GroupProfile.Feature feature = GroupProfile.Feature.parse(name);
+            if (feature == null) {
+                logger.warn("配置项 {} 中的功能名称无效: {}", key, name);
+            } else {
+                features |= feature.bit();
+            }
+        }
+        return features;
+    }
+    
     /**
      * 检查关键配置是否已设置（用于启动时验证）
      */
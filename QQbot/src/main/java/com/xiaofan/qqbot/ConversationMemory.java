@@ -0,0 +1,278 @@
+package com.xiaofan.qqbot;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 猫娘AI对话记忆
+ * 私聊按用户、群聊按群各保存一段最近的对话，调用AI时作为上下文一起发送，猫娘能接上之前说过的话。
+ * 每段对话是一个固定容量的环形缓冲区（一问一答各占一格），按估算的token数控制长度：超过预算时从最早的一轮开始丢弃；
+ * 超过空闲时间没有新消息的对话整段丢弃；全部对话的估算内存超过上限时，丢弃最久没有使用的对话
+ */
+public class ConversationMemory {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationMemory.class);
+    private static final int MAX_TURNS = 16; // 每段对话最多保存的消息条数（8轮问答）
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+    // 估算内存用：每条消息除文字外的固定开销（String对象、字符数组头、数组槽位），每段对话的固定开销（对象、三个数组、Map条目）
+    // 按main实测校准（JDK 17，压缩指针）
+    private static final int TURN_OVERHEAD_BYTES = 48;
+    private static final int CONVERSATION_OVERHEAD_BYTES = 160 + MAX_TURNS * 8;
+    
+    /**
+     * 一段对话：环形缓冲区，head为最早一条消息的位置
+     */
+    private static final class Conversation {
+        final String[] contents = new String[MAX_TURNS];
+        final boolean[] fromUser = new boolean[MAX_TURNS];
+        final int[] tokens = new int[MAX_TURNS];
+        int head;
+        int count;
+        int totalTokens;
+        long bytes = CONVERSATION_OVERHEAD_BYTES;
+        long lastActive;
+        long version; // 每次写入后更新，内容相同的历史版本号相同
+        
+        void add(String content, boolean user) {
+            if (count == MAX_TURNS) {
+                removeOldest();
+            }
+            int index = (head + count) % MAX_TURNS;
+            contents[index] = content;
+            fromUser[index] = user;
+            tokens[index] = estimateTokens(content);
+            totalTokens += tokens[index];
+            bytes += TURN_OVERHEAD_BYTES + content.length() * 2L;
+            count++;
+        }
+        
+        void removeOldest() {
+            totalTokens -= tokens[head];
+            bytes -= TURN_OVERHEAD_BYTES + contents[head].length() * 2L;
+            contents[head] = null;
+            head = (head + 1) % MAX_TURNS;
+            count--;
+        }
+        
+        /**
+         * 从最早的一轮开始丢弃，直到不超过token预算；保留的第一条总是用户的提问，不会以回答开头
+         */
+        void trim(int tokenBudget) {
+            while (count > 0 && (totalTokens > tokenBudget || !fromUser[head])) {
+                removeOldest();
+            }
+        }
+    }
+    
+    /**
+     * 一段对话的历史消息和版本号（版本号在整个记忆中递增，不会重复；没有历史时为0）
+     */
+    public static final class History {
+        public static final History EMPTY = new History(new JSONArray(), 0);
+        
+        public final JSONArray messages;
+        public final long version;
+        
+        History(JSONArray messages, long version) {
+            this.messages = messages;
+            this.version = version;
+        }
+        
+        public boolean isEmpty() {
+            return messages.length() == 0;
+        }
+    }
+    
+    private final int tokenBudget;
+    private final long idleMillis;
+    private final long maxBytes;
+    // 键：私聊为QQ号，群聊为负的群号；按最近使用排序
+    private final LinkedHashMap<Long, Conversation> conversations = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private long lastSweep = System.currentTimeMillis();
+    private long lastVersion;
+    
+    /**
+     * 构造函数
+     * @param tokenBudget 每段对话的token预算（估算值）
+     * @param idleMillis 对话空闲多久后丢弃（毫秒）
+     * @param maxBytes 全部对话的估算内存上限（字节）
+     */
+    public ConversationMemory(int tokenBudget, long idleMillis, long maxBytes) {
+        this.tokenBudget = tokenBudget;
+        this.idleMillis = idleMillis;
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * 对话的键：私聊按用户，群聊按群
+     * @param groupId 群号，私聊为0
+     * @param userId 用户QQ号
+     */
+    public static long keyOf(long groupId, long userId) {
+        return groupId != 0 ? -groupId : userId;
+    }
+    
+    /**
+     * 获取对话的历史消息（按时间顺序，格式与Workers AI的messages相同）和版本号，没有历史时返回History.EMPTY
+     */
+    public synchronized History history(long key) {
+        Conversation conversation = conversations.get(key);
+        if (conversation == null) {
+            return History.EMPTY;
+        }
+        if (System.currentTimeMillis() - conversation.lastActive > idleMillis) {
+            remove(key);
+            return History.EMPTY;
+        }
+        JSONArray messages = new JSONArray();
+        for (int i = 0; i < conversation.count; i++) {
+            int index = (conversation.head + i) % MAX_TURNS;
+            JSONObject message = new JSONObject();
+            message.put("role", conversation.fromUser[index] ? "user" : "assistant");
+            message.put("content", conversation.contents[index]);
+            messages.put(message);
+        }
+        return new History(messages, conversation.version);
+    }
+    
+    /**
+     * 记录一轮问答（提问和回答一起写入，并发的两次请求不会交错）
+     */
+    public synchronized void remember(long key, String question, String answer) {
+        long now = System.currentTimeMillis();
+        Conversation conversation = conversations.get(key);
+        if (conversation == null) {
+            conversation = new Conversation();
+            conversations.put(key, conversation);
+        } else {
+            totalBytes -= conversation.bytes;
+        }
+        conversation.add(question, true);
+        conversation.add(answer, false);
+        conversation.trim(tokenBudget);
+        conversation.lastActive = now;
+        conversation.version = ++lastVersion;
+        if (conversation.count == 0) {
+            // 一轮问答就超过预算，不保存
+            conversations.remove(key);
+        } else {
+            totalBytes += conversation.bytes;
+        }
+        
+        if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+            lastSweep = now;
+            evictIdle(now);
+            logger.info("[AI记忆] 对话 {} 段，估算内存 {} KB，平均每段 {} 字节", conversations.size(), totalBytes / 1024,
+                    conversations.isEmpty() ? 0 : totalBytes / conversations.size());
+        }
+        // 超过内存上限时丢弃最久没有使用的对话（当前对话刚被访问，排在最后）
+        Iterator<Map.Entry<Long, Conversation>> iterator = conversations.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Long, Conversation> eldest = iterator.next();
+            if (eldest.getKey() == key) {
+                break;
+            }
+            totalBytes -= eldest.getValue().bytes;
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * 只在对话还没有记忆时记录一轮问答（合并等待同一个回复的提问者调用：同一段对话已由发出请求的人写入时不再重复写入）
+     */
+    public synchronized void rememberIfEmpty(long key, String question, String answer) {
+        Conversation conversation = conversations.get(key);
+        if (conversation == null || System.currentTimeMillis() - conversation.lastActive > idleMillis) {
+            remember(key, question, answer);
+        }
+    }
+    
+    /**
+     * 当前保存的对话数量
+     */
+    public synchronized int size() {
+        return conversations.size();
+    }
+    
+    /**
+     * 全部对话的估算内存（字节）
+     */
+    public synchronized long getEstimatedBytes() {
+        return totalBytes;
+    }
+    
+    private void remove(long key) {
+        Conversation removed = conversations.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+    
+    /**
+     * 丢弃空闲超时的对话（按最近使用排序，从最久没有使用的开始，遇到未超时的即停止）
+     */
+    private void evictIdle(long now) {
+        Iterator<Map.Entry<Long, Conversation>> iterator = conversations.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Conversation> eldest = iterator.next();
+            if (now - eldest.getValue().lastActive <= idleMillis) {
+                break;
+            }
+            totalBytes -= eldest.getValue().bytes;
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * 测量每段对话实际占用的堆内存：写满指定数量的对话（每段8轮中文问答），比较写入前后的堆占用，并与估算值对照
+     * 用法：java -cp qqbot-1.0-SNAPSHOT.jar com.xiaofan.qqbot.ConversationMemory [对话数]
+     */
+    public static void main(String[] args) {
+        int conversationCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        ConversationMemory memory = new ConversationMemory(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        long before = usedHeap();
+        long startTime = System.nanoTime();
+        for (int c = 1; c <= conversationCount; c++) {
+            for (int turn = 0; turn < MAX_TURNS / 2; turn++) {
+                // 每条消息都是新的字符串，与实际收到的消息一样不共享
+                memory.remember(c, "猫娘今天想吃什么呀，第" + turn + "次问你",
+                        "主人问了第" + turn + "次呢，我想吃小鱼干喵~还想喝一杯热牛奶，吃饱了就趴在主人腿上睡觉喵");
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        long measured = usedHeap() - before;
+        System.out.printf("对话 %d 段，每段 %d 条消息：实测 %d 字节/段，估算 %d 字节/段，写入 %dns/轮%n",
+                memory.size(), MAX_TURNS, measured / conversationCount, memory.getEstimatedBytes() / conversationCount,
+                elapsedNanos / ((long) conversationCount * MAX_TURNS / 2));
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+     * 估算文字的token数：中文等字符约每字1个，英文、数字和空白约每4个字符1个
+     */
+    static int estimateTokens(String text) {
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                narrow++;
+            } else {
+                wide++;
+            }
+        }
+        return wide + (narrow + 3) / 4 + 1;
+    }
+}
@@ -0,0 +1,104 @@
+package com.xiaofan.qqbot;
+
+import java.util.List;
+
+/**
+ * 数据存储接口
+ * 抽象签到数据（userdata）和投稿数据（tipdata）的持久化，
+ * 由 storage.type 配置选择实现：mysql（DatabaseManager，经 AsyncDataStorage 隔离和熔断）或 local（LocalDataStorage）
+ * 数据库不可用时，实现可以抛出 StorageUnavailableException
+ */
+public interface DataStorage {
+    
+    /**
+     * 根据配置创建存储实现
+     */
+    static DataStorage create() {
+        String type = ConfigManager.getStorageType();
+        if ("local".equalsIgnoreCase(type)) {
+            return new LocalDataStorage(ConfigManager.getLocalStorageDir());
+        }
+        return new AsyncDataStorage(new DatabaseManager());
+    }
+    
+    // ========== 签到数据 ==========
+    
+    /**
+     * 检查用户是否存在
+     */
+    boolean userExists(long qqId);
+    
+    /**
+     * 获取用户签到信息，不存在返回null
+     */
+    DatabaseManager.UserCheckInInfo getUserInfo(long qqId);
+    
+    /**
+     * 注册新用户（初始积分为1），用户已存在或失败返回false
+     */
+    boolean registerUser(long qqId);
+    
+    /**
+     * 签到：积分+1并记录签到时间
+     */
+    boolean updateCheckIn(long qqId);
+    
+    /**
+     * 加载全部用户签到信息，失败返回null
+     */
+    List<DatabaseManager.UserCheckInInfo> loadAllUsers();
+    
+    /**
+     * 批量写回签到信息（积分和上次签到时间），全部成功返回true
+     */
+    boolean saveCheckIns(List<DatabaseManager.UserCheckInInfo> users);
+    
+    // ========== 投稿数据 ==========
+    
+    /**
+     * 插入投稿，成功返回新投稿的ID，否则返回-1
+     */
+    int insertTip(String tip, String regUser);
+    
+    /**
+     * 随机获取一条投稿，没有数据返回null
+     */
+    DatabaseManager.TipInfo getRandomTip();
+    
+    /**
+     * 按ID获取投稿，不存在返回null
+     */
+    DatabaseManager.TipInfo getTipById(int id);
+    
+    /**
+     * 加载全部投稿ID（升序），失败返回null
+     */
+    int[] loadTipIds();
+    
+    /**
+     * 加载全部投稿（按ID升序），失败返回null
+     */
+    List<DatabaseManager.TipInfo> loadAllTips();
+    
+    /**
+     * 加载全部投稿的浏览和点赞计数，失败返回null
+     */
+    List<DatabaseManager.TipStats> loadTipStats();
+    
+    /**
+     * 批量累加投稿的浏览和点赞计数，全部成功返回true
+     */
+    boolean addTipStats(List<DatabaseManager.TipStats> deltas);
+    
+    /**
+     * 记录用户为投稿点赞（每个用户对每条投稿只记录一次）
+     * @return 新点赞返回1，已经点过赞返回0，失败返回-1
+     */
+    int addTipLike(int tipId, long qqId);
+    
+    /**
+     * 关闭存储，释放资源
+     */
+    default void close() {
+    }
+}
@@ -5,12 +5,15 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * 数据库连接管理器
- * 管理MySQL数据库连接，提供签到相关的数据库操作
+ * 管理MySQL数据库连接，提供签到相关的数据库操作（DataStorage的MySQL实现）
  */
-public class DatabaseManager {
+public class DatabaseManager implements DataStorage {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
     
     // 数据库连接配置（从ConfigManager读取）
@@ -19,10 +22,19 @@ public class DatabaseManager {
     private static final String DB_PASSWORD = ConfigManager.getDbPassword();
     private static final String TABLE_NAME = "userdata";
     
+    // 单次操作超时（秒），与AsyncDataStorage等待结果的超时一致
+    private static final int QUERY_TIMEOUT_SECONDS = Math.max(1, ConfigManager.getDbQueryTimeoutSeconds());
+    
+    static {
+        // 连接超时与单次操作超时一致，避免数据库宕机时工作线程长时间阻塞在建立连接上
+        DriverManager.setLoginTimeout(QUERY_TIMEOUT_SECONDS);
+    }
+    
     /**
      * 获取数据库连接
+     * 连接失败时抛出 StorageUnavailableException，由 AsyncDataStorage 计入熔断
      */
-    private Connection getConnection() throws SQLException {
+    private Connection getConnection() {
         try {
             Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
             logger.debug("数据库连接成功");
@@ -36,20 +48,40 @@ public class DatabaseManager {
                           "3. 数据库用户名和密码是否正确";
             }
             logger.error(errorMsg, e);
-            throw new SQLException(errorMsg, e);
+            throw new StorageUnavailableException("数据库连接失败，请稍后再试", e);
         }
     }
     
+    /**
+     * 创建带执行超时的语句：超时后由驱动取消语句，调用方提示"数据库响应超时"后，写操作不会在后台继续执行并提交
+     * 全表加载等不设超时的操作直接使用conn.prepareStatement
+     */
+    private static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return prepare(conn, sql, Statement.NO_GENERATED_KEYS);
+    }
+    
+    private static PreparedStatement prepare(Connection conn, String sql, int autoGeneratedKeys) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+        try {
+            stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+        return stmt;
+    }
+    
     /**
      * 检查用户是否存在
      * @param qqId QQ号
      * @return 如果存在返回true，否则返回false
      */
+    @Override
     public boolean userExists(long qqId) {
         String sql = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE qq_id = ?";
         
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = prepare(conn, sql)) {
             
             stmt.setLong(1, qqId);
             
@@ -70,11 +102,12 @@ public class DatabaseManager {
      * @param qqId QQ号
      * @return 用户签到信息，如果不存在返回null
      */
+    @Override
     public UserCheckInInfo getUserInfo(long qqId) {
         String sql = "SELECT qq_id, qd, qd_last_time, reg_time FROM " + TABLE_NAME + " WHERE qq_id = ?";
         
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = prepare(conn, sql)) {
             
             stmt.setLong(1, qqId);
             
@@ -109,12 +142,13 @@ public class DatabaseManager {
      * @param qqId QQ号
      * @return 注册成功返回true，否则返回false
      */
+    @Override
     public boolean registerUser(long qqId) {
         LocalDateTime now = LocalDateTime.now();
         String sql = "INSERT INTO " + TABLE_NAME + " (qq_id, username, qd, qd_last_time, reg_time) VALUES (?, ?, ?, ?, ?)";
         
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = prepare(conn, sql)) {
             
             stmt.setLong(1, qqId);
             stmt.setString(2, String.valueOf(qqId)); // 使用QQ号作为默认用户名
@@ -142,12 +176,13 @@ public class DatabaseManager {
      * @param qqId QQ号
      * @return 更新成功返回true，否则返回false
      */
+    @Override
     public boolean updateCheckIn(long qqId) {
         LocalDateTime now = LocalDateTime.now();
         String sql = "UPDATE " + TABLE_NAME + " SET qd = qd + 1, qd_last_time = ? WHERE qq_id = ?";
         
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = prepare(conn, sql)) {
             
             stmt.setTimestamp(1, Timestamp.valueOf(now));
             stmt.setLong(2, qqId);
@@ -167,18 +202,101 @@ public class DatabaseManager {
         }
     }
     
+    /**
+     * 加载全部用户签到信息（用于启动时预热缓存）
+     * @return 用户签到信息列表，失败返回null
+     */
+    @Override
+    public List<UserCheckInInfo> loadAllUsers() {
+        String sql = "SELECT qq_id, qd, qd_last_time, reg_time FROM " + TABLE_NAME;
+        List<UserCheckInInfo> users = new ArrayList<>();
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            while (rs.next()) {
+                UserCheckInInfo info = new UserCheckInInfo();
+                info.qqId = rs.getLong("qq_id");
+                info.qd = rs.getInt("qd");
+                
+                Timestamp qdLastTime = rs.getTimestamp("qd_last_time");
+                if (qdLastTime != null) {
+                    info.qdLastTime = qdLastTime.toLocalDateTime();
+                }
+                
+                Timestamp regTime = rs.getTimestamp("reg_time");
+                if (regTime != null) {
+                    info.regTime = regTime.toLocalDateTime();
+                }
+                
+                users.add(info);
+            }
+            
+            logger.info("已加载全部用户签到信息，共 {} 条", users.size());
+            return users;
+        } catch (SQLException e) {
+            logger.error("加载全部用户签到信息时发生错误", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 批量写回签到信息（积分和上次签到时间）
+     * 在一个事务中执行，全部成功或全部失败
+     * @param users 需要写回的用户签到信息
+     * @return 写回成功返回true，否则返回false
+     */
+    @Override
+    public boolean saveCheckIns(List<UserCheckInInfo> users) {
+        if (users.isEmpty()) {
+            return true;
+        }
+        
+        String sql = "UPDATE " + TABLE_NAME + " SET qd = ?, qd_last_time = ? WHERE qq_id = ?";
+        
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = prepare(conn, sql)) {
+                for (UserCheckInInfo info : users) {
+                    stmt.setInt(1, info.qd);
+                    if (info.qdLastTime != null) {
+                        stmt.setTimestamp(2, Timestamp.valueOf(info.qdLastTime));
+                    } else {
+                        stmt.setNull(2, Types.TIMESTAMP);
+                    }
+                    stmt.setLong(3, info.qqId);
+                    stmt.addBatch();
+                }
+                
+                stmt.executeBatch();
+                conn.commit();
+                logger.debug("批量写回签到信息成功，共 {} 条", users.size());
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("批量写回签到信息时发生错误，共 {} 条", users.size(), e);
+            return false;
+        }
+    }
+    
     /**
      * 插入投稿数据到tipdata表
      * @param tip 投稿内容
      * @param regUser 投稿用户的QQ号
-     * @return 插入成功返回true，否则返回false
+     * @return 插入成功返回新投稿的ID，否则返回-1
      */
-    public boolean insertTip(String tip, String regUser) {
+    @Override
+    public int insertTip(String tip, String regUser) {
         LocalDateTime now = LocalDateTime.now();
         String sql = "INSERT INTO tipdata (tip, reg_user, reg_time) VALUES (?, ?, ?)";
         
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = prepare(conn, sql, Statement.RETURN_GENERATED_KEYS)) {
             
             stmt.setString(1, tip);
             stmt.setString(2, regUser);
@@ -187,41 +305,42 @@ public class DatabaseManager {
             int rowsAffected = stmt.executeUpdate();
             
             if (rowsAffected > 0) {
-                logger.info("投稿插入成功，用户: {}", regUser);
-                return true;
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        int id = keys.getInt(1);
+                        logger.info("投稿插入成功，用户: {}, ID: {}", regUser, id);
+                        return id;
+                    }
+                }
+                logger.warn("投稿插入成功但未返回ID，用户: {}", regUser);
+                return -1;
             } else {
                 logger.warn("投稿插入失败，用户: {}", regUser);
-                return false;
+                return -1;
             }
         } catch (SQLException e) {
             logger.error("插入投稿时发生错误，用户: {}", regUser, e);
-            return false;
+            return -1;
         }
     }
     
     /**
      * 随机获取一条tipdata记录
+     * 注意：ORDER BY RAND()需要全表扫描排序，正常情况下由TipIndex在内存中随机选取ID，
+     * 此方法仅在索引尚未加载时作为后备
      * @return TipInfo对象，如果没有数据返回null
      */
+    @Override
     public TipInfo getRandomTip() {
         // 使用ORDER BY RAND() LIMIT 1来随机获取一条记录
         String sql = "SELECT id, tip, reg_user, reg_time FROM tipdata ORDER BY RAND() LIMIT 1";
         
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
+             PreparedStatement stmt = prepare(conn, sql);
              ResultSet rs = stmt.executeQuery()) {
             
             if (rs.next()) {
-                TipInfo tipInfo = new TipInfo();
-                tipInfo.id = rs.getInt("id");
-                tipInfo.tip = rs.getString("tip");
-                tipInfo.regUser = rs.getString("reg_user");
-                
-                Timestamp regTime = rs.getTimestamp("reg_time");
-                if (regTime != null) {
-                    tipInfo.regTime = regTime.toLocalDateTime();
-                }
-                
+                TipInfo tipInfo = readTipInfo(rs);
                 logger.debug("随机获取tip成功，ID: {}", tipInfo.id);
                 return tipInfo;
             }
@@ -232,6 +351,183 @@ public class DatabaseManager {
         return null;
     }
     
+    /**
+     * 按主键获取一条tipdata记录
+     * @param id 投稿ID
+     * @return TipInfo对象，如果不存在返回null
+     */
+    @Override
+    public TipInfo getTipById(int id) {
+        String sql = "SELECT id, tip, reg_user, reg_time FROM tipdata WHERE id = ?";
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = prepare(conn, sql)) {
+            
+            stmt.setInt(1, id);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return readTipInfo(rs);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("获取tip时发生错误，ID: {}", id, e);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * 加载全部投稿ID（按ID升序）
+     * @return 投稿ID数组，失败返回null
+     */
+    @Override
+    public int[] loadTipIds() {
+        String sql = "SELECT id FROM tipdata ORDER BY id";
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = prepare(conn, sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            int[] ids = new int[256];
+            int count = 0;
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count << 1);
+                }
+                ids[count++] = rs.getInt(1);
+            }
+            return Arrays.copyOf(ids, count);
+        } catch (SQLException e) {
+            logger.error("加载投稿ID时发生错误", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 加载全部投稿（按ID升序），用于启动时构建搜索索引
+     * @return 投稿列表，失败返回null
+     */
+    @Override
+    public List<TipInfo> loadAllTips() {
+        String sql = "SELECT id, tip, reg_user, reg_time FROM tipdata ORDER BY id";
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            List<TipInfo> tips = new ArrayList<>();
+            while (rs.next()) {
+                tips.add(readTipInfo(rs));
+            }
+            return tips;
+        } catch (SQLException e) {
+            logger.error("加载全部投稿时发生错误", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 加载全部投稿的浏览和点赞计数
+     * @return 计数列表，失败返回null
+     */
+    @Override
+    public List<TipStats> loadTipStats() {
+        String sql = "SELECT tip_id, views, likes FROM tipstats";
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            List<TipStats> stats = new ArrayList<>();
+            while (rs.next()) {
+                TipStats tipStats = new TipStats();
+                tipStats.tipId = rs.getInt("tip_id");
+                tipStats.views = rs.getLong("views");
+                tipStats.likes = rs.getLong("likes");
+                stats.add(tipStats);
+            }
+            return stats;
+        } catch (SQLException e) {
+            logger.error("加载投稿计数时发生错误", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 批量累加投稿的浏览和点赞计数（一个事务内完成）
+     * @param deltas 每条投稿的增量
+     * @return 全部成功返回true
+     */
+    @Override
+    public boolean addTipStats(List<TipStats> deltas) {
+        if (deltas.isEmpty()) {
+            return true;
+        }
+        
+        String sql = "INSERT INTO tipstats (tip_id, views, likes) VALUES (?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE views = views + VALUES(views), likes = likes + VALUES(likes)";
+        
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = prepare(conn, sql)) {
+                for (TipStats delta : deltas) {
+                    stmt.setInt(1, delta.tipId);
+                    stmt.setLong(2, delta.views);
+                    stmt.setLong(3, delta.likes);
+                    stmt.addBatch();
+                }
+                
+                stmt.executeBatch();
+                conn.commit();
+                logger.debug("批量写回投稿计数成功，共 {} 条", deltas.size());
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("批量写回投稿计数时发生错误，共 {} 条", deltas.size(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 记录用户为投稿点赞（tiplikes表以投稿ID和QQ号为主键，重复点赞被忽略）
+     * @return 新点赞返回1，已经点过赞返回0，失败返回-1
+     */
+    @Override
+    public int addTipLike(int tipId, long qqId) {
+        String sql = "INSERT IGNORE INTO tiplikes (tip_id, qq_id, like_time) VALUES (?, ?, ?)";
+        
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = prepare(conn, sql)) {
+            
+            stmt.setInt(1, tipId);
+            stmt.setLong(2, qqId);
+            stmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            
+            return stmt.executeUpdate() > 0 ? 1 : 0;
+        } catch (SQLException e) {
+            logger.error("记录点赞时发生错误，投稿ID: {}, QQ号: {}", tipId, qqId, e);
+            return -1;
+        }
+    }
+    
+    private TipInfo readTipInfo(ResultSet rs) throws SQLException {
+        TipInfo tipInfo = new TipInfo();
+        tipInfo.id = rs.getInt("id");
+        tipInfo.tip = rs.getString("tip");
+        tipInfo.regUser = rs.getString("reg_user");
+        
+        Timestamp regTime = rs.getTimestamp("reg_time");
+        if (regTime != null) {
+            tipInfo.regTime = regTime.toLocalDateTime();
+        }
+        return tipInfo;
+    }
+    
     /**
      * 用户签到信息数据类
      */
@@ -251,5 +547,14 @@ public class DatabaseManager {
         public String regUser;
         public LocalDateTime regTime;
     }
+    
+    /**
+     * 投稿计数数据类（tipstats表，写回时表示增量）
+     */
+    public static class TipStats {
+        public int tipId;
+        public long views;
+        public long likes;
+    }
 }
 
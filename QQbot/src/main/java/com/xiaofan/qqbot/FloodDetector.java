@@ -0,0 +1,90 @@
+package com.xiaofan.qqbot;
+
+import java.util.Arrays;
+
+/**
+ * 刷屏检测器
+ * 用Count-Min Sketch估计每个QQ号在最近一段时间（滑动窗口）内发送的消息数，内存固定，与用户数量无关。
+ * 窗口按秒分成若干格，每格一个计数表，另有一个汇总表保存窗口内所有格之和；记录消息时每行都累加当前格和汇总表
+ * （不做保守更新，否则某一格滑出窗口减去后，只累加过部分行的QQ号可能被低估），
+ * 某一格滑出窗口时从汇总表中减去，查询只需读汇总表的每行各一个计数取最小值。
+ * 估计值只会偏大不会偏小，阈值应留有余量；每行4096列、共4行（窗口10秒时共约720KB），窗口内消息不超过一万条时绝大多数用户的误差为0~1条
+ */
+public class FloodDetector {
+    private static final int DEPTH = 4;
+    private static final int WIDTH_BITS = 12;
+    private static final int WIDTH = 1 << WIDTH_BITS;
+    private static final int WIDTH_MASK = WIDTH - 1;
+    
+    private final int[][] slotCounts; // 每秒一格的计数表，按秒号取模循环使用
+    private final int[] windowCounts = new int[DEPTH * WIDTH]; // 窗口内所有格之和
+    private final int[] columns = new int[DEPTH];
+    private long currentSecond;
+    
+    /**
+     * 构造函数
+     * @param windowSeconds 滑动窗口长度（秒）
+     */
+    public FloodDetector(int windowSeconds) {
+        this.slotCounts = new int[Math.max(1, windowSeconds)][DEPTH * WIDTH];
+        this.currentSecond = System.currentTimeMillis() / 1000;
+    }
+    
+    /**
+     * 记录一条消息，返回该QQ号在窗口内的消息数（估计值，含本条，只会偏大不会偏小）
+     * 其他QQ号与它共用计数时，两次调用之间返回值可能一次增加多个，调用方应判断"超过阈值"而不是"等于阈值+1"
+     * @param qqId 发送者QQ号
+     * @param nowMillis 当前时间（毫秒）
+     */
+    public synchronized int record(long qqId, long nowMillis) {
+        advance(nowMillis / 1000);
+        
+        long hash = Hashing.mix64(qqId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int row = 0; row < DEPTH; row++) {
+            columns[row] = row * WIDTH + ((h1 + row * h2) & WIDTH_MASK);
+        }
+        
+        // 每行都累加（不做保守更新）：每个计数都包含该QQ号在各格中的全部消息，格滑出窗口减去后仍然不会偏小
+        int estimate = Integer.MAX_VALUE;
+        int[] slot = slotCounts[(int) (currentSecond % slotCounts.length)];
+        for (int row = 0; row < DEPTH; row++) {
+            int column = columns[row];
+            slot[column]++;
+            estimate = Math.min(estimate, ++windowCounts[column]);
+        }
+        return estimate;
+    }
+    
+    /**
+     * 计数表占用的内存（字节）
+     */
+    public int getMemoryBytes() {
+        return (slotCounts.length + 1) * DEPTH * WIDTH * 4;
+    }
+    
+    /**
+     * 推进到指定秒，把滑出窗口的格从汇总表中减去并清零
+     */
+    private void advance(long second) {
+        if (second <= currentSecond) {
+            return;
+        }
+        if (second - currentSecond >= slotCounts.length) {
+            for (int[] slot : slotCounts) {
+                Arrays.fill(slot, 0);
+            }
+            Arrays.fill(windowCounts, 0);
+        } else {
+            for (long s = currentSecond + 1; s <= second; s++) {
+                int[] slot = slotCounts[(int) (s % slotCounts.length)];
+                for (int i = 0; i < slot.length; i++) {
+                    windowCounts[i] -= slot[i];
+                }
+                Arrays.fill(slot, 0);
+            }
+        }
+        currentSecond = second;
+    }
+}
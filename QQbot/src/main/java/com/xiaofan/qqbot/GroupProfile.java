@@ -0,0 +1,111 @@
+package com.xiaofan.qqbot;
+
+/**
+ * 群功能配置（不可变）
+ * 每个群可以单独开关各项功能、设置自己的触发词和回复，未单独配置的群使用默认配置（全部功能开启、使用全局触发词）。
+ * 功能开关编译为一个int位集合，判断是否开启只需一次位运算
+ */
+public final class GroupProfile {
+
+    /**
+     * 可按群开关的功能，配置时可以写英文名或中文名
+     */
+    public enum Feature {
+        TRIGGER("trigger", "触发词"),
+        PLAYER_COUNT("player_count", "人数查询"),
+        CHECK_IN("checkin", "签到"),
+        POINTS("points", "查询积分"),
+        LEADERBOARD("leaderboard", "积分排行"),
+        TIP_SUBMISSION("tip_submit", "投稿"),
+        TIP("tip", "tip"),
+        TIP_SEARCH("tip_search", "搜索tip"),
+        TIP_LIKE("tip_like", "点赞"),
+        HOT_TIPS("hot_tips", "热门tip"),
+        TRANSFER("transfer", "转账"),
+        SHOP("shop", "商店"),
+        HELP("help", "帮助"),
+        BAN("ban", "封禁"),
+        SERVER_COMMAND("server_command", "/c命令"),
+        AI("ai", "猫娘AI"),
+        RELAY("relay", "服务器消息转发");
+
+        private final String configName;
+        private final String displayName;
+
+        Feature(String configName, String displayName) {
+            this.configName = configName;
+            this.displayName = displayName;
+        }
+
+        public int bit() {
+            return 1 << ordinal();
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * 按英文名或中文名查找功能，找不到返回null
+         */
+        public static Feature parse(String name) {
+            for (Feature feature : values()) {
+                if (feature.configName.equalsIgnoreCase(name) || feature.displayName.equalsIgnoreCase(name)) {
+                    return feature;
+                }
+            }
+            return null;
+        }
+    }
+
+    public static final int ALL_FEATURES = (1 << Feature.values().length) - 1;
+
+    private final int index;
+    private final long groupId;
+    private final int features;
+    private final String triggerMessage;
+    private final String replyMessage;
+
+    /**
+     * 构造函数
+     * @param index 在BotConfig群配置数组中的下标（默认配置为0），用于按下标查找预先编译的分发表
+     * @param groupId 群号，默认配置为0
+     * @param features 开启的功能位集合
+     * @param triggerMessage 触发词
+     * @param replyMessage 触发词的回复
+     */
+    public GroupProfile(int index, long groupId, int features, String triggerMessage, String replyMessage) {
+        this.index = index;
+        this.groupId = groupId;
+        this.features = features;
+        this.triggerMessage = triggerMessage;
+        this.replyMessage = replyMessage;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getGroupId() {
+        return groupId;
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    /**
+     * 检查功能是否开启
+     */
+    public boolean has(Feature feature) {
+        return (features & feature.bit()) != 0;
+    }
+
+    public String getTriggerMessage() {
+        return triggerMessage;
+    }
+
+    public String getReplyMessage() {
+        return replyMessage;
+    }
+}
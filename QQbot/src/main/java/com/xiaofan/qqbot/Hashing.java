@@ -0,0 +1,22 @@
+package com.xiaofan.qqbot;
+
+/**
+ * 哈希工具
+ */
+public final class Hashing {
+    
+    private Hashing() {
+    }
+    
+    /**
+     * 64位哈希混淆（MurmurHash3 fmix64），把连续的QQ号、ID等打散到全部64位
+     */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -55,10 +55,16 @@ public class HelpHandler {
         helpMessage.append("2. 人数查询：查询Minecraft服务器在线人数\n");
         helpMessage.append("3. 签到：每日签到获得积分（24小时冷却）\n");
         helpMessage.append("4. 查询积分：查询当前签到积分\n");
-        helpMessage.append("5. 投稿 （内容）：投稿内容到数据库（投稿和内容之间必须有空格）\n");
-        helpMessage.append("6. tip：随机获取一条投稿内容\n");
-        helpMessage.append("7. /c （内容）：发送消息到Minecraft服务器（仅限指定群组）\n");
-        helpMessage.append("8. 帮助：显示此帮助菜单");
+        helpMessage.append("5. 积分排行：查看积分前10名和自己的排名\n");
+        helpMessage.append("6. 投稿 （内容）：投稿内容到数据库（投稿和内容之间必须有空格）\n");
+        helpMessage.append("7. tip：随机获取一条投稿内容\n");
+        helpMessage.append("8. 搜索tip （关键词）：按关键词搜索投稿内容\n");
+        helpMessage.append("9. 点赞 （编号）：为指定编号的投稿点赞\n");
+        helpMessage.append("10. 热门tip：查看点赞最多的投稿\n");
+        helpMessage.append("11. 转账 （QQ号） （数量）：把自己的积分转给其他用户\n");
+        helpMessage.append("12. 商店：查看积分商店，购买 （物品名称）：用积分购买物品\n");
+        helpMessage.append("13. /c （内容）：发送消息到Minecraft服务器（仅限指定群组）\n");
+        helpMessage.append("14. 帮助：显示此帮助菜单");
         
         messageSender.apply(groupId, helpMessage.toString());
         logger.info("帮助菜单已发送，群号: {}, QQ号: {}", groupId, userId);
@@ -0,0 +1,111 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * 热门投稿处理器
+ * 检测"热门tip"关键词，按点赞数和浏览次数返回最热门的投稿
+ */
+public class HotTipsHandler {
+    private static final Logger logger = LoggerFactory.getLogger(HotTipsHandler.class);
+    
+    private static final String TRIGGER_KEYWORD = "热门tip";
+    private static final int TOP_COUNT = 5;
+    private static final int PREVIEW_LENGTH = 40; // 每条结果最多显示的字数
+    
+    private final TipIndex tipIndex;
+    private final TipStatsCounter tipStatsCounter;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param tipIndex 投稿内存索引
+     * @param tipStatsCounter 投稿浏览和点赞计数
+     */
+    public HotTipsHandler(BiFunction<Long, String, Boolean> messageSender, TipIndex tipIndex, TipStatsCounter tipStatsCounter) {
+        this.messageSender = messageSender;
+        this.tipIndex = tipIndex;
+        this.tipStatsCounter = tipStatsCounter;
+    }
+    
+    /**
+     * 检查消息是否完全匹配触发关键词（去除首尾空格后精确匹配，不区分大小写）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        return messageText.trim().equalsIgnoreCase(TRIGGER_KEYWORD);
+    }
+    
+    /**
+     * 处理热门投稿请求
+     * @param groupId 群号
+     * @param userId QQ号
+     * @param messageText 消息内容
+     */
+    public void handleHotTips(long groupId, long userId, String messageText) {
+        if (!shouldHandle(messageText)) {
+            return;
+        }
+        
+        logger.info("检测到热门tip请求，群号: {}, QQ号: {}", groupId, userId);
+        
+        if (!tipStatsCounter.isLoaded()) {
+            messageSender.apply(groupId, "投稿计数正在加载，请稍后再试");
+            return;
+        }
+        
+        try {
+            // 多取几条，跳过已被删除的投稿
+            List<TipStatsCounter.Entry> top = tipStatsCounter.top(TOP_COUNT * 2);
+            
+            StringBuilder message = new StringBuilder();
+            message.append("————热门tip————");
+            int shown = 0;
+            for (TipStatsCounter.Entry entry : top) {
+                if (shown >= TOP_COUNT) {
+                    break;
+                }
+                DatabaseManager.TipInfo tipInfo = tipIndex.getTip(entry.tipId);
+                if (tipInfo == null) {
+                    continue;
+                }
+                String preview = tipInfo.tip;
+                if (preview.length() > PREVIEW_LENGTH) {
+                    preview = preview.substring(0, PREVIEW_LENGTH) + "…";
+                }
+                shown++;
+                message.append("\n").append(shown).append(". #").append(entry.tipId).append(" ").append(preview)
+                        .append("（点赞 ").append(entry.likes).append(" · 浏览 ").append(entry.views).append("）");
+            }
+            
+            if (shown == 0) {
+                messageSender.apply(groupId, "暂无热门投稿，发送\"tip\"看看吧");
+                return;
+            }
+            
+            messageSender.apply(groupId, message.toString());
+            logger.info("热门tip查询成功，条数: {}", shown);
+            
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("热门tip查询失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "热门tip查询失败：" + e.getMessage());
+        } catch (Exception e) {
+            logger.error("处理热门tip时发生错误，QQ号: {}", userId, e);
+            
+            String errorMessage = "热门tip查询失败";
+            if (e.getMessage() != null) {
+                errorMessage = "热门tip查询失败：" + e.getMessage();
+            }
+            
+            messageSender.apply(groupId, errorMessage);
+        }
+    }
+}
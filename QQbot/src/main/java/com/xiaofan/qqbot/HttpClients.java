@@ -0,0 +1,68 @@
+package com.xiaofan.qqbot;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享的HTTP客户端
+ * 各组件按自己的超时设置从同一个基础客户端派生，共用一个连接池和调度线程，不再各自创建一套；
+ * 启动时在后台预先建立到NapCat、Cloudflare等地址的连接（DNS解析、TCP和TLS握手），首次请求可以直接复用
+ */
+public final class HttpClients {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClients.class);
+    
+    private static final OkHttpClient BASE = new OkHttpClient();
+    
+    private HttpClients() {
+    }
+    
+    /**
+     * 按指定超时派生客户端（与其他组件共用连接池）
+     * @param connectSeconds 连接超时（秒）
+     * @param readSeconds 读取超时（秒），0表示不限
+     * @param writeSeconds 写入超时（秒）
+     */
+    public static OkHttpClient withTimeouts(long connectSeconds, long readSeconds, long writeSeconds) {
+        return BASE.newBuilder()
+                .connectTimeout(connectSeconds, TimeUnit.SECONDS)
+                .readTimeout(readSeconds, TimeUnit.SECONDS)
+                .writeTimeout(writeSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+    
+    /**
+     * 在后台向地址发送一次HEAD请求，建立的连接留在连接池中供后续请求复用（不关心响应内容）
+     * @param name 名称（用于日志）
+     * @param url 地址
+     */
+    public static void warmUp(String name, String url) {
+        Request request;
+        try {
+            request = new Request.Builder().url(url).head().build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("[启动] {}地址无效，跳过连接预热: {}", name, url);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        BASE.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                logger.info("[启动] {}连接已预热，耗时 {}ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+            
+            @Override
+            public void onFailure(Call call, IOException e) {
+                logger.warn("[启动] {}连接预热失败: {}", name, e.getMessage());
+            }
+        });
+    }
+}
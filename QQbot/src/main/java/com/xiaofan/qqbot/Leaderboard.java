@@ -0,0 +1,159 @@
+package com.xiaofan.qqbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 积分排行榜
+ * 在内存中增量维护全部用户的积分排名：
+ * 1. 按（积分降序，QQ号升序）排序的红黑树（TreeSet），前N名直接从头部迭代
+ * 2. 以积分为下标的树状数组（Fenwick树），O(log P)计算"积分比我高的人数"得到排名
+ * 树状数组只覆盖MAX_INDEXED_POINTS以下的积分，更高的积分（如手动修改过的异常数据）不占用数组，
+ * 这些用户的排名从红黑树头部数出（人数很少），单个超大积分不会分配巨大的数组
+ * 每次积分变化只需O(log n)更新，查询不扫描userdata
+ */
+public class Leaderboard {
+    private static final int INITIAL_POINTS_CAPACITY = 1024;
+    private static final int MAX_INDEXED_POINTS = 1 << 16; // 树状数组覆盖的积分上限（不含），两个数组共约512KB
+    
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        if (a.points != b.points) {
+            return Integer.compare(b.points, a.points);
+        }
+        return Long.compare(a.qqId, b.qqId);
+    };
+    
+    private final LongIntHashMap pointsByUser = new LongIntHashMap(1024);
+    private final TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+    
+    // counts[p] 为积分等于p的用户数，fenwick为其树状数组（只统计积分低于MAX_INDEXED_POINTS的用户）
+    private int[] counts = new int[INITIAL_POINTS_CAPACITY];
+    private int[] fenwick = new int[INITIAL_POINTS_CAPACITY + 1];
+    
+    /**
+     * 设置用户积分（新增或更新）
+     * @param qqId QQ号
+     * @param points 当前积分
+     */
+    public synchronized void update(long qqId, int points) {
+        int clamped = Math.max(0, points);
+        int old = pointsByUser.put(qqId, clamped, -1);
+        if (old == clamped) {
+            return;
+        }
+        
+        if (old >= 0) {
+            ranking.remove(new Entry(qqId, old));
+            addCount(old, -1);
+        }
+        ranking.add(new Entry(qqId, clamped));
+        addCount(clamped, 1);
+    }
+    
+    /**
+     * 获取前N名
+     * @param n 名次数量
+     * @return 按排名排序的条目
+     */
+    public synchronized List<Entry> top(int n) {
+        List<Entry> result = new ArrayList<>(Math.min(n, ranking.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (iterator.hasNext() && result.size() < n) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+    
+    /**
+     * 获取用户排名（同分并列）
+     * @param qqId QQ号
+     * @return 排名（从1开始），用户不存在返回0
+     */
+    public synchronized int rankOf(long qqId) {
+        int points = pointsByUser.get(qqId, -1);
+        if (points < 0) {
+            return 0;
+        }
+        if (points >= MAX_INDEXED_POINTS) {
+            // 积分高于自己的人都排在红黑树中自己之前（同分的人QQ号不小于Long.MIN_VALUE，不计入）
+            return ranking.headSet(new Entry(Long.MIN_VALUE, points)).size() + 1;
+        }
+        // 排名 = 积分严格高于自己的人数 + 1（树状数组之外的用户积分都更高）
+        return pointsByUser.size() - prefixSum(points) + 1;
+    }
+    
+    /**
+     * 获取用户积分
+     * @return 积分，用户不存在返回-1
+     */
+    public synchronized int pointsOf(long qqId) {
+        return pointsByUser.get(qqId, -1);
+    }
+    
+    /**
+     * 获取排行榜中的用户总数
+     */
+    public synchronized int size() {
+        return pointsByUser.size();
+    }
+    
+    private void addCount(int points, int delta) {
+        if (points >= MAX_INDEXED_POINTS) {
+            return;
+        }
+        if (points >= counts.length) {
+            grow(points);
+        }
+        counts[points] += delta;
+        for (int i = points + 1; i < fenwick.length; i += i & -i) {
+            fenwick[i] += delta;
+        }
+    }
+    
+    /**
+     * 积分小于等于points的用户数
+     */
+    private int prefixSum(int points) {
+        int sum = 0;
+        for (int i = Math.min(points + 1, fenwick.length - 1); i > 0; i -= i & -i) {
+            sum += fenwick[i];
+        }
+        return sum;
+    }
+    
+    /**
+     * 扩容并以O(P)重建树状数组（points小于MAX_INDEXED_POINTS，容量不会超过上限）
+     */
+    private void grow(int points) {
+        int capacity = counts.length;
+        while (capacity <= points) {
+            capacity <<= 1;
+        }
+        counts = Arrays.copyOf(counts, capacity);
+        fenwick = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            fenwick[i] += counts[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                fenwick[parent] += fenwick[i];
+            }
+        }
+    }
+    
+    /**
+     * 排行榜条目
+     */
+    public static class Entry {
+        public final long qqId;
+        public final int points;
+        
+        Entry(long qqId, int points) {
+            this.qqId = qqId;
+            this.points = points;
+        }
+    }
+}
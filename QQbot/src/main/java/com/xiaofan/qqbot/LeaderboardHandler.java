@@ -0,0 +1,93 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * 积分排行处理器
+ * 检测"积分排行"关键词，返回积分前10名和发送者自己的排名
+ */
+public class LeaderboardHandler {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardHandler.class);
+    
+    private static final String TRIGGER_KEYWORD = "积分排行";
+    private static final int TOP_COUNT = 10;
+    
+    private final UserDataCache userDataCache;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param userDataCache 用户签到数据缓存（维护排行榜）
+     */
+    public LeaderboardHandler(BiFunction<Long, String, Boolean> messageSender, UserDataCache userDataCache) {
+        this.messageSender = messageSender;
+        this.userDataCache = userDataCache;
+    }
+    
+    /**
+     * 检查消息是否完全匹配触发关键词（去除首尾空格后精确匹配）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        return messageText.trim().equals(TRIGGER_KEYWORD);
+    }
+    
+    /**
+     * 处理积分排行请求
+     * @param groupId 群号
+     * @param userId QQ号
+     * @param messageText 消息内容
+     */
+    public void handleLeaderboard(long groupId, long userId, String messageText) {
+        if (!shouldHandle(messageText)) {
+            return;
+        }
+        
+        logger.info("检测到积分排行请求，群号: {}, QQ号: {}", groupId, userId);
+        
+        // 排行榜需要全部用户数据，预热完成前结果不完整
+        if (!userDataCache.isWarmedUp()) {
+            messageSender.apply(groupId, "排行榜正在加载，请稍后再试");
+            logger.info("积分排行查询失败：用户数据尚未加载完成");
+            return;
+        }
+        
+        Leaderboard leaderboard = userDataCache.getLeaderboard();
+        List<Leaderboard.Entry> top = leaderboard.top(TOP_COUNT);
+        
+        if (top.isEmpty()) {
+            messageSender.apply(groupId, "暂无签到用户，发送\"签到\"成为第一名吧");
+            return;
+        }
+        
+        StringBuilder message = new StringBuilder();
+        message.append("————积分排行（前").append(TOP_COUNT).append("名）————\n");
+        // 同分并列，名次与rankOf一致（如1、1、3）
+        int displayRank = 0;
+        for (int i = 0; i < top.size(); i++) {
+            Leaderboard.Entry entry = top.get(i);
+            if (i == 0 || entry.points != top.get(i - 1).points) {
+                displayRank = i + 1;
+            }
+            message.append(displayRank).append(". ").append(entry.qqId).append("：").append(entry.points).append("分\n");
+        }
+        
+        int rank = leaderboard.rankOf(userId);
+        if (rank > 0) {
+            message.append("你的排名：第").append(rank).append("名（共").append(leaderboard.size())
+                    .append("人），当前积分：").append(leaderboard.pointsOf(userId));
+        } else {
+            message.append("你还没有签到记录，请先发送\"签到\"注册");
+        }
+        
+        messageSender.apply(groupId, message.toString());
+        logger.info("积分排行查询成功，QQ号: {}, 排名: {}", userId, rank);
+    }
+}
@@ -0,0 +1,658 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * 本地嵌入式存储
+ * 单机部署时代替MySQL：所有数据保存在内存索引中，修改追加写入日志文件，
+ * 日志达到一定条数后压缩为快照文件。启动时先加载快照，再重放日志
+ *
+ * 文件格式（快照和日志相同）：每条记录为 [类型:1字节][长度:4字节][内容][CRC32:4字节]，
+ * 记录都是完整状态的覆盖写，重复重放结果不变；日志末尾不完整或校验失败的记录会被截掉
+ */
+public class LocalDataStorage implements DataStorage {
+    private static final Logger logger = LoggerFactory.getLogger(LocalDataStorage.class);
+    
+    private static final String SNAPSHOT_FILE_NAME = "storage.snapshot";
+    private static final String LOG_FILE_NAME = "storage.log";
+    private static final int COMPACT_THRESHOLD = 10000; // 日志记录数达到该值时压缩为快照
+    
+    private static final byte RECORD_USER = 1;
+    private static final byte RECORD_TIP = 2;
+    private static final byte RECORD_TIP_STATS = 3;
+    private static final byte RECORD_TIP_LIKE = 4;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    
+    private final Path snapshotPath;
+    private final Path logPath;
+    
+    // 内存索引：QQ号 -> users下标；tips按ID升序
+    private final LongIntHashMap userSlots = new LongIntHashMap(1024);
+    private final List<DatabaseManager.UserCheckInInfo> users = new ArrayList<>();
+    private final List<DatabaseManager.TipInfo> tips = new ArrayList<>();
+    private int lastTipId = 0;
+    private final LongIntHashMap tipStatSlots = new LongIntHashMap(1024);
+    private final List<DatabaseManager.TipStats> tipStats = new ArrayList<>();
+    // 点赞记录：投稿ID -> 点过赞的QQ号（值无意义）
+    private final Map<Integer, LongIntHashMap> tipLikes = new HashMap<>();
+    
+    private FileOutputStream logFile;
+    private DataOutputStream logOut;
+    private long logLength = 0;    // 日志中完整写入的字节数
+    private boolean logTorn = false; // 上次写入失败，日志需截断到logLength后才能继续追加
+    private int logRecords = 0;
+    
+    /**
+     * 构造函数
+     * @param directory 数据目录，不存在时自动创建
+     */
+    public LocalDataStorage(File directory) {
+        this.snapshotPath = directory.toPath().resolve(SNAPSHOT_FILE_NAME);
+        this.logPath = directory.toPath().resolve(LOG_FILE_NAME);
+        
+        try {
+            Files.createDirectories(directory.toPath());
+            
+            long startTime = System.currentTimeMillis();
+            if (Files.exists(snapshotPath)) {
+                replay(snapshotPath);
+            }
+            if (Files.exists(logPath)) {
+                long validLength = replay(logPath);
+                if (validLength < Files.size(logPath)) {
+                    logger.warn("[本地存储] 日志末尾存在不完整记录，已截断到 {} 字节", validLength);
+                    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+            openLog(true);
+            
+            logger.info("[本地存储] 已加载数据目录: {}，用户 {} 个，投稿 {} 条，日志 {} 条，耗时 {}ms",
+                    directory.getAbsolutePath(), users.size(), tips.size(), logRecords,
+                    System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            throw new UncheckedIOException("[本地存储] 初始化失败: " + directory.getAbsolutePath(), e);
+        }
+    }
+    
+    // ========== 签到数据 ==========
+    
+    @Override
+    public synchronized boolean userExists(long qqId) {
+        return userSlots.containsKey(qqId);
+    }
+    
+    @Override
+    public synchronized DatabaseManager.UserCheckInInfo getUserInfo(long qqId) {
+        int slot = userSlots.get(qqId, -1);
+        return slot >= 0 ? copyOf(users.get(slot)) : null;
+    }
+    
+    @Override
+    public synchronized boolean registerUser(long qqId) {
+        if (userSlots.containsKey(qqId)) {
+            logger.warn("[本地存储] 用户注册失败，用户已存在，QQ号: {}", qqId);
+            return false;
+        }
+        
+        DatabaseManager.UserCheckInInfo info = new DatabaseManager.UserCheckInInfo();
+        info.qqId = qqId;
+        info.qd = 1;
+        info.qdLastTime = LocalDateTime.now();
+        info.regTime = info.qdLastTime;
+        
+        if (!appendUser(info)) {
+            return false;
+        }
+        logger.info("用户注册成功，QQ号: {}, 初始积分: 1", qqId);
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean updateCheckIn(long qqId) {
+        int slot = userSlots.get(qqId, -1);
+        if (slot < 0) {
+            logger.warn("签到更新失败，QQ号: {}", qqId);
+            return false;
+        }
+        
+        DatabaseManager.UserCheckInInfo info = copyOf(users.get(slot));
+        info.qd++;
+        info.qdLastTime = LocalDateTime.now();
+        return appendUser(info);
+    }
+    
+    @Override
+    public synchronized List<DatabaseManager.UserCheckInInfo> loadAllUsers() {
+        List<DatabaseManager.UserCheckInInfo> result = new ArrayList<>(users.size());
+        for (DatabaseManager.UserCheckInInfo info : users) {
+            result.add(copyOf(info));
+        }
+        return result;
+    }
+    
+    @Override
+    public synchronized boolean saveCheckIns(List<DatabaseManager.UserCheckInInfo> updates) {
+        for (DatabaseManager.UserCheckInInfo update : updates) {
+            int slot = userSlots.get(update.qqId, -1);
+            if (slot < 0) {
+                continue; // 与MySQL的UPDATE语义一致，不存在的用户忽略
+            }
+            DatabaseManager.UserCheckInInfo info = copyOf(users.get(slot));
+            info.qd = update.qd;
+            info.qdLastTime = update.qdLastTime;
+            if (!appendUser(info)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // ========== 投稿数据 ==========
+    
+    @Override
+    public synchronized int insertTip(String tip, String regUser) {
+        DatabaseManager.TipInfo info = new DatabaseManager.TipInfo();
+        info.id = lastTipId + 1;
+        info.tip = tip;
+        info.regUser = regUser;
+        info.regTime = LocalDateTime.now();
+        
+        try {
+            appendRecord(RECORD_TIP, encodeTip(info));
+        } catch (IOException e) {
+            logger.error("插入投稿时发生错误，用户: {}", regUser, e);
+            return -1;
+        }
+        applyTip(info);
+        compactIfNeeded();
+        logger.info("投稿插入成功，用户: {}, ID: {}", regUser, info.id);
+        return info.id;
+    }
+    
+    @Override
+    public synchronized DatabaseManager.TipInfo getRandomTip() {
+        if (tips.isEmpty()) {
+            return null;
+        }
+        return copyOf(tips.get(ThreadLocalRandom.current().nextInt(tips.size())));
+    }
+    
+    @Override
+    public synchronized DatabaseManager.TipInfo getTipById(int id) {
+        int pos = findTip(id);
+        return pos >= 0 ? copyOf(tips.get(pos)) : null;
+    }
+    
+    @Override
+    public synchronized int[] loadTipIds() {
+        int[] ids = new int[tips.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tips.get(i).id;
+        }
+        return ids;
+    }
+    
+    @Override
+    public synchronized List<DatabaseManager.TipInfo> loadAllTips() {
+        List<DatabaseManager.TipInfo> result = new ArrayList<>(tips.size());
+        for (DatabaseManager.TipInfo info : tips) {
+            result.add(copyOf(info));
+        }
+        return result;
+    }
+    
+    @Override
+    public synchronized List<DatabaseManager.TipStats> loadTipStats() {
+        List<DatabaseManager.TipStats> result = new ArrayList<>(tipStats.size());
+        for (DatabaseManager.TipStats stats : tipStats) {
+            result.add(copyOf(stats));
+        }
+        return result;
+    }
+    
+    @Override
+    public synchronized boolean addTipStats(List<DatabaseManager.TipStats> deltas) {
+        for (DatabaseManager.TipStats delta : deltas) {
+            // 日志中记录累加后的完整计数，重放时直接覆盖
+            int slot = tipStatSlots.get(delta.tipId, -1);
+            DatabaseManager.TipStats stats = slot >= 0 ? copyOf(tipStats.get(slot)) : new DatabaseManager.TipStats();
+            stats.tipId = delta.tipId;
+            stats.views += delta.views;
+            stats.likes += delta.likes;
+            
+            try {
+                appendRecord(RECORD_TIP_STATS, encodeTipStats(stats));
+            } catch (IOException e) {
+                logger.error("[本地存储] 写入投稿计数失败，投稿ID: {}", delta.tipId, e);
+                return false;
+            }
+            applyTipStats(stats);
+            compactIfNeeded();
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized int addTipLike(int tipId, long qqId) {
+        LongIntHashMap likedUsers = tipLikes.get(tipId);
+        if (likedUsers != null && likedUsers.containsKey(qqId)) {
+            return 0;
+        }
+        try {
+            appendRecord(RECORD_TIP_LIKE, encodeTipLike(tipId, qqId));
+        } catch (IOException e) {
+            logger.error("[本地存储] 写入点赞记录失败，投稿ID: {}, QQ号: {}", tipId, qqId, e);
+            return -1;
+        }
+        applyTipLike(tipId, qqId);
+        compactIfNeeded();
+        return 1;
+    }
+    
+    /**
+     * 关闭存储：压缩为快照并关闭日志
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            compact();
+            if (logOut != null) {
+                logOut.close();
+                logOut = null;
+            }
+            logger.info("[本地存储] 已关闭");
+        } catch (IOException e) {
+            logger.error("[本地存储] 关闭时发生错误", e);
+        }
+    }
+    
+    // ========== 日志与快照 ==========
+    
+    private boolean appendUser(DatabaseManager.UserCheckInInfo info) {
+        try {
+            appendRecord(RECORD_USER, encodeUser(info));
+        } catch (IOException e) {
+            logger.error("[本地存储] 写入用户数据失败，QQ号: {}", info.qqId, e);
+            return false;
+        }
+        applyUser(info);
+        compactIfNeeded();
+        return true;
+    }
+    
+    private void appendRecord(byte type, byte[] payload) throws IOException {
+        if (logTorn) {
+            recoverLog();
+        }
+        if (logOut == null) {
+            throw new IOException("日志未打开: " + logPath.toAbsolutePath());
+        }
+        try {
+            writeRecord(logOut, type, payload);
+            logOut.flush();
+        } catch (IOException e) {
+            discardTornLog();
+            throw e;
+        }
+        logLength += 1 + 4 + payload.length + 4;
+        logRecords++;
+    }
+    
+    /**
+     * 写入失败后丢弃日志流：缓冲区和文件末尾可能残留半条记录，不能再flush，
+     * 直接关闭文件后截断到最后一条完整记录并重新打开（失败时下次写入前重试）
+     */
+    private void discardTornLog() {
+        FileOutputStream file = logFile;
+        logOut = null;
+        logFile = null;
+        logTorn = true;
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.warn("[本地存储] 关闭写入失败的日志时发生错误", e);
+        }
+        try {
+            recoverLog();
+        } catch (IOException e) {
+            logger.error("[本地存储] 截断日志失败，下次写入时重试", e);
+        }
+    }
+    
+    private void recoverLog() throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (channel.size() > logLength) {
+                logger.warn("[本地存储] 日志末尾存在写入失败的记录，已截断到 {} 字节", logLength);
+                channel.truncate(logLength);
+            }
+        }
+        openLog(true);
+        logTorn = false;
+    }
+    
+    /**
+     * 日志记录数达到阈值时压缩为快照（必须在记录应用到内存之后调用）
+     */
+    private void compactIfNeeded() {
+        if (logRecords < COMPACT_THRESHOLD) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // 压缩失败不影响数据，日志仍然完整，下次写入时重试
+            logger.error("[本地存储] 快照压缩失败", e);
+            if (logOut == null) {
+                // 新快照已替换但日志未能重建：追加到原日志，重放时覆盖写的记录结果不变
+                try {
+                    openLog(true);
+                } catch (IOException reopenError) {
+                    logger.error("[本地存储] 重新打开日志失败", reopenError);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把当前全部数据写入新快照（先写临时文件再原子替换），然后清空日志
+     */
+    private void compact() throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path tempPath = snapshotPath.resolveSibling(SNAPSHOT_FILE_NAME + ".tmp");
+        
+        try (FileOutputStream fos = new FileOutputStream(tempPath.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            for (DatabaseManager.UserCheckInInfo info : users) {
+                writeRecord(out, RECORD_USER, encodeUser(info));
+            }
+            for (DatabaseManager.TipInfo info : tips) {
+                writeRecord(out, RECORD_TIP, encodeTip(info));
+            }
+            for (DatabaseManager.TipStats stats : tipStats) {
+                writeRecord(out, RECORD_TIP_STATS, encodeTipStats(stats));
+            }
+            for (Map.Entry<Integer, LongIntHashMap> e : tipLikes.entrySet()) {
+                for (long qqId : e.getValue().toKeyArray()) {
+                    writeRecord(out, RECORD_TIP_LIKE, encodeTipLike(e.getKey(), qqId));
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        // 快照已包含日志中的全部数据，重建空日志
+        DataOutputStream oldLog = logOut;
+        logOut = null;
+        if (oldLog != null) {
+            oldLog.close();
+        }
+        openLog(false);
+        logTorn = false;
+        logRecords = 0;
+        
+        logger.info("[本地存储] 快照压缩完成，用户 {} 个，投稿 {} 条，耗时 {}ms",
+                users.size(), tips.size(), System.currentTimeMillis() - startTime);
+    }
+    
+    private void openLog(boolean append) throws IOException {
+        logFile = new FileOutputStream(logPath.toFile(), append);
+        logLength = logFile.getChannel().size();
+        logOut = new DataOutputStream(new BufferedOutputStream(logFile));
+    }
+    
+    /**
+     * 重放数据文件
+     * @return 最后一条完整记录结束的位置
+     */
+    private long replay(Path path) throws IOException {
+        long validLength = 0;
+        int count = 0;
+        boolean isLog = path.equals(logPath);
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > 16 * 1024 * 1024) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    int crc = in.readInt();
+                    if (crc != checksum(type, payload)) {
+                        logger.warn("[本地存储] {} 第{}条记录校验失败，停止重放", path.getFileName(), count + 1);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                if (type == RECORD_USER) {
+                    applyUser(decodeUser(record));
+                } else if (type == RECORD_TIP) {
+                    applyTip(decodeTip(record));
+                } else if (type == RECORD_TIP_STATS) {
+                    applyTipStats(decodeTipStats(record));
+                } else if (type == RECORD_TIP_LIKE) {
+                    applyTipLike(record.readInt(), record.readLong());
+                } else {
+                    logger.warn("[本地存储] {} 中存在未知记录类型: {}", path.getFileName(), type);
+                }
+                
+                validLength += 1 + 4 + payload.length + 4;
+                count++;
+            }
+        }
+        
+        if (isLog) {
+            logRecords = count;
+        }
+        return validLength;
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(type, payload));
+    }
+    
+    private static int checksum(int type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+    
+    // ========== 内存索引 ==========
+    
+    private void applyUser(DatabaseManager.UserCheckInInfo info) {
+        int slot = userSlots.get(info.qqId, -1);
+        if (slot >= 0) {
+            users.set(slot, info);
+        } else {
+            userSlots.put(info.qqId, users.size(), -1);
+            users.add(info);
+        }
+    }
+    
+    private void applyTip(DatabaseManager.TipInfo info) {
+        int pos = findTip(info.id);
+        if (pos >= 0) {
+            tips.set(pos, info);
+        } else {
+            tips.add(-pos - 1, info);
+        }
+        lastTipId = Math.max(lastTipId, info.id);
+    }
+    
+    private void applyTipStats(DatabaseManager.TipStats stats) {
+        int slot = tipStatSlots.get(stats.tipId, -1);
+        if (slot >= 0) {
+            tipStats.set(slot, stats);
+        } else {
+            tipStatSlots.put(stats.tipId, tipStats.size(), -1);
+            tipStats.add(stats);
+        }
+    }
+    
+    private void applyTipLike(int tipId, long qqId) {
+        tipLikes.computeIfAbsent(tipId, id -> new LongIntHashMap(16)).put(qqId, 1, 0);
+    }
+    
+    private int findTip(int id) {
+        int low = 0;
+        int high = tips.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = tips.get(mid).id;
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+    
+    // ========== 编解码 ==========
+    
+    private static byte[] encodeUser(DatabaseManager.UserCheckInInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(28);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(info.qqId);
+        out.writeInt(info.qd);
+        out.writeLong(toMillis(info.qdLastTime));
+        out.writeLong(toMillis(info.regTime));
+        return bytes.toByteArray();
+    }
+    
+    private static DatabaseManager.UserCheckInInfo decodeUser(DataInputStream in) throws IOException {
+        DatabaseManager.UserCheckInInfo info = new DatabaseManager.UserCheckInInfo();
+        info.qqId = in.readLong();
+        info.qd = in.readInt();
+        info.qdLastTime = toLocalDateTime(in.readLong());
+        info.regTime = toLocalDateTime(in.readLong());
+        return info;
+    }
+    
+    private static byte[] encodeTip(DatabaseManager.TipInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(info.id);
+        out.writeLong(toMillis(info.regTime));
+        writeString(out, info.regUser);
+        writeString(out, info.tip);
+        return bytes.toByteArray();
+    }
+    
+    private static DatabaseManager.TipInfo decodeTip(DataInputStream in) throws IOException {
+        DatabaseManager.TipInfo info = new DatabaseManager.TipInfo();
+        info.id = in.readInt();
+        info.regTime = toLocalDateTime(in.readLong());
+        info.regUser = readString(in);
+        info.tip = readString(in);
+        return info;
+    }
+    
+    private static byte[] encodeTipStats(DatabaseManager.TipStats stats) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(20);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(stats.tipId);
+        out.writeLong(stats.views);
+        out.writeLong(stats.likes);
+        return bytes.toByteArray();
+    }
+    
+    private static DatabaseManager.TipStats decodeTipStats(DataInputStream in) throws IOException {
+        DatabaseManager.TipStats stats = new DatabaseManager.TipStats();
+        stats.tipId = in.readInt();
+        stats.views = in.readLong();
+        stats.likes = in.readLong();
+        return stats;
+    }
+    
+    private static byte[] encodeTipLike(int tipId, long qqId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(tipId);
+        out.writeLong(qqId);
+        return bytes.toByteArray();
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static DatabaseManager.UserCheckInInfo copyOf(DatabaseManager.UserCheckInInfo source) {
+        DatabaseManager.UserCheckInInfo info = new DatabaseManager.UserCheckInInfo();
+        info.qqId = source.qqId;
+        info.qd = source.qd;
+        info.qdLastTime = source.qdLastTime;
+        info.regTime = source.regTime;
+        return info;
+    }
+    
+    private static DatabaseManager.TipInfo copyOf(DatabaseManager.TipInfo source) {
+        DatabaseManager.TipInfo info = new DatabaseManager.TipInfo();
+        info.id = source.id;
+        info.tip = source.tip;
+        info.regUser = source.regUser;
+        info.regTime = source.regTime;
+        return info;
+    }
+    
+    private static DatabaseManager.TipStats copyOf(DatabaseManager.TipStats source) {
+        DatabaseManager.TipStats stats = new DatabaseManager.TipStats();
+        stats.tipId = source.tipId;
+        stats.views = source.views;
+        stats.likes = source.likes;
+        return stats;
+    }
+    
+    private static long toMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZONE).toInstant().toEpochMilli() : NO_TIME;
+    }
+    
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return millis != NO_TIME ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE) : null;
+    }
+}
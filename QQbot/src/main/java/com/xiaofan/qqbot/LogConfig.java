@@ -1,24 +1,29 @@
 package com.xiaofan.qqbot;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 /**
  * 日志配置工具类
- * 配置日志输出到文件
+ * 配置日志同时输出到控制台和文件：控制台直接输出，文件由AsyncLogWriter在后台线程批量写入，
+ * 按大小和日期滚动，旧日志压缩后保存在logs目录
  */
 public class LogConfig {
     private static final String LOG_FILE_NAME = "last.log";
+    private static final long MAX_FILE_BYTES = 20L * 1024 * 1024; // 单个日志文件20MB
+    private static final int MAX_ARCHIVES = 30;                    // 保留最近30个归档
+    private static final int QUEUE_CAPACITY = 16384;               // 等待写入的日志段数
     private static boolean configured = false;
     private static PrintStream originalOut;
     private static PrintStream originalErr;
+    private static AsyncLogWriter logWriter;
     
     /**
      * 配置日志输出到文件
      * 必须在任何LoggerFactory.getLogger()调用之前调用
      */
-    public static void configure() {
+    public static synchronized void configure() {
         if (configured) {
             return;
         }
@@ -28,30 +33,23 @@ public class LogConfig {
             String jarDirectory = getJarDirectory();
             File logFile = new File(jarDirectory, LOG_FILE_NAME);
             
-            // 如果文件存在，先删除（覆盖模式）
-            if (logFile.exists()) {
-                logFile.delete();
-            }
-            
-            // 创建日志文件输出流
-            FileOutputStream fileOutputStream = new FileOutputStream(logFile, false); // false表示覆盖模式
-            
             // 保存原始输出流
             originalOut = System.out;
             originalErr = System.err;
             
-            // 创建同时输出到文件和控制台的PrintStream
-            TeePrintStream teeOut = new TeePrintStream(originalOut, fileOutputStream, true);
-            TeePrintStream teeErr = new TeePrintStream(originalErr, fileOutputStream, true);
+            // 上次运行的last.log会先归档到logs目录，不再删除
+            logWriter = new AsyncLogWriter(logFile, MAX_FILE_BYTES, MAX_ARCHIVES, QUEUE_CAPACITY);
+            logWriter.start();
             
-            // 重定向System.out和System.err
-            System.setOut(teeOut);
-            System.setErr(teeErr);
+            // 创建同时输出到控制台和日志文件的PrintStream
+            System.setOut(new PrintStream(new TeeOutputStream(originalOut, logWriter), true));
+            System.setErr(new PrintStream(new TeeOutputStream(originalErr, logWriter), true));
             
             configured = true;
             
             // 输出配置信息
-            System.out.println("日志配置完成，日志文件: " + logFile.getAbsolutePath());
+            System.out.println("日志配置完成，日志文件: " + logFile.getAbsolutePath() + "，历史日志: "
+                    + new File(jarDirectory, "logs").getAbsolutePath());
             
         } catch (Exception e) {
             System.err.println("配置日志失败: " + e.getMessage());
@@ -60,48 +58,52 @@ public class LogConfig {
     }
     
     /**
-     * 同时输出到多个流的PrintStream
+     * 写完剩余日志并关闭日志文件（在关闭钩子的最后调用）
      */
-    private static class TeePrintStream extends PrintStream {
-        private final PrintStream[] streams;
-        
-        public TeePrintStream(PrintStream... streams) {
-            super(streams[0]); // 使用第一个流作为主输出
-            this.streams = streams;
+    public static synchronized void shutdown() {
+        if (!configured) {
+            return;
         }
+        System.out.flush();
+        System.err.flush();
+        logWriter.close(2000);
+    }
+    
+    /**
+     * 日志系统自身的错误只输出到控制台
+     */
+    static void reportError(String message) {
+        PrintStream err = originalErr != null ? originalErr : System.err;
+        err.println("[日志] " + message);
+    }
+    
+    /**
+     * 同时输出到控制台和异步日志写入器的输出流
+     * PrintStream按整段调用write(byte[], int, int)，每段只入队一次
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final PrintStream console;
+        private final AsyncLogWriter writer;
         
-        public TeePrintStream(PrintStream stream1, FileOutputStream stream2, boolean autoFlush) {
-            super(stream1, autoFlush);
-            this.streams = new PrintStream[]{stream1, new PrintStream(stream2, autoFlush)};
+        public TeeOutputStream(PrintStream console, AsyncLogWriter writer) {
+            this.console = console;
+            this.writer = writer;
         }
         
         @Override
         public void write(int b) {
-            for (PrintStream stream : streams) {
-                stream.write(b);
-            }
+            write(new byte[]{(byte) b}, 0, 1);
         }
         
         @Override
         public void write(byte[] buf, int off, int len) {
-            for (PrintStream stream : streams) {
-                stream.write(buf, off, len);
-            }
+            console.write(buf, off, len);
+            writer.offer(buf, off, len);
         }
         
         @Override
         public void flush() {
-            for (PrintStream stream : streams) {
-                stream.flush();
-            }
-        }
-        
-        @Override
-        public void close() {
-            // 不要关闭原始流，只关闭文件流
-            for (int i = 1; i < streams.length; i++) {
-                streams[i].close();
-            }
+            console.flush();
         }
     }
     
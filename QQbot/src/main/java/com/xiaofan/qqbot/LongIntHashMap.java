@@ -0,0 +1,202 @@
+package com.xiaofan.qqbot;
+
+import java.util.Arrays;
+
+/**
+ * long -> int 开放寻址哈希表
+ * 键和值都以基本类型数组保存，避免Long/Integer装箱，适合以QQ号为键的内存索引
+ * 非线程安全，由调用方负责加锁
+ */
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final long FREE_KEY = 0L;
+    
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+    
+    // 键0作为空槽标记，单独存放
+    private boolean hasZeroKey;
+    private int zeroValue;
+    
+    public LongIntHashMap(int expectedSize) {
+        int capacity = tableSizeFor(Math.max(4, (int) (expectedSize / LOAD_FACTOR) + 1));
+        allocate(capacity);
+    }
+    
+    /**
+     * 获取键对应的值
+     * @return 值，如果不存在返回defaultValue
+     */
+    public int get(long key, int defaultValue) {
+        if (key == FREE_KEY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != FREE_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+    
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != FREE_KEY) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+    
+    /**
+     * 写入键值
+     * @return 旧值，如果之前不存在返回defaultValue
+     */
+    public int put(long key, int value, int defaultValue) {
+        if (key == FREE_KEY) {
+            int old = hasZeroKey ? zeroValue : defaultValue;
+            if (!hasZeroKey) {
+                size++;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != FREE_KEY) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return defaultValue;
+    }
+    
+    /**
+     * 删除键（使用回移删除，不留墓碑）
+     * @return 被删除的值，如果不存在返回defaultValue
+     */
+    public int remove(long key, int defaultValue) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) {
+                return defaultValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != FREE_KEY) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                shiftKeys(slot);
+                size--;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * 获取全部键（顺序不固定）
+     */
+    public long[] toKeyArray() {
+        long[] result = new long[size];
+        int count = 0;
+        if (hasZeroKey) {
+            result[count++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+    
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasZeroKey = false;
+        size = 0;
+    }
+    
+    private void shiftKeys(int pos) {
+        // 把后续同簇的元素前移，保持探测链连续
+        int last;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                k = keys[pos];
+                if (k == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = slotOf(k);
+                if (last <= pos ? (last >= home || home > pos) : (last >= home && home > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+    
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int slot = slotOf(k);
+                while (keys[slot] != FREE_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+    
+    private int slotOf(long key) {
+        // 打散连续的QQ号
+        return (int) Hashing.mix64(key) & mask;
+    }
+    
+    private static int tableSizeFor(int n) {
+        int highest = Integer.highestOneBit(n);
+        return highest == n ? n : highest << 1;
+    }
+}
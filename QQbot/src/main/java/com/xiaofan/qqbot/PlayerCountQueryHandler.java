@@ -6,7 +6,6 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 /**
@@ -16,8 +15,7 @@ import java.util.function.BiFunction;
 public class PlayerCountQueryHandler {
     private static final Logger logger = LoggerFactory.getLogger(PlayerCountQueryHandler.class);
     
-    // Minecraft客户端API地址
-    private static final String MINECRAFT_API_URL = "http://127.0.0.1:2000/need_server_info";
+    // Minecraft客户端API地址在配置文件中设置（server.api.url）
     private static final String TRIGGER_KEYWORD = "人数查询";
     
     private final OkHttpClient httpClient;
@@ -29,10 +27,7 @@ public class PlayerCountQueryHandler {
      */
     public PlayerCountQueryHandler(BiFunction<Long, String, Boolean> messageSender) {
         this.messageSender = messageSender;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(5, TimeUnit.SECONDS)
-                .readTimeout(10, TimeUnit.SECONDS)
-                .build();
+        this.httpClient = HttpClients.withTimeouts(5, 10, 10);
     }
     
     /**
@@ -88,7 +83,7 @@ public class PlayerCountQueryHandler {
     private PlayerCountInfo queryPlayerCount() {
         try {
             Request request = new Request.Builder()
-                    .url(MINECRAFT_API_URL)
+                    .url(ConfigManager.current().getServerInfoUrl())
                     .get()
                     .build();
             
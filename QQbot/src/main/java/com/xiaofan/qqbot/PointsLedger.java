@@ -0,0 +1,571 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 积分账本
+ * 每一次积分变化（签到、转账、商店购买）都作为一条流水追加写入日志，余额保存在内存中，查询为O(1)。
+ * 所有积分修改在账本锁内串行执行：先修改用户缓存（缓存内部一把写锁完成扣减和增加），再追加流水，
+ * 转账和购买写流水失败时回滚缓存，不需要对数据库中的userdata行加锁；
+ * 签到已经写入了签到时间无法撤销，写流水失败时保留缓存中的结果，之后再以缓存积分为期初余额补记账户。
+ * 流水达到一定条数后把全部余额写成快照，旧日志按最后一条流水序号归档为 ledger-序号.log 保留审计记录；
+ * 启动时加载快照再重放日志尾部，并以账本余额为准校正用户缓存中的积分
+ *
+ * 文件格式与本地存储相同：每条记录为 [类型:1字节][长度:4字节][内容][CRC32:4字节]
+ */
+public class PointsLedger {
+    private static final Logger logger = LoggerFactory.getLogger(PointsLedger.class);
+    
+    private static final String SNAPSHOT_FILE_NAME = "ledger.snapshot";
+    private static final String LOG_FILE_NAME = "ledger.log";
+    private static final int COMPACT_THRESHOLD = 10000; // 日志流水数达到该值时写快照并归档日志
+    private static final long RECONCILE_CHECK_SECONDS = 1;
+    private static final long COMPACT_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1); // 压缩失败后的重试间隔
+    
+    // 流水类型
+    public static final byte ENTRY_OPENING = 1;  // 期初余额：账本第一次涉及某用户时记录其已有积分
+    public static final byte ENTRY_CHECK_IN = 2; // 签到（含首次签到注册）
+    public static final byte ENTRY_TRANSFER = 3; // 用户间转账
+    public static final byte ENTRY_PURCHASE = 4; // 商店购买
+    
+    // 快照记录类型
+    private static final byte RECORD_SNAPSHOT_HEADER = 10;
+    private static final byte RECORD_BALANCE = 11;
+    
+    private final UserDataCache userDataCache;
+    private final Path snapshotPath;
+    private final Path logPath;
+    
+    // 余额：QQ号 -> 下标
+    private final LongIntHashMap balanceSlots = new LongIntHashMap(1024);
+    private long[] balanceQqIds = new long[1024];
+    private int[] balances = new int[1024];
+    private int accountCount = 0;
+    
+    // 签到写流水失败、余额以用户缓存为准的账户（QQ号 -> 1），下次涉及该账户时补记期初余额
+    private final LongIntHashMap unjournaled = new LongIntHashMap(16);
+    
+    private long lastSeq = 0;
+    private FileOutputStream logFile;
+    private DataOutputStream logOut;
+    private long logLength = 0;    // 日志中完整写入的字节数
+    private boolean logTorn = false; // 上次写入失败，日志需截断到logLength后才能继续追加
+    private int logRecords = 0;
+    private long compactRetryAt = 0; // 压缩失败后，到这个时间之前不再尝试压缩
+    private boolean reconciled = false;
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * 操作结果
+     */
+    public enum Result {
+        SUCCESS,
+        INSUFFICIENT_POINTS, // 积分不足
+        USER_NOT_FOUND,      // 用户未注册
+        FAILED               // 写入失败
+    }
+    
+    /**
+     * 构造函数
+     * @param directory 数据目录
+     * @param userDataCache 用户签到数据缓存
+     */
+    public PointsLedger(File directory, UserDataCache userDataCache) {
+        this.userDataCache = userDataCache;
+        this.snapshotPath = directory.toPath().resolve(SNAPSHOT_FILE_NAME);
+        this.logPath = directory.toPath().resolve(LOG_FILE_NAME);
+    }
+    
+    /**
+     * 启动：加载快照和日志，等用户缓存预热完成后按账本校正积分
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        
+        try {
+            Files.createDirectories(logPath.getParent());
+            long startTime = System.currentTimeMillis();
+            if (Files.exists(snapshotPath)) {
+                replay(snapshotPath);
+            }
+            if (Files.exists(logPath)) {
+                long validLength = replay(logPath);
+                if (validLength < Files.size(logPath)) {
+                    logger.warn("[积分账本] 日志末尾存在不完整记录，已截断到 {} 字节", validLength);
+                    try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+            openLog();
+            logger.info("[积分账本] 已加载，账户 {} 个，最新流水号 {}，日志 {} 条，耗时 {}ms",
+                    accountCount, lastSeq, logRecords, System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            throw new UncheckedIOException("[积分账本] 初始化失败: " + logPath.toAbsolutePath(), e);
+        }
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "PointsLedger");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.schedule(this::reconcileWhenWarmedUp, RECONCILE_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * 停止并关闭日志
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        synchronized (this) {
+            if (logOut != null) {
+                try {
+                    logOut.close();
+                } catch (IOException e) {
+                    logger.error("[积分账本] 关闭日志失败", e);
+                }
+                logOut = null;
+                logFile = null;
+            }
+        }
+    }
+    
+    /**
+     * 获取用户积分余额
+     * @return 余额，用户不存在返回-1
+     */
+    public synchronized int getBalance(long qqId) {
+        int slot = unjournaled.containsKey(qqId) ? -1 : balanceSlots.get(qqId, -1);
+        return slot >= 0 ? balances[slot] : userDataCache.getPoints(qqId);
+    }
+    
+    /**
+     * 首次签到：注册用户并记录初始积分
+     * @return 是否注册成功（用户已写入数据库后即为成功，流水写入失败时之后再补记）
+     */
+    public synchronized boolean register(long qqId) {
+        if (!userDataCache.registerUser(qqId)) {
+            return false;
+        }
+        // 账本中可能残留同一QQ号的旧账户（数据库被手动清理过），注册时重新开户
+        int initialPoints = Math.max(0, userDataCache.getPoints(qqId));
+        if (!tryAppend(ENTRY_OPENING, 0, qqId, 0, null)
+                || !tryAppend(ENTRY_CHECK_IN, 0, qqId, initialPoints, null)) {
+            // 用户和签到时间已写入，退回积分会让用户24小时内无法再签到，保留缓存中的积分之后补记
+            markUnjournaled(qqId);
+        }
+        return true;
+    }
+    
+    /**
+     * 签到：积分+1
+     * @return 是否更新成功（签到时间已记录后即为成功，流水写入失败时之后再补记）
+     */
+    public synchronized boolean checkIn(long qqId) {
+        syncAccount(qqId);
+        if (!userDataCache.updateCheckIn(qqId)) {
+            return false;
+        }
+        if (!tryAppend(ENTRY_CHECK_IN, 0, qqId, 1, null)) {
+            markUnjournaled(qqId);
+        }
+        return true;
+    }
+    
+    /**
+     * 转账
+     * @param fromQqId 转出方QQ号
+     * @param toQqId 转入方QQ号
+     * @param amount 数量（正数）
+     */
+    public synchronized Result transfer(long fromQqId, long toQqId, int amount) {
+        if (amount <= 0 || fromQqId == toQqId) {
+            return Result.FAILED;
+        }
+        if (!syncAccount(fromQqId) || !syncAccount(toQqId)) {
+            return Result.USER_NOT_FOUND;
+        }
+        if (!userDataCache.transferPoints(fromQqId, toQqId, amount)) {
+            return Result.INSUFFICIENT_POINTS;
+        }
+        if (!tryAppend(ENTRY_TRANSFER, fromQqId, toQqId, amount, null)) {
+            userDataCache.transferPoints(toQqId, fromQqId, amount);
+            return Result.FAILED;
+        }
+        return Result.SUCCESS;
+    }
+    
+    /**
+     * 商店购买：扣除积分
+     * @param qqId QQ号
+     * @param item 物品名称（记入流水备注）
+     * @param price 价格
+     */
+    public synchronized Result purchase(long qqId, String item, int price) {
+        if (!syncAccount(qqId)) {
+            return Result.USER_NOT_FOUND;
+        }
+        if (!userDataCache.addPoints(qqId, -price)) {
+            return Result.INSUFFICIENT_POINTS;
+        }
+        if (!tryAppend(ENTRY_PURCHASE, qqId, 0, price, item)) {
+            userDataCache.addPoints(qqId, price);
+            return Result.FAILED;
+        }
+        return Result.SUCCESS;
+    }
+    
+    /**
+     * 获取账户数量
+     */
+    public synchronized int size() {
+        return accountCount;
+    }
+    
+    /**
+     * 让缓存与账本一致：账本已有该用户时以账本余额为准，否则记录期初余额开户
+     * @return 用户不存在返回false
+     */
+    private boolean syncAccount(long qqId) {
+        int points = userDataCache.getPoints(qqId);
+        if (points < 0) {
+            return false;
+        }
+        int slot = balanceSlots.get(qqId, -1);
+        if (slot < 0 || unjournaled.containsKey(qqId)) {
+            // 新账户，或签到流水写入失败的账户：以缓存积分为期初余额补记
+            if (!tryAppend(ENTRY_OPENING, 0, qqId, points, null)) {
+                return false;
+            }
+            unjournaled.remove(qqId, 0);
+            return true;
+        }
+        if (balances[slot] != points) {
+            userDataCache.setPoints(qqId, balances[slot]);
+        }
+        return true;
+    }
+    
+    private void markUnjournaled(long qqId) {
+        unjournaled.put(qqId, 1, 0);
+        logger.warn("[积分账本] QQ号 {} 的签到未记入流水，余额暂以用户缓存为准，下次变动时补记", qqId);
+    }
+    
+    /**
+     * 追加一条流水并应用到余额
+     * @return 写入失败返回false（不修改余额）
+     */
+    private boolean tryAppend(byte type, long fromQqId, long toQqId, int amount, String memo) {
+        if (logTorn) {
+            try {
+                recoverLog();
+            } catch (IOException e) {
+                logger.error("[积分账本] 截断日志失败，流水未记录，类型: {}，转出: {}，转入: {}，数量: {}", type, fromQqId, toQqId, amount, e);
+                return false;
+            }
+        }
+        if (logOut == null) {
+            logger.error("[积分账本] 账本未启动，流水未记录，类型: {}，转出: {}，转入: {}，数量: {}", type, fromQqId, toQqId, amount);
+            return false;
+        }
+        
+        long seq = lastSeq + 1;
+        byte[] payload;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(seq);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(fromQqId);
+            out.writeLong(toQqId);
+            out.writeInt(amount);
+            out.writeUTF(memo != null ? memo : "");
+            payload = bytes.toByteArray();
+        } catch (IOException e) {
+            logger.error("[积分账本] 编码流水失败，类型: {}，转出: {}，转入: {}，数量: {}", type, fromQqId, toQqId, amount, e);
+            return false;
+        }
+        try {
+            writeRecord(logOut, type, payload);
+            logOut.flush();
+        } catch (IOException e) {
+            logger.error("[积分账本] 写入流水失败，类型: {}，转出: {}，转入: {}，数量: {}", type, fromQqId, toQqId, amount, e);
+            discardTornLog();
+            return false;
+        }
+        
+        logLength += 1 + 4 + payload.length + 4;
+        lastSeq = seq;
+        logRecords++;
+        applyEntry(type, fromQqId, toQqId, amount);
+        compactIfNeeded();
+        return true;
+    }
+    
+    private void applyEntry(int type, long fromQqId, long toQqId, int amount) {
+        switch (type) {
+            case ENTRY_OPENING:
+                balances[slotOf(toQqId)] = amount;
+                break;
+            case ENTRY_CHECK_IN:
+                balances[slotOf(toQqId)] += amount;
+                break;
+            case ENTRY_TRANSFER:
+                balances[slotOf(fromQqId)] -= amount;
+                balances[slotOf(toQqId)] += amount;
+                break;
+            case ENTRY_PURCHASE:
+                balances[slotOf(fromQqId)] -= amount;
+                break;
+            default:
+                logger.warn("[积分账本] 未知流水类型: {}", type);
+        }
+    }
+    
+    private int slotOf(long qqId) {
+        int slot = balanceSlots.get(qqId, -1);
+        if (slot >= 0) {
+            return slot;
+        }
+        slot = accountCount++;
+        if (slot == balances.length) {
+            balanceQqIds = Arrays.copyOf(balanceQqIds, slot << 1);
+            balances = Arrays.copyOf(balances, slot << 1);
+        }
+        balanceQqIds[slot] = qqId;
+        balances[slot] = 0;
+        balanceSlots.put(qqId, slot, -1);
+        return slot;
+    }
+    
+    /**
+     * 用户缓存预热完成后，把账本中全部账户的余额写回缓存（账本为准）
+     */
+    private void reconcileWhenWarmedUp() {
+        if (!userDataCache.isWarmedUp()) {
+            scheduler.schedule(this::reconcileWhenWarmedUp, RECONCILE_CHECK_SECONDS, TimeUnit.SECONDS);
+            return;
+        }
+        
+        synchronized (this) {
+            if (reconciled) {
+                return;
+            }
+            int corrected = 0;
+            for (int slot = 0; slot < accountCount; slot++) {
+                if (unjournaled.containsKey(balanceQqIds[slot])) {
+                    continue;
+                }
+                int points = userDataCache.getPoints(balanceQqIds[slot]);
+                if (points >= 0 && points != balances[slot]) {
+                    userDataCache.setPoints(balanceQqIds[slot], balances[slot]);
+                    corrected++;
+                }
+            }
+            reconciled = true;
+            if (corrected > 0) {
+                logger.warn("[积分账本] 有 {} 个用户的积分与账本不一致，已按账本校正", corrected);
+            } else {
+                logger.info("[积分账本] 用户积分与账本一致，账户 {} 个", accountCount);
+            }
+        }
+    }
+    
+    // ========== 文件读写 ==========
+    
+    /**
+     * 流水达到阈值时写快照并归档当前日志
+     */
+    private void compactIfNeeded() {
+        if (logRecords < COMPACT_THRESHOLD || System.currentTimeMillis() < compactRetryAt) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // 压缩失败不影响数据，日志仍然完整，稍后再重试（避免磁盘故障时每条流水都重写一次快照）
+            logger.error("[积分账本] 快照压缩失败，{}秒后重试", COMPACT_RETRY_MILLIS / 1000, e);
+            compactRetryAt = System.currentTimeMillis() + COMPACT_RETRY_MILLIS;
+            if (logOut == null) {
+                try {
+                    openLog();
+                } catch (IOException reopenError) {
+                    logger.error("[积分账本] 重新打开日志失败", reopenError);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把全部余额写入新快照（先写临时文件再原子替换），旧日志重命名归档后新建空日志
+     * 快照记录了最后一条流水的序号，重放日志时跳过已包含在快照中的流水，归档前崩溃也不会重复计算
+     */
+    private void compact() throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path tempPath = snapshotPath.resolveSibling(SNAPSHOT_FILE_NAME + ".tmp");
+        
+        try (FileOutputStream fos = new FileOutputStream(tempPath.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(8);
+            new DataOutputStream(header).writeLong(lastSeq);
+            writeRecord(out, RECORD_SNAPSHOT_HEADER, header.toByteArray());
+            
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+            DataOutputStream record = new DataOutputStream(bytes);
+            for (int slot = 0; slot < accountCount; slot++) {
+                bytes.reset();
+                record.writeLong(balanceQqIds[slot]);
+                record.writeInt(balances[slot]);
+                writeRecord(out, RECORD_BALANCE, bytes.toByteArray());
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        DataOutputStream oldLog = logOut;
+        logOut = null;
+        oldLog.close();
+        Path archivePath = logPath.resolveSibling("ledger-" + lastSeq + ".log");
+        try {
+            Files.move(logPath, archivePath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // 归档失败时继续追加到原日志（已包含在快照中的流水重放时会跳过）
+            openLog();
+        }
+        logRecords = 0;
+        
+        logger.info("[积分账本] 快照压缩完成，账户 {} 个，流水号 {}，旧日志已归档为 {}，耗时 {}ms",
+                accountCount, lastSeq, archivePath.getFileName(), System.currentTimeMillis() - startTime);
+    }
+    
+    private void openLog() throws IOException {
+        logFile = new FileOutputStream(logPath.toFile(), true);
+        logLength = logFile.getChannel().size();
+        logOut = new DataOutputStream(new BufferedOutputStream(logFile));
+    }
+    
+    /**
+     * 写入失败后丢弃日志流：缓冲区和文件末尾可能残留半条流水，不能再flush，
+     * 直接关闭文件后截断到最后一条完整流水并重新打开（失败时下次写入前重试）
+     */
+    private void discardTornLog() {
+        FileOutputStream file = logFile;
+        logOut = null;
+        logFile = null;
+        logTorn = true;
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.warn("[积分账本] 关闭写入失败的日志时发生错误", e);
+        }
+        try {
+            recoverLog();
+        } catch (IOException e) {
+            logger.error("[积分账本] 截断日志失败，下次写入时重试", e);
+        }
+    }
+    
+    private void recoverLog() throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (channel.size() > logLength) {
+                logger.warn("[积分账本] 日志末尾存在写入失败的流水，已截断到 {} 字节", logLength);
+                channel.truncate(logLength);
+            }
+        }
+        openLog();
+        logTorn = false;
+    }
+    
+    /**
+     * 重放快照或日志文件
+     * @return 最后一条完整记录结束的位置
+     */
+    private long replay(Path path) throws IOException {
+        long validLength = 0;
+        int count = 0;
+        long snapshotSeq = lastSeq;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > 64 * 1024) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    int crc = in.readInt();
+                    if (crc != checksum(type, payload)) {
+                        logger.warn("[积分账本] {} 第{}条记录校验失败，停止重放", path.getFileName(), count + 1);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                if (type == RECORD_SNAPSHOT_HEADER) {
+                    lastSeq = record.readLong();
+                } else if (type == RECORD_BALANCE) {
+                    long qqId = record.readLong();
+                    balances[slotOf(qqId)] = record.readInt();
+                } else {
+                    long seq = record.readLong();
+                    record.readLong(); // 时间
+                    long fromQqId = record.readLong();
+                    long toQqId = record.readLong();
+                    int amount = record.readInt();
+                    if (seq > snapshotSeq) {
+                        applyEntry(type, fromQqId, toQqId, amount);
+                        lastSeq = seq;
+                    }
+                }
+                
+                validLength += 1 + 4 + payload.length + 4;
+                count++;
+            }
+        }
+        
+        if (path.equals(logPath)) {
+            logRecords = count;
+        }
+        return validLength;
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(type, payload));
+    }
+    
+    private static int checksum(int type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -14,16 +14,17 @@ public class PointsQueryHandler {
     
     private static final String TRIGGER_KEYWORD = "查询积分";
     
-    private final DatabaseManager databaseManager;
+    private final UserDataCache userDataCache;
     private final BiFunction<Long, String, Boolean> messageSender;
     
     /**
      * 构造函数
      * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param userDataCache 用户签到数据缓存
      */
-    public PointsQueryHandler(BiFunction<Long, String, Boolean> messageSender) {
+    public PointsQueryHandler(BiFunction<Long, String, Boolean> messageSender, UserDataCache userDataCache) {
         this.messageSender = messageSender;
-        this.databaseManager = new DatabaseManager();
+        this.userDataCache = userDataCache;
     }
     
     /**
@@ -57,7 +58,7 @@ public class PointsQueryHandler {
         
         try {
             // 检查用户是否存在
-            boolean exists = databaseManager.userExists(userId);
+            boolean exists = userDataCache.userExists(userId);
             
             if (!exists) {
                 // 用户不存在
@@ -66,7 +67,7 @@ public class PointsQueryHandler {
                 logger.info("用户未注册，QQ号: {}", userId);
             } else {
                 // 用户存在，查询积分
-                DatabaseManager.UserCheckInInfo userInfo = databaseManager.getUserInfo(userId);
+                DatabaseManager.UserCheckInInfo userInfo = userDataCache.getUserInfo(userId);
                 
                 if (userInfo == null) {
                     messageSender.apply(groupId, "查询失败：获取用户信息失败，请稍后重试");
@@ -79,19 +80,15 @@ public class PointsQueryHandler {
                 logger.info("积分查询成功，QQ号: {}, 积分: {}", userId, userInfo.qd);
             }
             
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("查询失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "查询失败：" + e.getMessage());
         } catch (Exception e) {
             logger.error("处理积分查询时发生错误，QQ号: {}", userId, e);
             
-            // 提供更友好的错误信息
             String errorMessage = "查询失败";
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                String causeMsg = e.getCause().getMessage();
-                if (causeMsg.contains("连接被拒绝") || causeMsg.contains("Communications link failure")) {
-                    errorMessage = "查询失败：数据库连接失败，请检查数据库服务是否正常运行";
-                } else {
-                    errorMessage = "查询失败：" + causeMsg;
-                }
-            } else if (e.getMessage() != null) {
+            if (e.getMessage() != null) {
                 errorMessage = "查询失败：" + e.getMessage();
             }
             
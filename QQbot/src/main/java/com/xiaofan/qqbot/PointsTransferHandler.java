@@ -0,0 +1,130 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.BiFunction;
+
+/**
+ * 积分转账处理器
+ * 检测"转账"关键词，把自己的积分转给其他已注册用户
+ * 格式：转账 （QQ号） （数量）
+ */
+public class PointsTransferHandler {
+    private static final Logger logger = LoggerFactory.getLogger(PointsTransferHandler.class);
+    
+    private static final String TRIGGER_KEYWORD = "转账";
+    
+    private final PointsLedger pointsLedger;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param pointsLedger 积分账本
+     */
+    public PointsTransferHandler(BiFunction<Long, String, Boolean> messageSender, PointsLedger pointsLedger) {
+        this.messageSender = messageSender;
+        this.pointsLedger = pointsLedger;
+    }
+    
+    /**
+     * 检查消息是否以"转账"开头（去除首尾空格后）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        return messageText.trim().startsWith(TRIGGER_KEYWORD);
+    }
+    
+    /**
+     * 解析转账参数
+     * @return [对方QQ号, 数量]，格式不正确返回null
+     */
+    private long[] parseArguments(String messageText) {
+        String[] parts = messageText.trim().substring(TRIGGER_KEYWORD.length()).trim().split("\\s+");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            long targetQqId = Long.parseLong(parts[0]);
+            int amount = Integer.parseInt(parts[1]);
+            if (targetQqId <= 0 || amount <= 0) {
+                return null;
+            }
+            return new long[]{targetQqId, amount};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 处理转账请求
+     * @param groupId 群号
+     * @param userId QQ号
+     * @param messageText 消息内容
+     */
+    public void handleTransfer(long groupId, long userId, String messageText) {
+        if (!shouldHandle(messageText)) {
+            return;
+        }
+        
+        if (userId <= 0) {
+            logger.warn("无效的QQ号: {}", userId);
+            messageSender.apply(groupId, "转账失败：无法获取QQ号");
+            return;
+        }
+        
+        logger.info("检测到转账请求，群号: {}, QQ号: {}", groupId, userId);
+        
+        try {
+            long[] arguments = parseArguments(messageText);
+            if (arguments == null) {
+                messageSender.apply(groupId, "转账失败：请使用格式「转账 （QQ号） （数量）」，数量必须为正整数");
+                return;
+            }
+            long targetQqId = arguments[0];
+            int amount = (int) arguments[1];
+            
+            if (targetQqId == userId) {
+                messageSender.apply(groupId, "转账失败：不能转账给自己");
+                return;
+            }
+            
+            PointsLedger.Result result = pointsLedger.transfer(userId, targetQqId, amount);
+            switch (result) {
+                case SUCCESS:
+                    messageSender.apply(groupId, String.format("转账成功，已向 %d 转出 %d 积分，当前积分：%d",
+                            targetQqId, amount, pointsLedger.getBalance(userId)));
+                    logger.info("转账成功，QQ号: {} -> {}, 数量: {}", userId, targetQqId, amount);
+                    break;
+                case INSUFFICIENT_POINTS:
+                    messageSender.apply(groupId, "转账失败：积分不足，当前积分：" + Math.max(0, pointsLedger.getBalance(userId)));
+                    break;
+                case USER_NOT_FOUND:
+                    messageSender.apply(groupId, pointsLedger.getBalance(userId) < 0
+                            ? "转账失败：你还没有签到过，请先发送「签到」"
+                            : "转账失败：对方还没有签到过，无法接收积分");
+                    break;
+                default:
+                    messageSender.apply(groupId, "转账失败：记账失败，请稍后重试");
+                    logger.error("转账失败，QQ号: {} -> {}, 数量: {}", userId, targetQqId, amount);
+            }
+        
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("转账失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "转账失败：" + e.getMessage());
+        } catch (Exception e) {
+            logger.error("处理转账时发生错误，QQ号: {}", userId, e);
+            
+            String errorMessage = "转账失败";
+            if (e.getMessage() != null) {
+                errorMessage = "转账失败：" + e.getMessage();
+            }
+            
+            messageSender.apply(groupId, errorMessage);
+        }
+    }
+}
@@ -6,9 +6,21 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * QQ机器人核心功能类
@@ -21,10 +33,10 @@ public class QQBot {
     public static final String NAPCAT_API_URL = ConfigManager.getNapCatApiUrl();
     public static final String NAPCAT_WS_URL = ConfigManager.getNapCatWsUrl();
     public static final String NAPCAT_TOKEN = ConfigManager.getNapCatToken();
-    public static final String TRIGGER_MESSAGE = ConfigManager.getTriggerMessage();
-    public static final String REPLY_MESSAGE = ConfigManager.getReplyMessage();
     public static final int MAX_PROCESSED_MESSAGE_IDS = 1000;
     public static final long RECONNECT_DELAY_MS = 5000;
+    public static final int STORAGE_COMMAND_QUEUE_CAPACITY = 50;
+    public static final int STARTUP_THREADS = 4;
     
     // 实例字段
     private final MessageSender messageSender;
@@ -32,14 +44,31 @@ public class QQBot {
     private final PlayerCountQueryHandler playerCountQueryHandler;
     private final CheckInHandler checkInHandler;
     private final PointsQueryHandler pointsQueryHandler;
+    private final LeaderboardHandler leaderboardHandler;
     private final TipSubmissionHandler tipSubmissionHandler;
     private final TipHandler tipHandler;
+    private final TipSearchHandler tipSearchHandler;
+    private final TipLikeHandler tipLikeHandler;
+    private final HotTipsHandler hotTipsHandler;
+    private final PointsTransferHandler pointsTransferHandler;
+    private final ShopHandler shopHandler;
+    private final BanCommandHandler banCommandHandler;
     private final HelpHandler helpHandler;
     private final CatgirlHandler catgirlHandler;
     private final ServerCommandHandler serverCommandHandler;
     private final ServerMessageMonitor serverMessageMonitor;
     private final BanListManager banListManager;
+    private final DataStorage storage;
+    private final UserDataCache userDataCache;
+    private final TipIndex tipIndex;
+    private final CheckInHistory checkInHistory;
+    private final TipStatsCounter tipStatsCounter;
+    private final PointsLedger pointsLedger;
+    private final AIWorkerPool aiWorkerPool;
     private NapCatWebSocketClient webSocketClient;
+    private final long constructNanos = System.nanoTime();
+    // 组件全部启动完成（数据库命令在此之后执行）
+    private final CompletableFuture<Void> componentsReady = new CompletableFuture<>();
     // botUserId在CatgirlHandler中管理，不需要在这里存储
     
     public QQBot() {
@@ -49,50 +78,182 @@ public class QQBot {
     public QQBot(String apiUrl, String wsUrl, String token) {
         this.messageSender = new MessageSender(apiUrl, token);
         this.banListManager = new BanListManager();
+        this.storage = DataStorage.create();
+        this.userDataCache = new UserDataCache(storage);
+        this.tipIndex = new TipIndex(storage);
+        this.checkInHistory = new CheckInHistory(ConfigManager.getLocalStorageDir());
+        this.tipStatsCounter = new TipStatsCounter(storage);
+        this.pointsLedger = new PointsLedger(ConfigManager.getLocalStorageDir(), userDataCache);
+        this.aiWorkerPool = new AIWorkerPool(ConfigManager.getAiWorkers(), ConfigManager.getAiQueueCapacity());
         this.playerCountQueryHandler = new PlayerCountQueryHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message)
         );
         this.checkInHandler = new CheckInHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            userDataCache,
+            checkInHistory,
+            pointsLedger
         );
         this.pointsQueryHandler = new PointsQueryHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            userDataCache
+        );
+        this.leaderboardHandler = new LeaderboardHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            userDataCache
         );
         this.tipSubmissionHandler = new TipSubmissionHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            tipIndex
         );
         this.tipHandler = new TipHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            tipIndex,
+            tipStatsCounter
+        );
+        this.tipSearchHandler = new TipSearchHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            tipIndex
+        );
+        this.tipLikeHandler = new TipLikeHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            tipIndex,
+            tipStatsCounter
+        );
+        this.hotTipsHandler = new HotTipsHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            tipIndex,
+            tipStatsCounter
+        );
+        this.pointsTransferHandler = new PointsTransferHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            pointsLedger
+        );
+        this.shopHandler = new ShopHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            pointsLedger
+        );
+        this.banCommandHandler = new BanCommandHandler(
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            banListManager
         );
         this.helpHandler = new HelpHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message)
         );
         // 初始化猫娘AI处理器（需要先获取botUserId，暂时设为0，会在连接后更新）
         this.catgirlHandler = new CatgirlHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message),
-            (userId, message) -> messageSender.sendPrivateMessage(userId, message),
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message),
+            (userId, message) -> messageSender.sendPrivateReply(userId, message),
+            aiWorkerPool,
             0 // botUserId将在获取后更新
         );
         this.serverCommandHandler = new ServerCommandHandler(
-            (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
+            (groupId, message) -> messageSender.sendGroupReply(groupId, message)
         );
+        // 服务器消息转发不是命令的回复，不计入启动后的首条回复
         this.serverMessageMonitor = new ServerMessageMonitor(
             (groupId, message) -> messageSender.sendGroupMessage(groupId, message)
         );
-        this.messageHandler = new MessageHandler(messageSender, playerCountQueryHandler, checkInHandler, pointsQueryHandler, tipSubmissionHandler, tipHandler, helpHandler, catgirlHandler, serverCommandHandler, banListManager);
+        this.messageHandler = new MessageHandler(messageSender, playerCountQueryHandler, checkInHandler, pointsQueryHandler, leaderboardHandler, tipSubmissionHandler, tipHandler, tipSearchHandler, tipLikeHandler, hotTipsHandler, pointsTransferHandler, shopHandler, banCommandHandler, helpHandler, catgirlHandler, serverCommandHandler, banListManager);
         this.webSocketClient = new NapCatWebSocketClient(wsUrl, token, messageHandler);
     }
     
     /**
      * 启动机器人
+     * 快速启动（默认）时先连接WebSocket，其余组件在后台并行启动，同时预热NapCat和Cloudflare的HTTP连接；
+     * 组件就绪前收到的数据库命令在数据库命令线程中排队等待，触发词、帮助、/c等其他命令立即处理
      */
     public void start() {
         logger.info("启动QQ机器人...");
-        webSocketClient.connect();
+        StartupMetrics.phaseDone("初始化", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - constructNanos));
+        Map<String, Runnable> components = components();
+        if (ConfigManager.isFastStartEnabled()) {
+            messageHandler.holdStorageCommandsUntil(componentsReady);
+            webSocketClient.connect();
+            startComponentsInBackground(components);
+            warmUpInBackground();
+        } else {
+            long startNanos = System.nanoTime();
+            components.forEach(this::startComponent);
+            StartupMetrics.componentsReady(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            componentsReady.complete(null);
+            webSocketClient.connect();
+        }
+        // 监视配置文件（修改config.properties后自动生效）
+        ConfigManager.startWatching();
         // 启动服务器消息监控（自动同步服务器消息）
         serverMessageMonitor.start();
     }
     
+    /**
+     * 需要在处理数据库命令之前启动的组件（名称 -> 启动方法），彼此没有依赖，可以并行启动
+     */
+    private Map<String, Runnable> components() {
+        Map<String, Runnable> components = new LinkedHashMap<>();
+        // 启动用户数据缓存（后台预热并定期写回数据库）
+        components.put("用户数据缓存", userDataCache::start);
+        // 启动投稿索引（后台加载全部投稿ID）
+        components.put("投稿索引", tipIndex::start);
+        // 加载签到历史（连续签到和当月签到统计）
+        components.put("签到历史", checkInHistory::start);
+        // 启动投稿计数（后台加载并定期批量写回）
+        components.put("投稿计数", tipStatsCounter::start);
+        // 加载积分账本（缓存预热后按账本校正积分）
+        components.put("积分账本", pointsLedger::start);
+        // 监听黑名单文件变化（修改ban.txt后自动生效）
+        components.put("黑名单监听", banListManager::start);
+        return components;
+    }
+    
+    private void startComponent(String name, Runnable start) {
+        long startNanos = System.nanoTime();
+        try {
+            start.run();
+            StartupMetrics.phaseDone(name + "启动", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (Exception e) {
+            logger.error("[启动] {}启动失败", name, e);
+        }
+    }
+    
+    /**
+     * 在启动线程池中并行启动组件，全部完成后放行排队的数据库命令
+     */
+    private void startComponentsInBackground(Map<String, Runnable> components) {
+        long startNanos = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService startupExecutor = Executors.newFixedThreadPool(Math.min(STARTUP_THREADS, components.size()), r -> {
+            Thread t = new Thread(r, "Startup-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletableFuture<?>[] futures = components.entrySet().stream()
+                .map(entry -> CompletableFuture.runAsync(() -> startComponent(entry.getKey(), entry.getValue()), startupExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).whenComplete((ignored, error) -> {
+            startupExecutor.shutdown();
+            StartupMetrics.componentsReady(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            componentsReady.complete(null);
+        });
+    }
+    
+    /**
+     * 后台预热：获取机器人QQ号（同时建立到NapCat的HTTP连接，首条回复不用再建连接），预先建立到Cloudflare的连接
+     */
+    private void warmUpInBackground() {
+        Thread thread = new Thread(() -> {
+            long startNanos = System.nanoTime();
+            long botUserId = messageSender.fetchLoginUserId();
+            if (botUserId != 0) {
+                catgirlHandler.setBotUserId(botUserId);
+                logger.info("[启动] 机器人QQ号: {}", botUserId);
+            }
+            StartupMetrics.phaseDone("NapCat连接预热", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            CatgirlAIService.warmUp();
+        }, "StartupWarmUp");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
     /**
      * 停止机器人
      */
@@ -103,6 +264,17 @@ public class QQBot {
         if (webSocketClient != null) {
             webSocketClient.close();
         }
+        messageHandler.shutdown();
+        aiWorkerPool.shutdown();
+        banListManager.stop();
+        ConfigManager.stopWatching();
+        tipIndex.stop();
+        tipStatsCounter.stop();
+        checkInHistory.stop();
+        pointsLedger.stop();
+        // 最后停止用户数据缓存，确保未写回的签到数据落盘
+        userDataCache.stop();
+        storage.close();
     }
     
     /**
@@ -117,11 +289,7 @@ public class QQBot {
         public MessageSender(String apiUrl, String token) {
             this.apiUrl = apiUrl;
             this.token = token;
-            this.httpClient = new OkHttpClient.Builder()
-                    .connectTimeout(10, TimeUnit.SECONDS)
-                    .readTimeout(30, TimeUnit.SECONDS)
-                    .writeTimeout(30, TimeUnit.SECONDS)
-                    .build();
+            this.httpClient = HttpClients.withTimeouts(10, 30, 30);
         }
         
         /**
@@ -175,6 +343,17 @@ public class QQBot {
             }
         }
         
+        /**
+         * 发送命令的回复（群消息），发送成功时记录启动后的首条回复
+         */
+        public boolean sendGroupReply(long groupId, String message) {
+            boolean sent = sendGroupMessage(groupId, message);
+            if (sent) {
+                StartupMetrics.replySent();
+            }
+            return sent;
+        }
+        
         /**
          * 发送私聊消息
          */
@@ -225,6 +404,96 @@ public class QQBot {
                 return false;
             }
         }
+        
+        /**
+         * 发送命令的回复（私聊消息），发送成功时记录启动后的首条回复
+         */
+        public boolean sendPrivateReply(long userId, String message) {
+            boolean sent = sendPrivateMessage(userId, message);
+            if (sent) {
+                StartupMetrics.replySent();
+            }
+            return sent;
+        }
+        
+        /**
+         * 获取机器人自己的QQ号（get_login_info），同时预先建立到NapCat的HTTP连接
+         * @return QQ号，失败返回0
+         */
+        public long fetchLoginUserId() {
+            Request request = new Request.Builder()
+                    .url(apiUrl + "/get_login_info")
+                    .post(RequestBody.create("{}", JSON))
+                    .addHeader("Authorization", "Bearer " + token)
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                ResponseBody responseBody = response.body();
+                if (!response.isSuccessful() || responseBody == null) {
+                    logger.warn("获取机器人登录信息失败，状态码: {}", response.code());
+                    return 0;
+                }
+                JSONObject data = new JSONObject(responseBody.string()).optJSONObject("data");
+                return data != null ? data.optLong("user_id", 0) : 0;
+            } catch (Exception e) {
+                logger.warn("获取机器人登录信息失败: {}", e.getMessage());
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * 一条群消息及其所在群的功能配置，分发时传给各命令
+     */
+    private static final class GroupMessage {
+        final long groupId;
+        final long userId;
+        final String displayName;
+        final String text;
+        final JSONObject event;
+        final GroupProfile profile;
+        
+        GroupMessage(long groupId, long userId, String displayName, String text, JSONObject event, GroupProfile profile) {
+            this.groupId = groupId;
+            this.userId = userId;
+            this.displayName = displayName;
+            this.text = text;
+            this.event = event;
+            this.profile = profile;
+        }
+    }
+    
+    /**
+     * 群命令：所属功能、匹配条件和处理动作
+     */
+    private static final class CommandRoute {
+        final GroupProfile.Feature feature;
+        final Predicate<GroupMessage> matcher;
+        final Consumer<GroupMessage> action;
+        
+        CommandRoute(GroupProfile.Feature feature, Predicate<GroupMessage> matcher, Consumer<GroupMessage> action) {
+            this.feature = feature;
+            this.matcher = matcher;
+            this.action = action;
+        }
+    }
+    
+    /**
+     * 按配置快照编译的分发表：每个群功能配置对应一个只含开启命令的数组，下标与 GroupProfile.getIndex() 一致
+     */
+    private static final class DispatchTables {
+        final BotConfig config;
+        final CommandRoute[][] byProfile;
+        
+        DispatchTables(BotConfig config, CommandRoute[] routes) {
+            this.config = config;
+            GroupProfile[] profiles = config.getGroupProfiles();
+            this.byProfile = new CommandRoute[profiles.length][];
+            for (GroupProfile profile : profiles) {
+                byProfile[profile.getIndex()] = Arrays.stream(routes)
+                        .filter(route -> profile.has(route.feature))
+                        .toArray(CommandRoute[]::new);
+            }
+        }
     }
     
     /**
@@ -235,25 +504,188 @@ public class QQBot {
         private final PlayerCountQueryHandler playerCountQueryHandler;
         private final CheckInHandler checkInHandler;
         private final PointsQueryHandler pointsQueryHandler;
+        private final LeaderboardHandler leaderboardHandler;
         private final TipSubmissionHandler tipSubmissionHandler;
         private final TipHandler tipHandler;
+        private final TipSearchHandler tipSearchHandler;
+        private final TipLikeHandler tipLikeHandler;
+        private final HotTipsHandler hotTipsHandler;
+        private final PointsTransferHandler pointsTransferHandler;
+        private final ShopHandler shopHandler;
+        private final BanCommandHandler banCommandHandler;
         private final HelpHandler helpHandler;
         private final CatgirlHandler catgirlHandler;
         private final ServerCommandHandler serverCommandHandler;
         private final BanListManager banListManager;
         private final Set<Long> processedMessageIds = new HashSet<>();
+        // 访问数据库的命令在独立的单线程中执行（舱壁隔离），数据库故障时不会阻塞WebSocket线程和其他命令；
+        // 单线程保证同一用户的签到等操作仍按消息顺序串行执行
+        private final ThreadPoolExecutor storageCommandExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(STORAGE_COMMAND_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "StorageCommand");
+                    t.setDaemon(true);
+                    return t;
+                });
+        // 全部群命令，按处理顺序排列；各群的分发表从中筛选出开启的命令
+        private final CommandRoute[] routes;
+        // 按当前配置快照编译的分发表，配置重新加载时重新编译，处理消息时只读取
+        private volatile DispatchTables dispatchTables;
+        // 刷屏检测（在任何命令处理之前执行），阈值在运行时配置中，窗口长度修改后需要重启
+        private final FloodDetector floodDetector = new FloodDetector(ConfigManager.getFloodWindowSeconds());
         
-        public MessageHandler(MessageSender messageSender, PlayerCountQueryHandler playerCountQueryHandler, CheckInHandler checkInHandler, PointsQueryHandler pointsQueryHandler, TipSubmissionHandler tipSubmissionHandler, TipHandler tipHandler, HelpHandler helpHandler, CatgirlHandler catgirlHandler, ServerCommandHandler serverCommandHandler, BanListManager banListManager) {
+        public MessageHandler(MessageSender messageSender, PlayerCountQueryHandler playerCountQueryHandler, CheckInHandler checkInHandler, PointsQueryHandler pointsQueryHandler, LeaderboardHandler leaderboardHandler, TipSubmissionHandler tipSubmissionHandler, TipHandler tipHandler, TipSearchHandler tipSearchHandler, TipLikeHandler tipLikeHandler, HotTipsHandler hotTipsHandler, PointsTransferHandler pointsTransferHandler, ShopHandler shopHandler, BanCommandHandler banCommandHandler, HelpHandler helpHandler, CatgirlHandler catgirlHandler, ServerCommandHandler serverCommandHandler, BanListManager banListManager) {
             this.messageSender = messageSender;
             this.playerCountQueryHandler = playerCountQueryHandler;
             this.checkInHandler = checkInHandler;
             this.pointsQueryHandler = pointsQueryHandler;
+            this.leaderboardHandler = leaderboardHandler;
             this.tipSubmissionHandler = tipSubmissionHandler;
             this.tipHandler = tipHandler;
+            this.tipSearchHandler = tipSearchHandler;
+            this.tipLikeHandler = tipLikeHandler;
+            this.hotTipsHandler = hotTipsHandler;
+            this.pointsTransferHandler = pointsTransferHandler;
+            this.shopHandler = shopHandler;
+            this.banCommandHandler = banCommandHandler;
             this.helpHandler = helpHandler;
             this.catgirlHandler = catgirlHandler;
             this.serverCommandHandler = serverCommandHandler;
             this.banListManager = banListManager;
+            this.routes = new CommandRoute[] {
+                new CommandRoute(GroupProfile.Feature.TRIGGER,
+                        m -> m.text.trim().equals(m.profile.getTriggerMessage()),
+                        m -> messageSender.sendGroupReply(m.groupId, m.profile.getReplyMessage())),
+                new CommandRoute(GroupProfile.Feature.PLAYER_COUNT,
+                        m -> playerCountQueryHandler.shouldHandle(m.text),
+                        m -> playerCountQueryHandler.handleQuery(m.groupId, m.text)),
+                new CommandRoute(GroupProfile.Feature.CHECK_IN,
+                        m -> checkInHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> checkInHandler.handleCheckIn(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.POINTS,
+                        m -> pointsQueryHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> pointsQueryHandler.handleQuery(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.LEADERBOARD,
+                        m -> leaderboardHandler.shouldHandle(m.text),
+                        m -> leaderboardHandler.handleLeaderboard(m.groupId, m.userId, m.text)),
+                new CommandRoute(GroupProfile.Feature.TIP_SUBMISSION,
+                        m -> tipSubmissionHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> tipSubmissionHandler.handleSubmission(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.TIP,
+                        m -> tipHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> tipHandler.handleTip(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.TIP_SEARCH,
+                        m -> tipSearchHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> tipSearchHandler.handleSearch(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.TIP_LIKE,
+                        m -> tipLikeHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> tipLikeHandler.handleLike(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.HOT_TIPS,
+                        m -> hotTipsHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> hotTipsHandler.handleHotTips(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.TRANSFER,
+                        m -> pointsTransferHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> pointsTransferHandler.handleTransfer(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.SHOP,
+                        m -> shopHandler.shouldHandle(m.text),
+                        m -> runStorageCommand(m.groupId, () -> shopHandler.handleShop(m.groupId, m.userId, m.text))),
+                new CommandRoute(GroupProfile.Feature.HELP,
+                        m -> helpHandler.shouldHandle(m.text),
+                        m -> helpHandler.handleHelp(m.groupId, m.userId, m.text)),
+                new CommandRoute(GroupProfile.Feature.BAN,
+                        m -> banCommandHandler.shouldHandle(m.text),
+                        m -> banCommandHandler.handleBanCommand(m.groupId, m.userId, m.text)),
+                new CommandRoute(GroupProfile.Feature.SERVER_COMMAND,
+                        m -> serverCommandHandler.shouldHandle(m.text),
+                        m -> serverCommandHandler.handleCommand(m.groupId, m.userId, m.displayName, m.text)),
+                new CommandRoute(GroupProfile.Feature.AI,
+                        m -> catgirlHandler.shouldHandleGroupMessage(m.event),
+                        m -> catgirlHandler.handleGroupMessage(m.groupId, m.userId, m.event))
+            };
+            // 先注册监听器再编译，注册期间发生的重新加载也会反映到分发表中
+            ConfigManager.addReloadListener(this::rebuildDispatchTables);
+            rebuildDispatchTables();
+            logger.info("[刷屏检测] 窗口 {} 秒，限流阈值 {} 条，封禁阈值 {} 条，计数表占用 {} KB",
+                    ConfigManager.getFloodWindowSeconds(), ConfigManager.current().getFloodThrottleThreshold(),
+                    ConfigManager.current().getFloodBanThreshold(), floodDetector.getMemoryBytes() / 1024);
+        }
+        
+        /**
+         * 在数据库命令线程中执行命令，队列已满时直接回复繁忙
+         */
+        private void runStorageCommand(long groupId, Runnable command) {
+            try {
+                storageCommandExecutor.execute(command);
+            } catch (RejectedExecutionException e) {
+                logger.warn("数据库命令队列已满，拒绝请求，群号: {}", groupId);
+                messageSender.sendGroupMessage(groupId, "当前请求过多，请稍后再试");
+            }
+        }
+        
+        /**
+         * 让数据库命令线程先等待组件启动完成，期间收到的数据库命令在队列中排队，其他命令照常立即处理
+         */
+        public void holdStorageCommandsUntil(CompletableFuture<Void> ready) {
+            storageCommandExecutor.execute(() -> {
+                if (!ready.isDone()) {
+                    logger.info("[启动] 组件启动中，数据库命令将在就绪后执行");
+                    ready.join();
+                }
+            });
+        }
+        
+        /**
+         * 按当前配置快照重新编译全部群的分发表（启动时和配置重新加载后调用）
+         * 每次都读取最新快照，加锁保证并发重新加载时最后发布的是最新配置的分发表
+         */
+        private synchronized void rebuildDispatchTables() {
+            dispatchTables = new DispatchTables(ConfigManager.current(), routes);
+        }
+        
+        /**
+         * 刷屏检测：超过限流阈值时静默丢弃消息（不回复，避免机器人跟着刷屏），刚超过封禁阈值时临时封禁
+         * @return 消息应当丢弃返回true
+         */
+        private boolean isFlooding(long groupId, long userId) {
+            BotConfig config = ConfigManager.current();
+            int throttleThreshold = config.getFloodThrottleThreshold();
+            if (throttleThreshold <= 0 || config.isAdmin(userId)) {
+                return false;
+            }
+            
+            int count = floodDetector.record(userId, System.currentTimeMillis());
+            if (count <= throttleThreshold) {
+                return false;
+            }
+            // 超过封禁阈值时封禁（估计值可能一次跳过多个数，不能只判断等于阈值+1）；已封禁的不再重复封禁
+            int banThreshold = config.getFloodBanThreshold();
+            if (banThreshold > 0 && count > banThreshold && !banListManager.isBanned(userId)) {
+                int banMinutes = config.getFloodBanMinutes();
+                try {
+                    banListManager.ban(userId, 0, TimeUnit.MINUTES.toMillis(banMinutes));
+                    logger.warn("[刷屏检测] QQ号 {} 在群 {} 刷屏，已自动封禁 {} 分钟", userId, groupId, banMinutes);
+                    messageSender.sendGroupMessage(groupId, "检测到 " + userId + " 刷屏，已暂时封禁 " + banMinutes + " 分钟");
+                } catch (Exception e) {
+                    logger.error("[刷屏检测] 自动封禁失败，QQ号: {}", userId, e);
+                }
+            } else {
+                logger.debug("[刷屏检测] 丢弃刷屏消息，群号: {}, QQ号: {}", groupId, userId);
+            }
+            return true;
+        }
+        
+        /**
+         * 停止数据库命令线程，等待已提交的命令执行完毕
+         */
+        public void shutdown() {
+            storageCommandExecutor.shutdown();
+            try {
+                if (!storageCommandExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    storageCommandExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                storageCommandExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
         }
         
         /**
@@ -325,6 +757,10 @@ public class QQBot {
                     return;
                 }
                 
+                if (userId > 0 && isFlooding(groupId, userId)) {
+                    return;
+                }
+                
                 String displayName = card != null && !card.isEmpty() ? card : nickname;
                 
                 logger.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
@@ -335,113 +771,23 @@ public class QQBot {
                 logger.info("消息内容: {}", messageText);
                 logger.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
                 
-                // 检查触发词（oi）- 完全匹配
-                String trimmedMessage = messageText.trim();
-                if (trimmedMessage.equals(TRIGGER_MESSAGE)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词: {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        // 正常用户回复普通消息
-                        logger.info("检测到触发消息: '{}'，准备在群 {} 回复", TRIGGER_MESSAGE, groupId);
-                        messageSender.sendGroupMessage(groupId, REPLY_MESSAGE);
-                    }
-                }
-                
-                // 处理人数查询请求
-                if (playerCountQueryHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(人数查询): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到人数查询请求，群号: {}", groupId);
-                        playerCountQueryHandler.handleQuery(groupId, messageText);
-                    }
-                }
-                
-                // 处理签到请求
-                if (checkInHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(签到): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到签到请求，群号: {}, QQ号: {}", groupId, userId);
-                        checkInHandler.handleCheckIn(groupId, userId, messageText);
-                    }
-                }
-                
-                // 处理积分查询请求
-                if (pointsQueryHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(查询积分): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到积分查询请求，群号: {}, QQ号: {}", groupId, userId);
-                        pointsQueryHandler.handleQuery(groupId, userId, messageText);
-                    }
-                }
-                
-                // 处理投稿请求
-                if (tipSubmissionHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(投稿): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到投稿请求，群号: {}, QQ号: {}", groupId, userId);
-                        tipSubmissionHandler.handleSubmission(groupId, userId, messageText);
-                    }
-                }
-                
-                // 处理tip请求
-                if (tipHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(tip): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到tip请求，群号: {}, QQ号: {}", groupId, userId);
-                        tipHandler.handleTip(groupId, userId, messageText);
-                    }
-                }
-                
-                // 处理帮助请求
-                if (helpHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(帮助): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到帮助请求，群号: {}, QQ号: {}", groupId, userId);
-                        helpHandler.handleHelp(groupId, userId, messageText);
+                // 按群功能配置取出预先编译的分发表，只包含该群开启的命令；多个命令可以同时匹配同一条消息
+                // 群功能配置取自分发表编译时的配置快照，保证与分发表的下标一致
+                DispatchTables tables = dispatchTables;
+                GroupProfile profile = tables.config.getGroupProfile(groupId);
+                GroupMessage message = new GroupMessage(groupId, userId, displayName, messageText, event, profile);
+                for (CommandRoute route : tables.byProfile[profile.getIndex()]) {
+                    if (!route.matcher.test(message)) {
+                        continue;
                     }
-                }
-                
-                // 处理 /c 命令（服务器命令）
-                if (serverCommandHandler.shouldHandle(messageText)) {
-                    // 如果用户在黑名单中，回复禁止消息
-                    if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户发送触发词(/c命令): {} ({}), 发送禁止消息", displayName, userId);
-                        messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
-                    } else {
-                        logger.info("检测到 /c 命令，群号: {}, 用户: {}", groupId, displayName);
-                        serverCommandHandler.handleCommand(groupId, userId, displayName, messageText);
-                    }
-                }
-                
-                // 处理@机器人的消息（猫娘AI）
-                if (catgirlHandler.shouldHandleGroupMessage(event)) {
-                    // 如果用户在黑名单中，回复禁止消息
+                    // 如果用户在黑名单中，回复禁止消息（不计入启动后的首条命令）
                     if (userId > 0 && banListManager.isBanned(userId)) {
-                        logger.warn("检测到黑名单用户@机器人: {} ({}), 发送禁止消息", displayName, userId);
+                        logger.warn("检测到黑名单用户发送触发词({}): {} ({}), 发送禁止消息", route.feature.getDisplayName(), displayName, userId);
                         messageSender.sendGroupMessage(groupId, banListManager.getBanMessage());
                     } else {
-                        logger.info("检测到@机器人消息，群号: {}, 用户: {}", groupId, userId);
-                        catgirlHandler.handleGroupMessage(groupId, userId, event);
+                        StartupMetrics.commandReceived();
+                        logger.info("检测到{}请求，群号: {}, QQ号: {}", route.feature.getDisplayName(), groupId, userId);
+                        route.action.accept(message);
                     }
                 }
                 
@@ -550,6 +896,7 @@ public class QQBot {
                         messageSender.sendPrivateMessage(userId, banListManager.getBanMessage());
                     } else {
                         logger.info("检测到私聊消息，用户: {}", userId);
+                        StartupMetrics.commandReceived();
                         catgirlHandler.handlePrivateMessage(userId, messageText);
                     }
                 }
@@ -586,11 +933,7 @@ public class QQBot {
         }
         
         private OkHttpClient createClient() {
-            return new OkHttpClient.Builder()
-                    .connectTimeout(10, TimeUnit.SECONDS)
-                    .readTimeout(0, TimeUnit.SECONDS)
-                    .writeTimeout(30, TimeUnit.SECONDS)
-                    .build();
+            return HttpClients.withTimeouts(10, 0, 30);
         }
         
         /**
@@ -612,6 +955,7 @@ public class QQBot {
                 public void onOpen(WebSocket webSocket, Response response) {
                     logger.info("WebSocket连接已建立");
                     logger.info("响应状态: {}", response.code());
+                    StartupMetrics.webSocketOpened();
                 }
                 
                 @Override
@@ -0,0 +1,121 @@
+package com.xiaofan.qqbot;
+
+import java.util.function.Consumer;
+
+/**
+ * 按句子分段发送流式回复（非线程安全，由读取事件流的线程调用）
+ * AI回复的片段逐个追加进来，凑够完整的句子且不少于最小字数时立即发出，不用等整段回复生成完；
+ * 两条消息之间至少间隔一段时间，间隔未到时继续攒句子，合并到下一条一起发，避免短时间内连发多条消息
+ */
+public class SentenceChunker {
+    private static final String SENTENCE_ENDINGS = "。！？!?…~～\n";
+    
+    private final int minChars;
+    private final long minIntervalMillis;
+    private final Consumer<String> sink;
+    private final StringBuilder buffer = new StringBuilder();
+    private long lastSentAt;
+    private long firstSentAt;
+    private int sentCount;
+    
+    /**
+     * 构造函数
+     * @param minChars 每条消息的最少字数（最后一条除外）
+     * @param minIntervalMillis 两条消息之间的最短间隔（毫秒）
+     * @param sink 发送一条消息的函数
+     */
+    public SentenceChunker(int minChars, long minIntervalMillis, Consumer<String> sink) {
+        this.minChars = Math.max(1, minChars);
+        this.minIntervalMillis = Math.max(0, minIntervalMillis);
+        this.sink = sink;
+    }
+    
+    /**
+     * 追加一段回复，凑够句子且间隔已到时发出
+     */
+    public void append(String text) {
+        buffer.append(text);
+        if (System.currentTimeMillis() - lastSentAt < minIntervalMillis) {
+            return;
+        }
+        int end = lastSentenceEnd();
+        if (end > 0 && buffer.substring(0, end).trim().length() >= minChars) {
+            send(end);
+        }
+    }
+    
+    /**
+     * 回复结束：等到间隔已到后发出剩余的内容
+     */
+    public void finish() {
+        if (buffer.toString().trim().isEmpty()) {
+            buffer.setLength(0);
+            return;
+        }
+        long waitMillis = lastSentAt + minIntervalMillis - System.currentTimeMillis();
+        if (sentCount > 0 && waitMillis > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        send(buffer.length());
+    }
+    
+    /**
+     * 已发出的消息条数
+     */
+    public int getSentCount() {
+        return sentCount;
+    }
+    
+    /**
+     * 第一条消息发出的时间（毫秒），还没有发出返回0
+     */
+    public long getFirstSentAt() {
+        return firstSentAt;
+    }
+    
+    /**
+     * 缓冲区中最后一个句末标点之后的位置（句末标点连续出现时包含全部，如"喵~~"、"！？"），没有返回0
+     */
+    private int lastSentenceEnd() {
+        for (int i = buffer.length() - 1; i >= 0; i--) {
+            if (SENTENCE_ENDINGS.indexOf(buffer.charAt(i)) >= 0) {
+                // 句末标点在缓冲区末尾时，后面可能还有连续的标点，等下一段再切
+                return i == buffer.length() - 1 ? previousSentenceEnd(i) : i + 1;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * 跳过末尾连续的句末标点，找到前一个句子的结束位置
+     */
+    private int previousSentenceEnd(int index) {
+        int i = index;
+        while (i >= 0 && SENTENCE_ENDINGS.indexOf(buffer.charAt(i)) >= 0) {
+            i--;
+        }
+        for (; i >= 0; i--) {
+            if (SENTENCE_ENDINGS.indexOf(buffer.charAt(i)) >= 0) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+    
+    private void send(int end) {
+        String chunk = buffer.substring(0, end).trim();
+        buffer.delete(0, end);
+        if (chunk.isEmpty()) {
+            return;
+        }
+        sink.accept(chunk);
+        lastSentAt = System.currentTimeMillis();
+        if (sentCount++ == 0) {
+            firstSentAt = lastSentAt;
+        }
+    }
+}
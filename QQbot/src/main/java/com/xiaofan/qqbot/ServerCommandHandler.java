@@ -6,9 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 /**
@@ -18,16 +15,7 @@ import java.util.function.BiFunction;
 public class ServerCommandHandler {
     private static final Logger logger = LoggerFactory.getLogger(ServerCommandHandler.class);
     
-    // 目标群列表
-    private static final List<Long> TARGET_GROUPS = Arrays.asList(
-        1055829026L,
-        1067452253L,
-        721103774L
-    );
-    
-    // Minecraft客户端API地址
-    private static final String SERVER_COMMAND_API_URL = "http://127.0.0.1:2000/send_message_to_server";
-    
+    // 目标群列表和Minecraft客户端API地址在配置文件中设置（server.command.groups、server.api.url）
     private final OkHttpClient httpClient;
     private final BiFunction<Long, String, Boolean> messageSender;
     
@@ -37,11 +25,7 @@ public class ServerCommandHandler {
      */
     public ServerCommandHandler(BiFunction<Long, String, Boolean> messageSender) {
         this.messageSender = messageSender;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(2, TimeUnit.SECONDS)
-                .readTimeout(5, TimeUnit.SECONDS)
-                .writeTimeout(5, TimeUnit.SECONDS)
-                .build();
+        this.httpClient = HttpClients.withTimeouts(2, 5, 5);
     }
     
     /**
@@ -65,7 +49,7 @@ public class ServerCommandHandler {
      * @return 是否在目标列表中
      */
     public boolean isTargetGroup(long groupId) {
-        return TARGET_GROUPS.contains(groupId);
+        return ConfigManager.current().isServerCommandGroup(groupId);
     }
     
     /**
@@ -157,7 +141,7 @@ public class ServerCommandHandler {
         );
         
         Request request = new Request.Builder()
-                .url(SERVER_COMMAND_API_URL)
+                .url(ConfigManager.current().getServerCommandUrl())
                 .post(body)
                 .addHeader("Content-Type", "application/json")
                 .build();
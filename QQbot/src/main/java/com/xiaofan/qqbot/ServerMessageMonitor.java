@@ -6,8 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -20,20 +18,9 @@ import java.util.function.BiFunction;
 public class ServerMessageMonitor {
     private static final Logger logger = LoggerFactory.getLogger(ServerMessageMonitor.class);
     
-    // Minecraft客户端API地址
-    private static final String SERVER_MESSAGE_API_URL = "http://127.0.0.1:2000/get_server_last_message";
+    // API地址、目标群和消息前缀在配置文件中设置（server.*），修改后下次轮询即生效
     private static final long POLL_INTERVAL_SECONDS = 3; // 每3秒轮询一次
     
-    // 目标QQ群列表
-    private static final List<Long> TARGET_GROUPS = Arrays.asList(
-        1067452253L,
-        721103774L,
-        1055829026L
-    );
-    
-    // 消息前缀
-    private static final String MESSAGE_PREFIX = "邦国崛起服务器消息：";
-    
     private final OkHttpClient httpClient;
     private final BiFunction<Long, String, Boolean> messageSender;
     private ScheduledExecutorService scheduler;
@@ -45,10 +32,7 @@ public class ServerMessageMonitor {
      */
     public ServerMessageMonitor(BiFunction<Long, String, Boolean> messageSender) {
         this.messageSender = messageSender;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(2, TimeUnit.SECONDS)
-                .readTimeout(2, TimeUnit.SECONDS)
-                .build();
+        this.httpClient = HttpClients.withTimeouts(2, 2, 10);
     }
     
     /**
@@ -71,7 +55,7 @@ public class ServerMessageMonitor {
         scheduler.scheduleAtFixedRate(this::pollAndSend, 0, POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
         
         logger.info("[服务器消息监控] 已启动，每{}秒轮询一次API", POLL_INTERVAL_SECONDS);
-        logger.info("[服务器消息监控] 目标群: {}", TARGET_GROUPS);
+        logger.info("[服务器消息监控] 目标群: {}", ConfigManager.current().getRelayGroups());
     }
     
     /**
@@ -103,13 +87,17 @@ public class ServerMessageMonitor {
      */
     private void pollAndSend() {
         try {
-            String message = fetchServerMessage();
+            BotConfig config = ConfigManager.current();
+            String message = fetchServerMessage(config.getServerMessageUrl());
             
             if (message != null && !message.trim().isEmpty()) {
                 // 有有效消息，发送到所有目标群
-                String formattedMessage = MESSAGE_PREFIX + message;
+                String formattedMessage = config.getRelayMessagePrefix() + message;
                 
-                for (Long groupId : TARGET_GROUPS) {
+                for (Long groupId : config.getRelayGroups()) {
+                    if (!config.getGroupProfile(groupId).has(GroupProfile.Feature.RELAY)) {
+                        continue;
+                    }
                     try {
                         Boolean success = messageSender.apply(groupId, formattedMessage);
                         if (success != null && success) {
@@ -136,10 +124,10 @@ public class ServerMessageMonitor {
      * 从API获取服务器消息
      * @return 消息内容，如果为null或异常返回null
      */
-    private String fetchServerMessage() {
+    private String fetchServerMessage(String apiUrl) {
         try {
             Request request = new Request.Builder()
-                    .url(SERVER_MESSAGE_API_URL)
+                    .url(apiUrl)
                     .get()
                     .build();
             
@@ -0,0 +1,131 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * 积分商店处理器
+ * 检测"商店"关键词列出可购买的物品，检测"购买"关键词用积分购买物品
+ * 物品和价格在配置文件的 shop.items 中设置
+ * 格式：商店 / 购买 （物品名称）
+ */
+public class ShopHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ShopHandler.class);
+    
+    private static final String SHOP_KEYWORD = "商店";
+    private static final String PURCHASE_KEYWORD = "购买";
+    
+    private final PointsLedger pointsLedger;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param pointsLedger 积分账本
+     */
+    public ShopHandler(BiFunction<Long, String, Boolean> messageSender, PointsLedger pointsLedger) {
+        this.messageSender = messageSender;
+        this.pointsLedger = pointsLedger;
+    }
+    
+    /**
+     * 检查消息是否为"商店"或以"购买"开头（去除首尾空格后）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        String trimmed = messageText.trim();
+        return trimmed.equals(SHOP_KEYWORD) || trimmed.startsWith(PURCHASE_KEYWORD);
+    }
+    
+    /**
+     * 处理商店请求
+     * @param groupId 群号
+     * @param userId QQ号
+     * @param messageText 消息内容
+     */
+    public void handleShop(long groupId, long userId, String messageText) {
+        if (!shouldHandle(messageText)) {
+            return;
+        }
+        
+        String trimmed = messageText.trim();
+        if (trimmed.equals(SHOP_KEYWORD)) {
+            sendItemList(groupId);
+            return;
+        }
+        
+        if (userId <= 0) {
+            logger.warn("无效的QQ号: {}", userId);
+            messageSender.apply(groupId, "购买失败：无法获取QQ号");
+            return;
+        }
+        
+        String itemName = trimmed.substring(PURCHASE_KEYWORD.length()).trim();
+        logger.info("检测到购买请求，群号: {}, QQ号: {}, 物品: {}", groupId, userId, itemName);
+        
+        try {
+            Integer price = ConfigManager.current().getShopItems().get(itemName);
+            if (price == null) {
+                messageSender.apply(groupId, itemName.isEmpty()
+                        ? "购买失败：请使用格式「购买 （物品名称）」，发送「商店」查看可购买的物品"
+                        : "购买失败：商店中没有「" + itemName + "」，发送「商店」查看可购买的物品");
+                return;
+            }
+            
+            PointsLedger.Result result = pointsLedger.purchase(userId, itemName, price);
+            switch (result) {
+                case SUCCESS:
+                    messageSender.apply(groupId, String.format("购买成功！获得「%s」，花费 %d 积分，当前积分：%d",
+                            itemName, price, pointsLedger.getBalance(userId)));
+                    logger.info("购买成功，QQ号: {}, 物品: {}, 价格: {}", userId, itemName, price);
+                    break;
+                case INSUFFICIENT_POINTS:
+                    messageSender.apply(groupId, String.format("购买失败：「%s」需要 %d 积分，当前积分：%d",
+                            itemName, price, Math.max(0, pointsLedger.getBalance(userId))));
+                    break;
+                case USER_NOT_FOUND:
+                    messageSender.apply(groupId, "购买失败：你还没有签到过，请先发送「签到」");
+                    break;
+                default:
+                    messageSender.apply(groupId, "购买失败：记账失败，请稍后重试");
+                    logger.error("购买失败，QQ号: {}, 物品: {}", userId, itemName);
+            }
+        
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("购买失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "购买失败：" + e.getMessage());
+        } catch (Exception e) {
+            logger.error("处理购买时发生错误，QQ号: {}", userId, e);
+            
+            String errorMessage = "购买失败";
+            if (e.getMessage() != null) {
+                errorMessage = "购买失败：" + e.getMessage();
+            }
+            
+            messageSender.apply(groupId, errorMessage);
+        }
+    }
+    
+    /**
+     * 发送物品列表
+     */
+    private void sendItemList(long groupId) {
+        Map<String, Integer> items = ConfigManager.current().getShopItems();
+        if (items.isEmpty()) {
+            messageSender.apply(groupId, "商店暂未上架任何物品");
+            return;
+        }
+        
+        StringBuilder message = new StringBuilder("积分商店（发送「购买 物品名称」购买）：");
+        for (Map.Entry<String, Integer> item : items.entrySet()) {
+            message.append("\n").append(item.getKey()).append(" - ").append(item.getValue()).append(" 积分");
+        }
+        messageSender.apply(groupId, message.toString());
+    }
+}
@@ -0,0 +1,89 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 启动耗时统计
+ * 以JVM启动时间为起点，记录WebSocket首次连上、全部组件就绪和首条回复发出的时间并写入日志，
+ * 首条回复同时记录距收到第一条命令的时间，用于衡量重启后多快能响应命令。只记录第一次，重连不再记录
+ */
+public final class StartupMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(StartupMetrics.class);
+    
+    private static final long JVM_START_MILLIS = ManagementFactory.getRuntimeMXBean().getStartTime();
+    
+    private static final AtomicBoolean webSocketOpened = new AtomicBoolean();
+    private static final AtomicBoolean firstReplySent = new AtomicBoolean();
+    private static final AtomicLong firstCommandAt = new AtomicLong();
+    private static volatile long webSocketOpenedAt;
+    private static volatile long componentsReadyAt;
+    
+    private StartupMetrics() {
+    }
+    
+    /**
+     * 距JVM启动的毫秒数
+     */
+    public static long sinceJvmStart() {
+        return System.currentTimeMillis() - JVM_START_MILLIS;
+    }
+    
+    /**
+     * 记录某个启动阶段完成
+     * @param phase 阶段名称
+     * @param tookMillis 该阶段耗时（毫秒）
+     */
+    public static void phaseDone(String phase, long tookMillis) {
+        logger.info("[启动] {}完成，耗时 {}ms（距进程启动 {}ms）", phase, tookMillis, sinceJvmStart());
+    }
+    
+    /**
+     * WebSocket连接建立（只记录第一次）
+     */
+    public static void webSocketOpened() {
+        if (webSocketOpened.compareAndSet(false, true)) {
+            webSocketOpenedAt = sinceJvmStart();
+            logger.info("[启动] WebSocket已连接，开始接收消息（距进程启动 {}ms）", webSocketOpenedAt);
+        }
+    }
+    
+    /**
+     * 全部组件启动完成
+     * @param tookMillis 组件启动耗时（毫秒）
+     */
+    public static void componentsReady(long tookMillis) {
+        componentsReadyAt = sinceJvmStart();
+        logger.info("[启动] 全部组件已就绪，耗时 {}ms（距进程启动 {}ms）", tookMillis, componentsReadyAt);
+    }
+    
+    /**
+     * 收到一条要处理的命令（只记录第一次，黑名单用户的命令不算）
+     */
+    public static void commandReceived() {
+        if (firstCommandAt.get() == 0) {
+            firstCommandAt.compareAndSet(0, System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * 命令的回复发送成功（只记录第一次，转发消息和刷屏提示等不是回复的消息不调用）
+     */
+    public static void replySent() {
+        // 回复之前必然先记录了命令，没有命令时不是对命令的回复，不记录
+        long commandAt = firstCommandAt.get();
+        if (commandAt == 0 || firstReplySent.get() || !firstReplySent.compareAndSet(false, true)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        logger.info("[启动] 首条回复已发送：距进程启动 {}ms，距收到首条命令 {}ms（WebSocket连接于 {}ms，组件就绪于 {}ms）",
+                now - JVM_START_MILLIS,
+                now - commandAt,
+                webSocketOpenedAt,
+                componentsReadyAt == 0 ? "-" : String.valueOf(componentsReadyAt));
+    }
+}
@@ -0,0 +1,17 @@
+package com.xiaofan.qqbot;
+
+/**
+ * 数据存储不可用异常
+ * 数据库无法连接、响应超时或熔断中时抛出，消息内容可直接展示给用户
+ */
+public class StorageUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    public StorageUnavailableException(String message) {
+        super(message);
+    }
+    
+    public StorageUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
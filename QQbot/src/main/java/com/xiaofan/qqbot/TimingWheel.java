@@ -0,0 +1,174 @@
+package com.xiaofan.qqbot;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 分层时间轮（非线程安全，由调用方加锁）
+ * 按long键（如QQ号）登记到期时间，每秒一格；共5层、每层64格，第0层覆盖64秒，每往上一层范围扩大64倍，最长约34年。
+ * 登记和取消都是O(1)（每格是一条双向链表）；推进时只处理当前格，高层的格在低层转完一圈时整体下放到低层，
+ * 每个键最多下放4次，不需要扫描全部键
+ */
+public class TimingWheel {
+    private static final int LEVELS = 5;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+    private static final int NONE = -1;
+    
+    private final long tickMillis;
+    private long currentTick;
+    
+    // 每格链表头：下标为 层 * SLOTS + 格
+    private final int[] heads = new int[LEVELS * SLOTS];
+    
+    // 节点池
+    private long[] keys = new long[64];
+    private long[] deadlineTicks = new long[64];
+    private int[] next = new int[64];
+    private int[] prev = new int[64];
+    private int[] buckets = new int[64];
+    private int nodeCount = 0;
+    private int freeHead = NONE;
+    private final LongIntHashMap nodeByKey = new LongIntHashMap(64);
+    
+    /**
+     * 构造函数
+     * @param tickMillis 每格的时长（毫秒）
+     * @param nowMillis 当前时间（毫秒）
+     */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        Arrays.fill(heads, NONE);
+    }
+    
+    /**
+     * 登记到期时间，键已存在时改为新的到期时间；已经过期的时间在下一格到期
+     */
+    public void schedule(long key, long deadlineMillis) {
+        cancel(key);
+        
+        int node = allocate();
+        keys[node] = key;
+        deadlineTicks[node] = Math.max(deadlineMillis / tickMillis, currentTick + 1);
+        nodeByKey.put(key, node, NONE);
+        insert(node);
+    }
+    
+    /**
+     * 取消登记
+     * @return 键存在返回true
+     */
+    public boolean cancel(long key) {
+        int node = nodeByKey.remove(key, NONE);
+        if (node == NONE) {
+            return false;
+        }
+        unlink(node);
+        release(node);
+        return true;
+    }
+    
+    /**
+     * 推进到当前时间，依次回调每个到期的键（回调中不能修改时间轮）
+     */
+    public void advance(long nowMillis, LongConsumer onExpire) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            
+            // 低层转完一圈时，把高层对应的格下放（从高层往低层，下放的节点按剩余时间重新分层）
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            
+            int bucket = (int) (currentTick & SLOT_MASK);
+            int node = heads[bucket];
+            heads[bucket] = NONE;
+            while (node != NONE) {
+                int following = next[node];
+                long key = keys[node];
+                nodeByKey.remove(key, NONE);
+                release(node);
+                onExpire.accept(key);
+                node = following;
+            }
+        }
+    }
+    
+    /**
+     * 获取登记的键数量
+     */
+    public int size() {
+        return nodeByKey.size();
+    }
+    
+    private void cascade(int level, int slot) {
+        int bucket = level * SLOTS + slot;
+        int node = heads[bucket];
+        heads[bucket] = NONE;
+        while (node != NONE) {
+            int following = next[node];
+            insert(node);
+            node = following;
+        }
+    }
+    
+    /**
+     * 按剩余格数选择层：剩余不足64格放第0层，不足64²格放第1层，以此类推；格号取到期格的对应位
+     */
+    private void insert(int node) {
+        long delta = Math.min(deadlineTicks[node] - currentTick, MAX_DELTA);
+        long deadline = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int bucket = level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        
+        buckets[node] = bucket;
+        prev[node] = NONE;
+        next[node] = heads[bucket];
+        if (heads[bucket] != NONE) {
+            prev[heads[bucket]] = node;
+        }
+        heads[bucket] = node;
+    }
+    
+    private void unlink(int node) {
+        if (prev[node] != NONE) {
+            next[prev[node]] = next[node];
+        } else {
+            heads[buckets[node]] = next[node];
+        }
+        if (next[node] != NONE) {
+            prev[next[node]] = prev[node];
+        }
+    }
+    
+    private int allocate() {
+        if (freeHead != NONE) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+        if (nodeCount == keys.length) {
+            int capacity = nodeCount << 1;
+            keys = Arrays.copyOf(keys, capacity);
+            deadlineTicks = Arrays.copyOf(deadlineTicks, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            buckets = Arrays.copyOf(buckets, capacity);
+        }
+        return nodeCount++;
+    }
+    
+    private void release(int node) {
+        next[node] = freeHead;
+        freeHead = node;
+    }
+}
@@ -0,0 +1,167 @@
+package com.xiaofan.qqbot;
+
+import java.util.Arrays;
+
+/**
+ * 投稿近似重复检测索引
+ * 每条投稿以字符二元组集合（与搜索索引相同的分词）计算32个MinHash值，两条投稿MinHash值相同的比例即Jaccard相似度的估计；
+ * 签名按每4个值分成8段建立LSH哈希表，只有至少一段完全相同的投稿才会成为候选，
+ * 相似度0.8的投稿被检出的概率约98%（0.7约89%），查询不需要遍历全部投稿
+ */
+public class TipDuplicateIndex {
+    public static final double SIMILARITY_THRESHOLD = 0.7; // 估计的Jaccard相似度达到该值视为近似重复
+    
+    private static final int NUM_HASHES = 32;
+    private static final int ROWS_PER_BAND = 4;
+    private static final int BANDS = NUM_HASHES / ROWS_PER_BAND;
+    private static final int NO_DOC = -1;
+    private static final long[] SEEDS = new long[NUM_HASHES];
+    
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = Hashing.mix64(seed);
+        }
+    }
+    
+    // 每段一张表：bandHeads[band] 为 段哈希 -> 链表头，bandNext[band][doc] 为同一桶中的下一条
+    private final LongIntHashMap[] bandHeads = new LongIntHashMap[BANDS];
+    private int[][] bandNext = new int[BANDS][1024];
+    private int[] signatures = new int[1024 * NUM_HASHES];
+    private int[] docTipIds = new int[1024];
+    private int docCount = 0;
+    private final LongIntHashMap docByTipId = new LongIntHashMap(1024);
+    
+    public TipDuplicateIndex() {
+        for (int band = 0; band < BANDS; band++) {
+            bandHeads[band] = new LongIntHashMap(1024);
+        }
+    }
+    
+    /**
+     * 添加投稿（已存在则忽略；没有可用特征的内容不加入）
+     * @param tipId 投稿ID
+     * @param text 投稿内容
+     */
+    public synchronized void add(int tipId, String text) {
+        if (docByTipId.containsKey(tipId)) {
+            return;
+        }
+        int[] signature = signatureOf(text);
+        if (signature == null) {
+            return;
+        }
+        
+        int doc = docCount++;
+        if (doc == docTipIds.length) {
+            docTipIds = Arrays.copyOf(docTipIds, doc << 1);
+            signatures = Arrays.copyOf(signatures, (doc << 1) * NUM_HASHES);
+            for (int band = 0; band < BANDS; band++) {
+                bandNext[band] = Arrays.copyOf(bandNext[band], doc << 1);
+            }
+        }
+        System.arraycopy(signature, 0, signatures, doc * NUM_HASHES, NUM_HASHES);
+        docTipIds[doc] = tipId;
+        docByTipId.put(tipId, doc, NO_DOC);
+        
+        for (int band = 0; band < BANDS; band++) {
+            bandNext[band][doc] = bandHeads[band].put(bandKey(signature, band), doc, NO_DOC);
+        }
+    }
+    
+    /**
+     * 删除投稿（标记删除，桶中的记录在查询时跳过）
+     * @param tipId 投稿ID
+     */
+    public synchronized void remove(int tipId) {
+        int doc = docByTipId.remove(tipId, NO_DOC);
+        if (doc != NO_DOC) {
+            docTipIds[doc] = NO_DOC;
+        }
+    }
+    
+    /**
+     * 查找与内容最相似的已有投稿
+     * @param text 投稿内容
+     * @return 相似度达到SIMILARITY_THRESHOLD的最相似投稿，没有则返回null
+     */
+    public synchronized Match findSimilar(String text) {
+        int[] signature = signatureOf(text);
+        if (signature == null) {
+            return null;
+        }
+        
+        int minMatches = (int) Math.ceil(SIMILARITY_THRESHOLD * NUM_HASHES);
+        int bestDoc = NO_DOC;
+        int bestMatches = 0;
+        for (int band = 0; band < BANDS; band++) {
+            int doc = bandHeads[band].get(bandKey(signature, band), NO_DOC);
+            for (; doc != NO_DOC; doc = bandNext[band][doc]) {
+                if (docTipIds[doc] == NO_DOC || doc == bestDoc) {
+                    continue;
+                }
+                int matches = 0;
+                int offset = doc * NUM_HASHES;
+                for (int i = 0; i < NUM_HASHES; i++) {
+                    if (signatures[offset + i] == signature[i]) {
+                        matches++;
+                    }
+                }
+                if (matches >= minMatches && matches > bestMatches) {
+                    bestDoc = doc;
+                    bestMatches = matches;
+                    if (matches == NUM_HASHES) {
+                        return new Match(docTipIds[doc], 1.0);
+                    }
+                }
+            }
+        }
+        return bestDoc != NO_DOC ? new Match(docTipIds[bestDoc], (double) bestMatches / NUM_HASHES) : null;
+    }
+    
+    /**
+     * 计算MinHash签名：对二元组集合中的每个元素用32个不同种子哈希，各取最小值
+     * @return 签名，没有可用特征（例如纯表情或标点）时返回null
+     */
+    private static int[] signatureOf(String text) {
+        long[] terms = TipSearchIndex.tokenize(text, false);
+        if (terms.length == 0) {
+            return null;
+        }
+        
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long term : terms) {
+            long base = Hashing.mix64(term);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int hash = (int) (Hashing.mix64(base ^ SEEDS[i]) >>> 33); // 非负的31位哈希
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+    
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * ROWS_PER_BAND; i < (band + 1) * ROWS_PER_BAND; i++) {
+            key = key * 0x100000001B3L + signature[i];
+        }
+        return Hashing.mix64(key);
+    }
+    
+    /**
+     * 相似投稿
+     */
+    public static class Match {
+        public final int tipId;
+        public final double similarity; // 估计的Jaccard相似度，1.0表示二元组集合完全相同
+        
+        Match(int tipId, double similarity) {
+            this.tipId = tipId;
+            this.similarity = similarity;
+        }
+    }
+}
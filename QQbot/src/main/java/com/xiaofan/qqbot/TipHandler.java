@@ -16,16 +16,20 @@ public class TipHandler {
     private static final String TRIGGER_KEYWORD = "tip";
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
-    private final DatabaseManager databaseManager;
+    private final TipIndex tipIndex;
+    private final TipStatsCounter tipStatsCounter;
     private final BiFunction<Long, String, Boolean> messageSender;
     
     /**
      * 构造函数
      * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param tipIndex 投稿内存索引
+     * @param tipStatsCounter 投稿浏览和点赞计数
      */
-    public TipHandler(BiFunction<Long, String, Boolean> messageSender) {
+    public TipHandler(BiFunction<Long, String, Boolean> messageSender, TipIndex tipIndex, TipStatsCounter tipStatsCounter) {
         this.messageSender = messageSender;
-        this.databaseManager = new DatabaseManager();
+        this.tipIndex = tipIndex;
+        this.tipStatsCounter = tipStatsCounter;
     }
     
     /**
@@ -53,7 +57,7 @@ public class TipHandler {
         
         try {
             // 随机获取一条tip
-            DatabaseManager.TipInfo tipInfo = databaseManager.getRandomTip();
+            DatabaseManager.TipInfo tipInfo = tipIndex.getRandomTip();
             
             if (tipInfo == null) {
                 messageSender.apply(groupId, "暂无投稿内容，请先发送「投稿 （内容）」进行投稿。");
@@ -70,24 +74,24 @@ public class TipHandler {
             StringBuilder message = new StringBuilder();
             message.append("————Tip：#").append(tipInfo.id).append("\n");
             message.append(tipInfo.tip).append("\n");
-            message.append("————由").append(tipInfo.regUser).append("在").append(regTimeStr).append("投稿————");
+            message.append("————由").append(tipInfo.regUser).append("在").append(regTimeStr).append("投稿————\n");
+            tipStatsCounter.recordView(tipInfo.id);
+            message.append("浏览 ").append(tipStatsCounter.getViews(tipInfo.id))
+                    .append(" · 点赞 ").append(tipStatsCounter.getLikes(tipInfo.id))
+                    .append("（发送「点赞 ").append(tipInfo.id).append("」为它点赞）");
             
             messageSender.apply(groupId, message.toString());
             logger.info("tip查询成功，ID: {}, 用户: {}", tipInfo.id, tipInfo.regUser);
             
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("tip查询失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "tip查询失败：" + e.getMessage());
         } catch (Exception e) {
             logger.error("处理tip时发生错误，QQ号: {}", userId, e);
             
-            // 提供更友好的错误信息
             String errorMessage = "tip查询失败";
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                String causeMsg = e.getCause().getMessage();
-                if (causeMsg.contains("连接被拒绝") || causeMsg.contains("Communications link failure")) {
-                    errorMessage = "tip查询失败：数据库连接失败，请检查数据库服务是否正常运行";
-                } else {
-                    errorMessage = "tip查询失败：" + causeMsg;
-                }
-            } else if (e.getMessage() != null) {
+            if (e.getMessage() != null) {
                 errorMessage = "tip查询失败：" + e.getMessage();
             }
             
@@ -0,0 +1,340 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 投稿内存索引
+ * 在内存中保存全部投稿ID（升序int数组），随机tip在内存中选取ID后按主键查询，
+ * 取代ORDER BY RAND()的全表扫描；同时用LRU缓存最近访问的投稿内容。
+ * 首次加载时读取全部投稿内容构建搜索索引（TipSearchIndex）和近似重复检测索引（TipDuplicateIndex），
+ * 之后随插入和定期刷新增量更新
+ */
+public class TipIndex {
+    private static final Logger logger = LoggerFactory.getLogger(TipIndex.class);
+    
+    private static final long REFRESH_INTERVAL_MINUTES = 10; // 定期全量刷新，同步其他途径对tipdata的修改
+    private static final int BODY_CACHE_SIZE = 256; // 投稿内容LRU缓存条数
+    private static final int MAX_PICK_ATTEMPTS = 3; // 选中的ID已被删除时的重试次数
+    
+    private final DataStorage storage;
+    
+    // 升序排列的投稿ID，受idsLock保护
+    private final Object idsLock = new Object();
+    private int[] ids = new int[0];
+    private int idCount = 0;
+    private volatile boolean loaded = false;
+    
+    // 全文搜索索引和近似重复检测索引，首次加载全部投稿内容后可用
+    private final TipSearchIndex searchIndex = new TipSearchIndex();
+    private final TipDuplicateIndex duplicateIndex = new TipDuplicateIndex();
+    private volatile boolean searchable = false;
+    
+    // 投稿内容LRU缓存（访问顺序的LinkedHashMap），受自身锁保护
+    private final Map<Integer, DatabaseManager.TipInfo> bodyCache =
+            new LinkedHashMap<Integer, DatabaseManager.TipInfo>(BODY_CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, DatabaseManager.TipInfo> eldest) {
+                    return size() > BODY_CACHE_SIZE;
+                }
+            };
+    
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * 构造函数
+     * @param storage 数据存储
+     */
+    public TipIndex(DataStorage storage) {
+        this.storage = storage;
+    }
+    
+    /**
+     * 启动索引：立即在后台加载全部投稿ID，之后定期刷新
+     */
+    public void start() {
+        if (scheduler != null) {
+            return;
+        }
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TipIndex");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        
+        logger.info("[投稿索引] 已启动，每{}分钟刷新一次", REFRESH_INTERVAL_MINUTES);
+    }
+    
+    /**
+     * 停止索引
+     */
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        
+        logger.info("[投稿索引] 已停止");
+    }
+    
+    /**
+     * 插入投稿并加入索引
+     * @param tip 投稿内容
+     * @param regUser 投稿用户的QQ号
+     * @return 插入成功返回新投稿的ID，否则返回-1
+     */
+    public int insertTip(String tip, String regUser) {
+        int id = storage.insertTip(tip, regUser);
+        if (id > 0) {
+            addId(id);
+            searchIndex.add(id, tip);
+            duplicateIndex.add(id, tip);
+        }
+        return id;
+    }
+    
+    /**
+     * 随机获取一条投稿
+     * 在内存中随机选取ID后按主键获取内容，索引尚未加载时退回数据库随机查询
+     * @return TipInfo对象，如果没有数据返回null
+     */
+    public DatabaseManager.TipInfo getRandomTip() {
+        if (!loaded) {
+            logger.debug("[投稿索引] 索引尚未加载，使用数据库随机查询");
+            return storage.getRandomTip();
+        }
+        
+        for (int attempt = 0; attempt < MAX_PICK_ATTEMPTS; attempt++) {
+            int id = pickRandomId();
+            if (id < 0) {
+                return null;
+            }
+            
+            DatabaseManager.TipInfo tipInfo = getTip(id);
+            if (tipInfo != null) {
+                return tipInfo;
+            }
+            
+            // 数据库中已不存在（例如被手动删除），从索引中移除后重试
+            logger.debug("[投稿索引] 投稿ID {} 已不存在，从索引中移除", id);
+            removeId(id);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * 按ID获取投稿，优先从LRU缓存读取
+     * @param id 投稿ID
+     * @return TipInfo对象，如果不存在返回null
+     */
+    public DatabaseManager.TipInfo getTip(int id) {
+        synchronized (bodyCache) {
+            DatabaseManager.TipInfo cached = bodyCache.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        DatabaseManager.TipInfo tipInfo = storage.getTipById(id);
+        if (tipInfo != null) {
+            synchronized (bodyCache) {
+                bodyCache.put(id, tipInfo);
+            }
+        }
+        return tipInfo;
+    }
+    
+    /**
+     * 按关键词搜索投稿
+     * 搜索结果中已不存在的投稿（例如被手动删除）会从索引中移除并跳过
+     * @param query 关键词
+     * @param limit 最多返回条数
+     * @return 按相关度排序的投稿，搜索索引尚未加载完成时返回null
+     */
+    public List<DatabaseManager.TipInfo> search(String query, int limit) {
+        if (!searchable) {
+            return null;
+        }
+        
+        TipSearchIndex.SearchResult result = searchIndex.search(query, limit);
+        List<DatabaseManager.TipInfo> tips = new ArrayList<>(result.tipIds.length);
+        for (int id : result.tipIds) {
+            DatabaseManager.TipInfo tipInfo = getTip(id);
+            if (tipInfo != null) {
+                tips.add(tipInfo);
+            } else {
+                logger.debug("[投稿索引] 投稿ID {} 已不存在，从索引中移除", id);
+                removeId(id);
+            }
+        }
+        return tips;
+    }
+    
+    /**
+     * 查找与内容近似重复的已有投稿
+     * @param tip 投稿内容
+     * @return 最相似的投稿，没有近似重复或索引尚未加载完成时返回null
+     */
+    public TipDuplicateIndex.Match findSimilarTip(String tip) {
+        if (!searchable) {
+            return null;
+        }
+        return duplicateIndex.findSimilar(tip);
+    }
+    
+    /**
+     * 搜索索引是否已加载完成
+     */
+    public boolean isSearchable() {
+        return searchable;
+    }
+    
+    /**
+     * 获取索引中的投稿数量
+     */
+    public int size() {
+        synchronized (idsLock) {
+            return idCount;
+        }
+    }
+    
+    /**
+     * 从数据库重新加载全部投稿ID
+     */
+    public void refresh() {
+        long startTime = System.currentTimeMillis();
+        int[] loadedIds = searchable ? storage.loadTipIds() : loadAllForSearch();
+        if (loadedIds == null) {
+            logger.warn("[投稿索引] 刷新失败，继续使用当前索引");
+            return;
+        }
+        
+        if (searchable) {
+            // 其他途径新增的投稿（不经过insertTip）补充到搜索索引
+            for (int id : loadedIds) {
+                if (!searchIndex.contains(id)) {
+                    DatabaseManager.TipInfo tipInfo = getTip(id);
+                    if (tipInfo != null) {
+                        searchIndex.add(id, tipInfo.tip);
+                        duplicateIndex.add(id, tipInfo.tip);
+                    }
+                }
+            }
+        }
+        
+        synchronized (idsLock) {
+            // 保留加载期间新插入的投稿（ID大于加载结果中的最大ID）
+            int maxLoaded = loadedIds.length > 0 ? loadedIds[loadedIds.length - 1] : 0;
+            int extra = 0;
+            for (int i = idCount - 1; i >= 0 && ids[i] > maxLoaded; i--) {
+                extra++;
+            }
+            
+            int[] merged = Arrays.copyOf(loadedIds, loadedIds.length + extra);
+            System.arraycopy(ids, idCount - extra, merged, loadedIds.length, extra);
+            ids = merged;
+            idCount = merged.length;
+        }
+        loaded = true;
+        
+        logger.info("[投稿索引] 刷新完成，共 {} 条投稿，耗时 {}ms", size(), System.currentTimeMillis() - startTime);
+    }
+    
+    /**
+     * 首次加载：读取全部投稿内容构建搜索索引
+     * @return 全部投稿ID（升序），失败返回null
+     */
+    private int[] loadAllForSearch() {
+        List<DatabaseManager.TipInfo> tips = storage.loadAllTips();
+        if (tips == null) {
+            return null;
+        }
+        
+        long startTime = System.currentTimeMillis();
+        int[] loadedIds = new int[tips.size()];
+        for (int i = 0; i < tips.size(); i++) {
+            DatabaseManager.TipInfo tipInfo = tips.get(i);
+            loadedIds[i] = tipInfo.id;
+            searchIndex.add(tipInfo.id, tipInfo.tip);
+            duplicateIndex.add(tipInfo.id, tipInfo.tip);
+        }
+        searchable = true;
+        
+        logger.info("[投稿索引] 搜索索引构建完成，共 {} 条投稿，倒排表 {} KB，耗时 {}ms",
+                searchIndex.size(), searchIndex.getPostingBytes() / 1024, System.currentTimeMillis() - startTime);
+        return loadedIds;
+    }
+    
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("[投稿索引] 刷新时发生异常", e);
+        }
+    }
+    
+    private int pickRandomId() {
+        synchronized (idsLock) {
+            if (idCount == 0) {
+                return -1;
+            }
+            return ids[ThreadLocalRandom.current().nextInt(idCount)];
+        }
+    }
+    
+    private void addId(int id) {
+        synchronized (idsLock) {
+            int pos = Arrays.binarySearch(ids, 0, idCount, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(16, idCount << 1));
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, idCount - pos);
+            ids[pos] = id;
+            idCount++;
+        }
+    }
+    
+    private void removeId(int id) {
+        synchronized (idsLock) {
+            int pos = Arrays.binarySearch(ids, 0, idCount, id);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, idCount - pos - 1);
+            idCount--;
+        }
+        synchronized (bodyCache) {
+            bodyCache.remove(id);
+        }
+        searchIndex.remove(id);
+        duplicateIndex.remove(id);
+    }
+}
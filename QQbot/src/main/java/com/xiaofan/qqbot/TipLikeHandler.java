@@ -0,0 +1,113 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.BiFunction;
+
+/**
+ * 投稿点赞处理器
+ * 检测"点赞"关键词，为指定编号的投稿点赞
+ * 格式：点赞 （投稿编号），编号前的#可省略
+ */
+public class TipLikeHandler {
+    private static final Logger logger = LoggerFactory.getLogger(TipLikeHandler.class);
+    
+    private static final String TRIGGER_KEYWORD = "点赞";
+    
+    private final TipIndex tipIndex;
+    private final TipStatsCounter tipStatsCounter;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param tipIndex 投稿内存索引（用于确认投稿存在）
+     * @param tipStatsCounter 投稿浏览和点赞计数
+     */
+    public TipLikeHandler(BiFunction<Long, String, Boolean> messageSender, TipIndex tipIndex, TipStatsCounter tipStatsCounter) {
+        this.messageSender = messageSender;
+        this.tipIndex = tipIndex;
+        this.tipStatsCounter = tipStatsCounter;
+    }
+    
+    /**
+     * 检查消息是否为"点赞 编号"格式（去除首尾空格后）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        return parseTipId(messageText) != null;
+    }
+    
+    /**
+     * 解析投稿编号
+     * @return 投稿编号，格式不正确返回null
+     */
+    private Integer parseTipId(String messageText) {
+        String trimmed = messageText.trim();
+        if (!trimmed.startsWith(TRIGGER_KEYWORD)) {
+            return null;
+        }
+        
+        String number = trimmed.substring(TRIGGER_KEYWORD.length()).trim();
+        if (number.startsWith("#")) {
+            number = number.substring(1);
+        }
+        if (number.isEmpty() || number.length() > 9 || !number.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return Integer.parseInt(number);
+    }
+    
+    /**
+     * 处理点赞请求
+     * @param groupId 群号
+     * @param userId QQ号
+     * @param messageText 消息内容
+     */
+    public void handleLike(long groupId, long userId, String messageText) {
+        Integer tipId = parseTipId(messageText);
+        if (tipId == null) {
+            return;
+        }
+        
+        if (userId <= 0) {
+            logger.warn("无效的QQ号: {}", userId);
+            messageSender.apply(groupId, "点赞失败：无法获取QQ号");
+            return;
+        }
+        
+        logger.info("检测到点赞请求，群号: {}, QQ号: {}, 投稿ID: {}", groupId, userId, tipId);
+        
+        try {
+            if (tipIndex.getTip(tipId) == null) {
+                messageSender.apply(groupId, "点赞失败：投稿 #" + tipId + " 不存在");
+                return;
+            }
+            
+            if (!tipStatsCounter.like(tipId, userId)) {
+                messageSender.apply(groupId, "你已经为投稿 #" + tipId + " 点过赞了");
+                return;
+            }
+            
+            messageSender.apply(groupId, "点赞成功！投稿 #" + tipId + " 当前点赞数：" + tipStatsCounter.getLikes(tipId));
+            logger.info("点赞成功，QQ号: {}, 投稿ID: {}", userId, tipId);
+            
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("点赞失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "点赞失败：" + e.getMessage());
+        } catch (Exception e) {
+            logger.error("处理点赞时发生错误，QQ号: {}", userId, e);
+            
+            String errorMessage = "点赞失败";
+            if (e.getMessage() != null) {
+                errorMessage = "点赞失败：" + e.getMessage();
+            }
+            
+            messageSender.apply(groupId, errorMessage);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Tip搜索处理器
+ * 检测"搜索tip"关键词，按关键词搜索投稿内容
+ * 格式：搜索tip （关键词）
+ */
+public class TipSearchHandler {
+    private static final Logger logger = LoggerFactory.getLogger(TipSearchHandler.class);
+    
+    private static final String TRIGGER_KEYWORD = "搜索tip";
+    private static final int MAX_RESULTS = 5;
+    private static final int PREVIEW_LENGTH = 60; // 每条结果最多显示的字数
+    
+    private final TipIndex tipIndex;
+    private final BiFunction<Long, String, Boolean> messageSender;
+    
+    /**
+     * 构造函数
+     * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param tipIndex 投稿内存索引（含搜索索引）
+     */
+    public TipSearchHandler(BiFunction<Long, String, Boolean> messageSender, TipIndex tipIndex) {
+        this.messageSender = messageSender;
+        this.tipIndex = tipIndex;
+    }
+    
+    /**
+     * 检查消息是否以"搜索tip"开头（去除首尾空格后，tip不区分大小写）
+     */
+    public boolean shouldHandle(String messageText) {
+        if (messageText == null) {
+            return false;
+        }
+        String trimmed = messageText.trim();
+        return trimmed.regionMatches(true, 0, TRIGGER_KEYWORD, 0, TRIGGER_KEYWORD.length());
+    }
+    
+    /**
+     * 处理tip搜索请求
+     * @param groupId 群号
+     * @param userId QQ号
+     * @param messageText 消息内容
+     */
+    public void handleSearch(long groupId, long userId, String messageText) {
+        if (!shouldHandle(messageText)) {
+            return;
+        }
+        
+        logger.info("检测到tip搜索请求，群号: {}, QQ号: {}", groupId, userId);
+        
+        try {
+            String keyword = messageText.trim().substring(TRIGGER_KEYWORD.length()).trim();
+            if (keyword.isEmpty()) {
+                messageSender.apply(groupId, "搜索失败：请使用格式「搜索tip （关键词）」");
+                return;
+            }
+            
+            long startTime = System.nanoTime();
+            List<DatabaseManager.TipInfo> tips = tipIndex.search(keyword, MAX_RESULTS);
+            long elapsedMicros = (System.nanoTime() - startTime) / 1000;
+            
+            if (tips == null) {
+                messageSender.apply(groupId, "搜索索引正在加载，请稍后再试");
+                logger.info("tip搜索失败：搜索索引尚未加载完成");
+                return;
+            }
+            
+            if (tips.isEmpty()) {
+                messageSender.apply(groupId, "没有找到包含「" + keyword + "」的投稿");
+                logger.info("tip搜索无结果，关键词: {}, 耗时: {}μs", keyword, elapsedMicros);
+                return;
+            }
+            
+            StringBuilder message = new StringBuilder();
+            message.append("————搜索「").append(keyword).append("」————");
+            for (DatabaseManager.TipInfo tipInfo : tips) {
+                String preview = tipInfo.tip;
+                if (preview.length() > PREVIEW_LENGTH) {
+                    preview = preview.substring(0, PREVIEW_LENGTH) + "…";
+                }
+                message.append("\n#").append(tipInfo.id).append(" ").append(preview);
+            }
+            
+            messageSender.apply(groupId, message.toString());
+            logger.info("tip搜索成功，关键词: {}, 结果数: {}, 耗时: {}μs", keyword, tips.size(), elapsedMicros);
+            
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("搜索失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "搜索失败：" + e.getMessage());
+        } catch (Exception e) {
+            logger.error("处理tip搜索时发生错误，QQ号: {}", userId, e);
+            
+            String errorMessage = "搜索失败";
+            if (e.getMessage() != null) {
+                errorMessage = "搜索失败：" + e.getMessage();
+            }
+            
+            messageSender.apply(groupId, errorMessage);
+        }
+    }
+}
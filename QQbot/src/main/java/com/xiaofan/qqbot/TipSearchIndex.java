@@ -0,0 +1,347 @@
+package com.xiaofan.qqbot;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 投稿全文搜索索引
+ * 按字符二元组（bigram）建立倒排索引，不依赖分词，适合中文；单字查询使用单字索引。
+ * 倒排表按文档序号升序存储为 varint(序号差值) + varint(词频) 的压缩字节数组，
+ * 查询按BM25打分后取前N条
+ */
+public class TipSearchIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final long UNIGRAM_FLAG = 1L << 32;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // 词项 -> postings下标
+    private final LongIntHashMap termSlots = new LongIntHashMap(4096);
+    private final List<PostingList> postings = new ArrayList<>();
+    
+    // 文档序号（插入顺序）-> 投稿ID / 文档长度；投稿ID -> 文档序号
+    private int[] docTipIds = new int[1024];
+    private int[] docLengths = new int[1024];
+    private int docCount = 0;
+    private final LongIntHashMap docByTipId = new LongIntHashMap(1024);
+    private final BitSet deletedDocs = new BitSet();
+    private int liveDocs = 0;
+    private long totalLength = 0;
+    
+    /**
+     * 添加投稿到索引（已存在则忽略）
+     * @param tipId 投稿ID
+     * @param text 投稿内容
+     */
+    public void add(int tipId, String text) {
+        long[] terms = tokenize(text, true);
+        Arrays.sort(terms);
+        
+        lock.writeLock().lock();
+        try {
+            if (docByTipId.containsKey(tipId)) {
+                return;
+            }
+            
+            int doc = docCount++;
+            if (doc == docTipIds.length) {
+                docTipIds = Arrays.copyOf(docTipIds, doc << 1);
+                docLengths = Arrays.copyOf(docLengths, doc << 1);
+            }
+            docTipIds[doc] = tipId;
+            docLengths[doc] = terms.length;
+            docByTipId.put(tipId, doc, -1);
+            liveDocs++;
+            totalLength += terms.length;
+            
+            // terms已排序，相同词项连续出现，连续段长度即词频
+            for (int i = 0; i < terms.length; ) {
+                int j = i + 1;
+                while (j < terms.length && terms[j] == terms[i]) {
+                    j++;
+                }
+                postingListOf(terms[i]).append(doc, j - i);
+                i = j;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 从索引中删除投稿（标记删除，倒排表中的记录在查询时跳过）
+     * @param tipId 投稿ID
+     */
+    public void remove(int tipId) {
+        lock.writeLock().lock();
+        try {
+            int doc = docByTipId.remove(tipId, -1);
+            if (doc < 0) {
+                return;
+            }
+            deletedDocs.set(doc);
+            liveDocs--;
+            totalLength -= docLengths[doc];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 检查投稿是否已在索引中
+     */
+    public boolean contains(int tipId) {
+        lock.readLock().lock();
+        try {
+            return docByTipId.containsKey(tipId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 获取索引中的投稿数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 估算倒排表占用的字节数
+     */
+    public long getPostingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList list : postings) {
+                bytes += list.data.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 搜索投稿
+     * 至少命中一半查询词项的投稿才会返回，按BM25得分降序，同分时新投稿在前
+     * @param query 查询关键词
+     * @param limit 最多返回条数
+     * @return 搜索结果
+     */
+    public SearchResult search(String query, int limit) {
+        long[] terms = tokenize(query, false);
+        Arrays.sort(terms);
+        int termCount = dedupe(terms);
+        
+        SearchResult result = new SearchResult();
+        if (termCount == 0 || limit <= 0) {
+            return result;
+        }
+        
+        lock.readLock().lock();
+        try {
+            float[] scores = new float[docCount];
+            short[] hits = new short[docCount];
+            int[] touched = new int[64];
+            int touchedCount = 0;
+            float avgLength = liveDocs > 0 ? (float) totalLength / liveDocs : 1f;
+            // BM25长度归一化 K1 * (1 - B + B * len / avgLength) 展开为 normBase + normScale * len
+            float normBase = K1 * (1 - B);
+            float normScale = K1 * B / avgLength;
+            
+            for (int t = 0; t < termCount; t++) {
+                int slot = termSlots.get(terms[t], -1);
+                if (slot < 0) {
+                    continue;
+                }
+                PostingList list = postings.get(slot);
+                float idf = (float) Math.log(1 + (liveDocs - list.docFreq + 0.5) / (list.docFreq + 0.5));
+                
+                int doc = 0;
+                int pos = 0;
+                while (pos < list.size) {
+                    // varint解码：文档序号差值
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = list.data[pos++];
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    doc += delta;
+                    
+                    // varint解码：词频
+                    int tf = 0;
+                    shift = 0;
+                    do {
+                        b = list.data[pos++];
+                        tf |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    
+                    if (deletedDocs.get(doc)) {
+                        continue;
+                    }
+                    if (hits[doc] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount << 1);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    hits[doc]++;
+                    float norm = normBase + normScale * docLengths[doc];
+                    scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+            
+            // 选出得分最高的limit条（limit很小，直接插入排序）
+            int minHits = (termCount + 1) / 2;
+            int[] topDocs = new int[limit];
+            int topCount = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                if (hits[doc] < minHits) {
+                    continue;
+                }
+                result.totalHits++;
+                
+                int pos = topCount;
+                while (pos > 0 && better(doc, topDocs[pos - 1], scores)) {
+                    pos--;
+                }
+                if (pos >= limit) {
+                    continue;
+                }
+                int end = Math.min(topCount, limit - 1);
+                System.arraycopy(topDocs, pos, topDocs, pos + 1, end - pos);
+                topDocs[pos] = doc;
+                topCount = Math.min(topCount + 1, limit);
+            }
+            
+            result.tipIds = new int[topCount];
+            for (int i = 0; i < topCount; i++) {
+                result.tipIds[i] = docTipIds[topDocs[i]];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private boolean better(int doc, int other, float[] scores) {
+        if (scores[doc] != scores[other]) {
+            return scores[doc] > scores[other];
+        }
+        return docTipIds[doc] > docTipIds[other];
+    }
+    
+    private PostingList postingListOf(long term) {
+        int slot = termSlots.get(term, -1);
+        if (slot < 0) {
+            slot = postings.size();
+            termSlots.put(term, slot, -1);
+            postings.add(new PostingList());
+        }
+        return postings.get(slot);
+    }
+    
+    /**
+     * 分词：先NFKC规范化（全角转半角）并转小写，按非字母数字字符切分成片段，
+     * 每个片段输出相邻两字组成的二元组；建索引时额外输出单字，查询时仅单字片段使用单字
+     */
+    static long[] tokenize(String text, boolean includeUnigrams) {
+        if (text == null || text.isEmpty()) {
+            return new long[0];
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        
+        long[] terms = new long[normalized.length() * 2];
+        int count = 0;
+        int runStart = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+                continue;
+            }
+            if (runStart < 0) {
+                continue;
+            }
+            
+            int runLength = i - runStart;
+            if (includeUnigrams || runLength == 1) {
+                for (int k = runStart; k < i; k++) {
+                    terms[count++] = UNIGRAM_FLAG | normalized.charAt(k);
+                }
+            }
+            for (int k = runStart; k + 1 < i; k++) {
+                terms[count++] = ((long) normalized.charAt(k) << 16) | normalized.charAt(k + 1);
+            }
+            runStart = -1;
+        }
+        return Arrays.copyOf(terms, count);
+    }
+    
+    /**
+     * 对已排序的数组原地去重，返回去重后的长度
+     */
+    private static int dedupe(long[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * 压缩倒排表：varint(文档序号差值) + varint(词频)
+     */
+    private static class PostingList {
+        byte[] data = new byte[8];
+        int size = 0;
+        int lastDoc = 0;
+        int docFreq = 0;
+        
+        void append(int doc, int tf) {
+            if (size + 10 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length << 1, size + 10));
+            }
+            writeVarInt(doc - lastDoc);
+            writeVarInt(tf);
+            lastDoc = doc;
+            docFreq++;
+        }
+        
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+    
+    /**
+     * 搜索结果
+     */
+    public static class SearchResult {
+        public int[] tipIds = new int[0]; // 按相关度排序的投稿ID
+        public int totalHits = 0; // 命中的投稿总数
+    }
+}
@@ -0,0 +1,305 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 投稿浏览和点赞计数
+ * 计数先在内存中用LongAdder累加（高并发下无竞争），定期把增量批量写回 tipstats 表，
+ * 避免每次浏览都执行一次UPDATE；热门投稿直接从内存计数中选出
+ */
+public class TipStatsCounter {
+    private static final Logger logger = LoggerFactory.getLogger(TipStatsCounter.class);
+    
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final long LOAD_RETRY_SECONDS = 30;
+    
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        if (a.likes != b.likes) {
+            return Long.compare(b.likes, a.likes);
+        }
+        if (a.views != b.views) {
+            return Long.compare(b.views, a.views);
+        }
+        return Integer.compare(b.tipId, a.tipId);
+    };
+    
+    private final DataStorage storage;
+    private final long flushIntervalSeconds;
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * 构造函数
+     * @param storage 数据存储
+     */
+    public TipStatsCounter(DataStorage storage) {
+        this.storage = storage;
+        this.flushIntervalSeconds = Math.max(1, ConfigManager.getCacheFlushIntervalSeconds());
+    }
+    
+    /**
+     * 启动：后台加载已有计数并开始定期写回
+     */
+    public void start() {
+        if (scheduler != null) {
+            return;
+        }
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TipStatsCounter");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        scheduler.execute(this::load);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        
+        logger.info("[投稿计数] 已启动，每{}秒批量写回数据库", flushIntervalSeconds);
+    }
+    
+    /**
+     * 停止并把尚未写回的增量同步写入数据库
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        
+        flush();
+        logger.info("[投稿计数] 已停止");
+    }
+    
+    /**
+     * 记录一次浏览
+     */
+    public void recordView(int tipId) {
+        counterOf(tipId).pendingViews.increment();
+    }
+    
+    /**
+     * 点赞（每个用户对每条投稿只能点赞一次）
+     * 谁点过赞直接记入存储（tiplikes表或本地日志），重启后仍然有效；点赞数仍按增量批量写回
+     * @return 点赞成功返回true，已经点过赞返回false
+     * @throws StorageUnavailableException 数据库不可用或点赞记录写入失败
+     */
+    public boolean like(int tipId, long userId) {
+        int result = storage.addTipLike(tipId, userId);
+        if (result < 0) {
+            throw new StorageUnavailableException("点赞记录保存失败，请稍后再试");
+        }
+        if (result == 0) {
+            return false;
+        }
+        counterOf(tipId).pendingLikes.increment();
+        return true;
+    }
+    
+    /**
+     * 获取浏览次数（含尚未写回的部分）
+     */
+    public long getViews(int tipId) {
+        Counter counter = counters.get(tipId);
+        return counter != null ? counter.views() : 0;
+    }
+    
+    /**
+     * 获取点赞数（含尚未写回的部分）
+     */
+    public long getLikes(int tipId) {
+        Counter counter = counters.get(tipId);
+        return counter != null ? counter.likes() : 0;
+    }
+    
+    /**
+     * 获取热门投稿（点赞数优先，其次浏览次数）
+     * @param n 条数
+     * @return 按热度排序的计数
+     */
+    public List<Entry> top(int n) {
+        // 容量为n的小顶堆（堆顶为当前入选中最差的一条）
+        PriorityQueue<Entry> heap = new PriorityQueue<>(n + 1, ORDER.reversed());
+        for (Map.Entry<Integer, Counter> e : counters.entrySet()) {
+            Entry entry = new Entry(e.getKey(), e.getValue().views(), e.getValue().likes());
+            if (entry.views == 0 && entry.likes == 0) {
+                continue;
+            }
+            heap.offer(entry);
+            if (heap.size() > n) {
+                heap.poll();
+            }
+        }
+        
+        List<Entry> result = new ArrayList<>(heap);
+        result.sort(ORDER);
+        return result;
+    }
+    
+    /**
+     * 是否已加载数据库中的计数
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * 把累计的增量批量写入数据库，失败的增量加回待写回计数，下次重试
+     * 加载完成前不写回，避免加载结果与已写回的增量重复累加
+     */
+    public synchronized void flush() {
+        if (!loaded) {
+            return;
+        }
+        
+        List<DatabaseManager.TipStats> deltas = new ArrayList<>();
+        for (Map.Entry<Integer, Counter> e : counters.entrySet()) {
+            Counter counter = e.getValue();
+            long views = counter.pendingViews.sumThenReset();
+            long likes = counter.pendingLikes.sumThenReset();
+            if (views == 0 && likes == 0) {
+                continue;
+            }
+            // 随即计入已写回部分，读取的总数不受写回影响
+            counter.flushedViews.addAndGet(views);
+            counter.flushedLikes.addAndGet(likes);
+            
+            DatabaseManager.TipStats delta = new DatabaseManager.TipStats();
+            delta.tipId = e.getKey();
+            delta.views = views;
+            delta.likes = likes;
+            deltas.add(delta);
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        
+        int saved = 0;
+        for (int from = 0; from < deltas.size(); from += FLUSH_BATCH_SIZE) {
+            List<DatabaseManager.TipStats> batch = deltas.subList(from, Math.min(from + FLUSH_BATCH_SIZE, deltas.size()));
+            boolean batchSaved;
+            try {
+                batchSaved = storage.addTipStats(batch);
+            } catch (StorageUnavailableException e) {
+                logger.warn("[投稿计数] 写回数据库失败: {}", e.getMessage());
+                batchSaved = false;
+            }
+            if (!batchSaved) {
+                restore(deltas.subList(from, deltas.size()));
+                break;
+            }
+            saved += batch.size();
+        }
+        
+        if (saved == deltas.size()) {
+            logger.debug("[投稿计数] 已写回 {} 条投稿的计数", saved);
+        } else {
+            logger.warn("[投稿计数] 写回数据库失败，{} 条投稿的计数将在下次重试", deltas.size() - saved);
+        }
+    }
+    
+    private void restore(List<DatabaseManager.TipStats> failed) {
+        for (DatabaseManager.TipStats delta : failed) {
+            Counter counter = counterOf(delta.tipId);
+            counter.flushedViews.addAndGet(-delta.views);
+            counter.flushedLikes.addAndGet(-delta.likes);
+            counter.pendingViews.add(delta.views);
+            counter.pendingLikes.add(delta.likes);
+        }
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("[投稿计数] 写回数据库时发生异常", e);
+        }
+    }
+    
+    /**
+     * 从数据库加载已有计数，失败时稍后重试；加载前产生的计数保留在待写回部分
+     */
+    private void load() {
+        List<DatabaseManager.TipStats> stats;
+        try {
+            stats = storage.loadTipStats();
+        } catch (StorageUnavailableException e) {
+            logger.warn("[投稿计数] 加载失败: {}", e.getMessage());
+            stats = null;
+        }
+        if (stats == null) {
+            logger.warn("[投稿计数] 加载失败，{}秒后重试", LOAD_RETRY_SECONDS);
+            ScheduledExecutorService current = scheduler;
+            if (current != null && !current.isShutdown()) {
+                current.schedule(this::load, LOAD_RETRY_SECONDS, TimeUnit.SECONDS);
+            }
+            return;
+        }
+        
+        for (DatabaseManager.TipStats tipStats : stats) {
+            Counter counter = counterOf(tipStats.tipId);
+            counter.flushedViews.addAndGet(tipStats.views);
+            counter.flushedLikes.addAndGet(tipStats.likes);
+        }
+        loaded = true;
+        logger.info("[投稿计数] 已加载 {} 条投稿的计数", stats.size());
+    }
+    
+    private Counter counterOf(int tipId) {
+        return counters.computeIfAbsent(tipId, id -> new Counter());
+    }
+    
+    /**
+     * 单条投稿的计数：已写回（或正在写回）部分 + 待写回部分
+     */
+    private static class Counter {
+        final AtomicLong flushedViews = new AtomicLong();
+        final AtomicLong flushedLikes = new AtomicLong();
+        final LongAdder pendingViews = new LongAdder();
+        final LongAdder pendingLikes = new LongAdder();
+        
+        long views() {
+            return flushedViews.get() + pendingViews.sum();
+        }
+        
+        long likes() {
+            return flushedLikes.get() + pendingLikes.sum();
+        }
+    }
+    
+    /**
+     * 热门投稿条目
+     */
+    public static class Entry {
+        public final int tipId;
+        public final long views;
+        public final long likes;
+        
+        Entry(int tipId, long views, long likes) {
+            this.tipId = tipId;
+            this.views = views;
+            this.likes = likes;
+        }
+    }
+}
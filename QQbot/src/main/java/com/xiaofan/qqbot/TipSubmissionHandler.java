@@ -7,7 +7,7 @@ import java.util.function.BiFunction;
 
 /**
  * 投稿处理器
- * 检测"投稿"关键词，处理用户投稿逻辑
+ * 检测"投稿"关键词，处理用户投稿逻辑，与已有投稿近似重复的内容会被拒绝
  * 格式：投稿 （内容）
  */
 public class TipSubmissionHandler {
@@ -15,16 +15,17 @@ public class TipSubmissionHandler {
     
     private static final String TRIGGER_KEYWORD = "投稿";
     
-    private final DatabaseManager databaseManager;
+    private final TipIndex tipIndex;
     private final BiFunction<Long, String, Boolean> messageSender;
     
     /**
      * 构造函数
      * @param messageSender 消息发送函数，接收群号和消息内容，返回是否发送成功
+     * @param tipIndex 投稿内存索引
      */
-    public TipSubmissionHandler(BiFunction<Long, String, Boolean> messageSender) {
+    public TipSubmissionHandler(BiFunction<Long, String, Boolean> messageSender, TipIndex tipIndex) {
         this.messageSender = messageSender;
-        this.databaseManager = new DatabaseManager();
+        this.tipIndex = tipIndex;
     }
     
     /**
@@ -107,11 +108,22 @@ public class TipSubmissionHandler {
                 return;
             }
             
+            // 检查是否与已有投稿近似重复
+            TipDuplicateIndex.Match similar = tipIndex.findSimilarTip(tipContent);
+            if (similar != null) {
+                int percent = (int) Math.round(similar.similarity * 100);
+                messageSender.apply(groupId, percent >= 100
+                        ? "投稿失败：已有相同的投稿 #" + similar.tipId
+                        : "投稿失败：与已有投稿 #" + similar.tipId + " 内容过于相似（相似度" + percent + "%）");
+                logger.info("投稿被拒绝（近似重复），QQ号: {}, 相似投稿ID: {}, 相似度: {}%", userId, similar.tipId, percent);
+                return;
+            }
+            
             // 插入数据库
             String regUser = String.valueOf(userId);
-            boolean success = databaseManager.insertTip(tipContent, regUser);
+            int tipId = tipIndex.insertTip(tipContent, regUser);
             
-            if (success) {
+            if (tipId > 0) {
                 messageSender.apply(groupId, "投稿成功！感谢您的投稿。");
                 logger.info("投稿成功，QQ号: {}, 内容长度: {}", userId, tipContent.length());
             } else {
@@ -119,19 +131,15 @@ public class TipSubmissionHandler {
                 logger.error("投稿失败，QQ号: {}", userId);
             }
             
+        } catch (StorageUnavailableException e) {
+            // 数据库不可用（连接失败、超时或熔断中），直接告知状态
+            logger.warn("投稿失败，数据库不可用，QQ号: {}，原因: {}", userId, e.getMessage());
+            messageSender.apply(groupId, "投稿失败：" + e.getMessage());
         } catch (Exception e) {
             logger.error("处理投稿时发生错误，QQ号: {}", userId, e);
             
-            // 提供更友好的错误信息
             String errorMessage = "投稿失败";
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                String causeMsg = e.getCause().getMessage();
-                if (causeMsg.contains("连接被拒绝") || causeMsg.contains("Communications link failure")) {
-                    errorMessage = "投稿失败：数据库连接失败，请检查数据库服务是否正常运行";
-                } else {
-                    errorMessage = "投稿失败：" + causeMsg;
-                }
-            } else if (e.getMessage() != null) {
+            if (e.getMessage() != null) {
                 errorMessage = "投稿失败：" + e.getMessage();
             }
             
@@ -0,0 +1,187 @@
+package com.xiaofan.qqbot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按long键（QQ号、群号）限流的令牌桶（线程安全，检查无锁）
+ * 每个桶只保存一个long：桶"理论上被取空"的时间点（GCRA算法，与令牌桶等价），取令牌就是把这个时间点CAS后移一个补充间隔，
+ * 超过容量时可以直接算出还要等多久。桶存放在键、值两个AtomicLongArray组成的开放寻址表中，没有装箱对象；
+ * 已经补满的桶和不存在的桶等价，定期重建表时直接丢弃（空闲淘汰），表的大小只取决于最近活跃的键数量。
+ * 重建表的瞬间并发取走的令牌可能丢失，只会让限额略微宽松
+ */
+public class TokenBucketLimiter {
+    private static final long FREE_KEY = 0L;
+    private static final int MAX_PROBES = 16;
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+    
+    /**
+     * 开放寻址表，扩容和清理时整体替换
+     */
+    private static final class Table {
+        final AtomicLongArray keys;
+        final AtomicLongArray emptyAt; // 桶被取空的时间点（毫秒），早于当前时间表示桶已补满
+        final int mask;
+        final AtomicInteger size = new AtomicInteger();
+        
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.emptyAt = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+    
+    private volatile Table table;
+    private final AtomicLong lastSweep;
+    
+    /**
+     * 构造函数
+     * @param expectedKeys 预计同时活跃的键数量
+     */
+    public TokenBucketLimiter(int expectedKeys) {
+        this.table = new Table(tableSizeFor(Math.max(16, expectedKeys * 2)));
+        this.lastSweep = new AtomicLong(System.currentTimeMillis());
+    }
+    
+    /**
+     * 尝试从键对应的桶中取一个令牌
+     * 容量和补充速度每次调用时传入，配置修改后立即按新参数计算
+     * @param key 键（不能为0）
+     * @param capacity 桶容量（允许的突发次数）
+     * @param refillMillis 补充一个令牌的间隔（毫秒）
+     * @param nowMillis 当前时间（毫秒）
+     * @return 0表示取到令牌；大于0表示桶已空，返回补充出一个令牌还需等待的毫秒数
+     */
+    public long tryAcquire(long key, int capacity, long refillMillis, long nowMillis) {
+        if (capacity <= 0) {
+            return 0;
+        }
+        maybeSweep(nowMillis);
+        Table current = table;
+        int slot = findOrInsert(current, key);
+        if (slot < 0) {
+            resize(current, nowMillis);
+            current = table;
+            slot = findOrInsert(current, key);
+            if (slot < 0) {
+                // 极端情况下仍然没有空位，放行而不是误拒
+                return 0;
+            }
+        }
+        
+        long burstMillis = capacity * refillMillis;
+        while (true) {
+            long emptyAt = current.emptyAt.get(slot);
+            long next = Math.max(emptyAt, nowMillis) + refillMillis;
+            if (next - nowMillis > burstMillis) {
+                return next - nowMillis - burstMillis;
+            }
+            if (current.emptyAt.compareAndSet(slot, emptyAt, next)) {
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * 退还一个令牌（取到令牌后因为其他限制没有执行请求时调用）
+     */
+    public void refund(long key, long refillMillis) {
+        Table current = table;
+        int slot = find(current, key);
+        if (slot >= 0) {
+            current.emptyAt.addAndGet(slot, -refillMillis);
+        }
+    }
+    
+    /**
+     * 当前表中的键数量（含已补满、尚未清理的桶）
+     */
+    public int size() {
+        return table.size.get();
+    }
+    
+    private int find(Table current, long key) {
+        int slot = slotOf(key, current.mask);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long k = current.keys.get(slot);
+            if (k == key) {
+                return slot;
+            }
+            if (k == FREE_KEY) {
+                return -1;
+            }
+            slot = (slot + 1) & current.mask;
+        }
+        return -1;
+    }
+    
+    /**
+     * 查找键所在的槽，不存在时占用探测路径上的第一个空槽
+     * @return 槽号，探测MAX_PROBES次仍没有空槽返回-1
+     */
+    private int findOrInsert(Table current, long key) {
+        int slot = slotOf(key, current.mask);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long k = current.keys.get(slot);
+            if (k == key) {
+                return slot;
+            }
+            if (k == FREE_KEY) {
+                if (current.keys.compareAndSet(slot, FREE_KEY, key)) {
+                    current.size.incrementAndGet();
+                    return slot;
+                }
+                if (current.keys.get(slot) == key) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & current.mask;
+        }
+        return -1;
+    }
+    
+    private void maybeSweep(long nowMillis) {
+        long last = lastSweep.get();
+        if (nowMillis - last >= SWEEP_INTERVAL_MILLIS && lastSweep.compareAndSet(last, nowMillis)) {
+            resize(table, nowMillis);
+        }
+    }
+    
+    /**
+     * 重建表：丢弃已补满的桶，按剩余键数量重新选择容量（表太满时扩容）
+     */
+    private synchronized void resize(Table old, long nowMillis) {
+        if (table != old) {
+            return;
+        }
+        int live = 0;
+        for (int i = 0; i <= old.mask; i++) {
+            if (old.keys.get(i) != FREE_KEY && old.emptyAt.get(i) > nowMillis) {
+                live++;
+            }
+        }
+        Table fresh = new Table(tableSizeFor(Math.max(16, live * 4)));
+        for (int i = 0; i <= old.mask; i++) {
+            long key = old.keys.get(i);
+            long emptyAt = old.emptyAt.get(i);
+            if (key != FREE_KEY && emptyAt > nowMillis) {
+                int slot = findOrInsert(fresh, key);
+                if (slot >= 0) {
+                    fresh.emptyAt.set(slot, emptyAt);
+                }
+            }
+        }
+        table = fresh;
+    }
+    
+    private static int slotOf(long key, int mask) {
+        // 打散连续的QQ号
+        return (int) Hashing.mix64(key) & mask;
+    }
+    
+    private static int tableSizeFor(int n) {
+        int highest = Integer.highestOneBit(n);
+        return highest == n ? n : highest << 1;
+    }
+}
@@ -0,0 +1,551 @@
+package com.xiaofan.qqbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 用户签到数据缓存
+ * 以QQ号为键在内存中保存userdata表，积分查询和签到直接读写内存，
+ * 签到修改由后台线程定期批量写回数据库（write-behind）
+ *
+ * 一致性说明：
+ * 1. 启动时后台预热全表，预热完成前未命中的用户按需从数据库加载
+ * 2. 新用户注册直接写入数据库（只发生一次，并由qq_id唯一约束保证不重复）
+ * 3. 签到修改最多在内存中停留 cache.flush.interval.seconds 秒，关闭时会同步写回
+ */
+public class UserDataCache {
+    private static final Logger logger = LoggerFactory.getLogger(UserDataCache.class);
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int FLUSH_BATCH_SIZE = 500; // 单批写回的最大条数，积压达到该数量时立即触发写回
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final long WARM_UP_RETRY_SECONDS = 30; // 预热失败（如数据库不可用）后的重试间隔
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    
+    private final DataStorage storage;
+    private final long flushIntervalSeconds;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    // QQ号 -> 槽位，数据按槽位存放在基本类型数组中
+    private final LongIntHashMap slotIndex = new LongIntHashMap(INITIAL_CAPACITY);
+    private long[] qqIds = new long[INITIAL_CAPACITY];
+    private int[] points = new int[INITIAL_CAPACITY];
+    private long[] lastCheckInTimes = new long[INITIAL_CAPACITY];
+    private long[] regTimes = new long[INITIAL_CAPACITY];
+    private boolean[] dirtyFlags = new boolean[INITIAL_CAPACITY];
+    private int size = 0;
+    
+    // 等待写回的槽位
+    private int[] dirtySlots = new int[INITIAL_CAPACITY];
+    private int dirtyCount = 0;
+    
+    // 积分排行榜，随缓存中的积分变化增量更新
+    private final Leaderboard leaderboard = new Leaderboard();
+    
+    private volatile boolean warmedUp = false;
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * 构造函数
+     * @param storage 数据存储
+     */
+    public UserDataCache(DataStorage storage) {
+        this.storage = storage;
+        this.flushIntervalSeconds = Math.max(1, ConfigManager.getCacheFlushIntervalSeconds());
+    }
+    
+    /**
+     * 启动缓存：后台预热全表并开始定期写回
+     */
+    public void start() {
+        if (scheduler != null) {
+            return;
+        }
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "UserDataCache");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        scheduler.execute(this::warmUp);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        
+        logger.info("[用户缓存] 已启动，每{}秒批量写回数据库", flushIntervalSeconds);
+    }
+    
+    /**
+     * 停止缓存，并把尚未写回的修改同步写入数据库
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        
+        flush();
+        logger.info("[用户缓存] 已停止");
+    }
+    
+    /**
+     * 检查用户是否存在
+     * @param qqId QQ号
+     * @return 如果存在返回true，否则返回false
+     */
+    public boolean userExists(long qqId) {
+        return findOrLoadSlot(qqId) >= 0;
+    }
+    
+    /**
+     * 获取用户签到信息
+     * @param qqId QQ号
+     * @return 用户签到信息的副本，如果不存在返回null
+     */
+    public DatabaseManager.UserCheckInInfo getUserInfo(long qqId) {
+        if (findOrLoadSlot(qqId) < 0) {
+            return null;
+        }
+        
+        lock.readLock().lock();
+        try {
+            int slot = slotIndex.get(qqId, -1);
+            return slot >= 0 ? toInfo(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 注册新用户（直接写入数据库，成功后放入缓存）
+     * @param qqId QQ号
+     * @return 注册成功返回true，否则返回false
+     */
+    public boolean registerUser(long qqId) {
+        if (!storage.registerUser(qqId)) {
+            return false;
+        }
+        
+        DatabaseManager.UserCheckInInfo info = new DatabaseManager.UserCheckInInfo();
+        info.qqId = qqId;
+        info.qd = 1;
+        info.qdLastTime = LocalDateTime.now();
+        info.regTime = info.qdLastTime;
+        
+        lock.writeLock().lock();
+        try {
+            putIfAbsent(info);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+    
+    /**
+     * 更新签到信息（积分+1，记录签到时间），修改会异步写回数据库
+     * @param qqId QQ号
+     * @return 更新成功返回true，用户不存在返回false
+     */
+    public boolean updateCheckIn(long qqId) {
+        if (findOrLoadSlot(qqId) < 0) {
+            logger.warn("[用户缓存] 签到更新失败，用户不存在，QQ号: {}", qqId);
+            return false;
+        }
+        
+        boolean flushNow;
+        lock.writeLock().lock();
+        try {
+            int slot = slotIndex.get(qqId, -1);
+            if (slot < 0) {
+                return false;
+            }
+            lastCheckInTimes[slot] = toMillis(LocalDateTime.now());
+            flushNow = setPointsLocked(slot, points[slot] + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        if (flushNow) {
+            requestFlush();
+        }
+        
+        logger.debug("[用户缓存] 签到已更新，QQ号: {}", qqId);
+        return true;
+    }
+    
+    /**
+     * 获取用户积分
+     * @param qqId QQ号
+     * @return 积分，用户不存在返回-1
+     */
+    public int getPoints(long qqId) {
+        int slot = findOrLoadSlot(qqId);
+        if (slot < 0) {
+            return -1;
+        }
+        lock.readLock().lock();
+        try {
+            return points[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 增减用户积分，修改会异步写回数据库
+     * @param qqId QQ号
+     * @param delta 积分变化量
+     * @return 成功返回true，用户不存在或积分不足返回false
+     */
+    public boolean addPoints(long qqId, int delta) {
+        int slot = findOrLoadSlot(qqId);
+        if (slot < 0) {
+            return false;
+        }
+        
+        boolean flushNow;
+        lock.writeLock().lock();
+        try {
+            long newPoints = (long) points[slot] + delta;
+            if (newPoints < 0 || newPoints > Integer.MAX_VALUE) {
+                return false;
+            }
+            flushNow = setPointsLocked(slot, (int) newPoints);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        if (flushNow) {
+            requestFlush();
+        }
+        return true;
+    }
+    
+    /**
+     * 在两个用户之间转移积分（在同一把写锁内完成，不会出现只扣不加）
+     * @param fromQqId 转出方QQ号
+     * @param toQqId 转入方QQ号
+     * @param amount 数量（正数）
+     * @return 成功返回true，任一用户不存在或转出方积分不足返回false
+     */
+    public boolean transferPoints(long fromQqId, long toQqId, int amount) {
+        int fromSlot = findOrLoadSlot(fromQqId);
+        int toSlot = findOrLoadSlot(toQqId);
+        if (fromSlot < 0 || toSlot < 0 || amount <= 0 || fromSlot == toSlot) {
+            return false;
+        }
+        
+        boolean flushNow;
+        lock.writeLock().lock();
+        try {
+            if (points[fromSlot] < amount || (long) points[toSlot] + amount > Integer.MAX_VALUE) {
+                return false;
+            }
+            setPointsLocked(fromSlot, points[fromSlot] - amount);
+            flushNow = setPointsLocked(toSlot, points[toSlot] + amount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        if (flushNow) {
+            requestFlush();
+        }
+        return true;
+    }
+    
+    /**
+     * 直接设置用户积分（用于按积分账本校正），修改会异步写回数据库
+     * @return 用户不存在返回false
+     */
+    public boolean setPoints(long qqId, int newPoints) {
+        int slot = findOrLoadSlot(qqId);
+        if (slot < 0) {
+            return false;
+        }
+        
+        boolean flushNow;
+        lock.writeLock().lock();
+        try {
+            flushNow = setPointsLocked(slot, Math.max(0, newPoints));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        if (flushNow) {
+            requestFlush();
+        }
+        return true;
+    }
+    
+    /**
+     * 把所有待写回的修改批量写入数据库
+     * 写回失败的记录会重新标记，下次继续写回
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<DatabaseManager.UserCheckInInfo> pending = drainDirty();
+            if (pending.isEmpty()) {
+                return;
+            }
+            
+            int saved = 0;
+            for (int from = 0; from < pending.size(); from += FLUSH_BATCH_SIZE) {
+                List<DatabaseManager.UserCheckInInfo> batch =
+                        pending.subList(from, Math.min(from + FLUSH_BATCH_SIZE, pending.size()));
+                boolean batchSaved;
+                try {
+                    batchSaved = storage.saveCheckIns(batch);
+                } catch (StorageUnavailableException e) {
+                    logger.warn("[用户缓存] 写回数据库失败: {}", e.getMessage());
+                    batchSaved = false;
+                }
+                if (batchSaved) {
+                    saved += batch.size();
+                } else {
+                    remarkDirty(pending.subList(from, pending.size()));
+                    break;
+                }
+            }
+            
+            if (saved == pending.size()) {
+                logger.debug("[用户缓存] 已写回 {} 条签到数据", saved);
+            } else {
+                logger.warn("[用户缓存] 写回数据库失败，{} 条签到数据将在下次重试", pending.size() - saved);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * 获取缓存中的用户数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 获取积分排行榜（仅在预热完成后包含全部用户）
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+    
+    /**
+     * 是否已完成全表预热
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("[用户缓存] 写回数据库时发生异常", e);
+        }
+    }
+    
+    /**
+     * 从数据库加载全表到内存，完成后未命中即视为用户不存在
+     */
+    private void warmUp() {
+        long startTime = System.currentTimeMillis();
+        List<DatabaseManager.UserCheckInInfo> users;
+        try {
+            users = storage.loadAllUsers();
+        } catch (StorageUnavailableException e) {
+            logger.warn("[用户缓存] 预热失败: {}", e.getMessage());
+            users = null;
+        }
+        if (users == null) {
+            logger.warn("[用户缓存] 预热失败，未命中的用户将按需从数据库加载，{}秒后重试预热", WARM_UP_RETRY_SECONDS);
+            ScheduledExecutorService current = scheduler;
+            if (current != null && !current.isShutdown()) {
+                current.schedule(this::warmUp, WARM_UP_RETRY_SECONDS, TimeUnit.SECONDS);
+            }
+            return;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            for (DatabaseManager.UserCheckInInfo info : users) {
+                putIfAbsent(info);
+            }
+            warmedUp = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        logger.info("[用户缓存] 预热完成，共 {} 个用户，耗时 {}ms", users.size(), System.currentTimeMillis() - startTime);
+    }
+    
+    /**
+     * 查找用户所在槽位，预热完成前未命中时从数据库加载
+     * @return 槽位，如果用户不存在返回-1
+     */
+    private int findOrLoadSlot(long qqId) {
+        lock.readLock().lock();
+        try {
+            int slot = slotIndex.get(qqId, -1);
+            if (slot >= 0 || warmedUp) {
+                return slot;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        DatabaseManager.UserCheckInInfo info = storage.getUserInfo(qqId);
+        if (info == null) {
+            return -1;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            return putIfAbsent(info);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 放入用户数据，如果已存在则保留内存中的数据（内存中的数据总是更新）
+     * 调用方必须持有写锁
+     */
+    private int putIfAbsent(DatabaseManager.UserCheckInInfo info) {
+        int existing = slotIndex.get(info.qqId, -1);
+        if (existing >= 0) {
+            return existing;
+        }
+        
+        if (size == qqIds.length) {
+            int newCapacity = qqIds.length << 1;
+            qqIds = Arrays.copyOf(qqIds, newCapacity);
+            points = Arrays.copyOf(points, newCapacity);
+            lastCheckInTimes = Arrays.copyOf(lastCheckInTimes, newCapacity);
+            regTimes = Arrays.copyOf(regTimes, newCapacity);
+            dirtyFlags = Arrays.copyOf(dirtyFlags, newCapacity);
+        }
+        
+        int slot = size++;
+        qqIds[slot] = info.qqId;
+        points[slot] = info.qd;
+        lastCheckInTimes[slot] = toMillis(info.qdLastTime);
+        regTimes[slot] = toMillis(info.regTime);
+        dirtyFlags[slot] = false;
+        slotIndex.put(info.qqId, slot, -1);
+        leaderboard.update(info.qqId, info.qd);
+        return slot;
+    }
+    
+    /**
+     * 修改积分并标记待写回，同步更新排行榜，调用方必须持有写锁
+     * @return 积压的待写回数量达到单批上限时返回true
+     */
+    private boolean setPointsLocked(int slot, int newPoints) {
+        points[slot] = newPoints;
+        markDirty(slot);
+        leaderboard.update(qqIds[slot], newPoints);
+        return dirtyCount >= FLUSH_BATCH_SIZE;
+    }
+    
+    /**
+     * 在缓存线程中立即触发一次写回
+     */
+    private void requestFlush() {
+        ScheduledExecutorService current = scheduler;
+        if (current != null && !current.isShutdown()) {
+            current.execute(this::flushQuietly);
+        }
+    }
+    
+    /**
+     * 标记槽位待写回，调用方必须持有写锁
+     */
+    private void markDirty(int slot) {
+        if (dirtyFlags[slot]) {
+            return;
+        }
+        dirtyFlags[slot] = true;
+        if (dirtyCount == dirtySlots.length) {
+            dirtySlots = Arrays.copyOf(dirtySlots, dirtySlots.length << 1);
+        }
+        dirtySlots[dirtyCount++] = slot;
+    }
+    
+    /**
+     * 取出所有待写回的数据快照并清除标记
+     */
+    private List<DatabaseManager.UserCheckInInfo> drainDirty() {
+        lock.writeLock().lock();
+        try {
+            List<DatabaseManager.UserCheckInInfo> pending = new ArrayList<>(dirtyCount);
+            for (int i = 0; i < dirtyCount; i++) {
+                int slot = dirtySlots[i];
+                dirtyFlags[slot] = false;
+                pending.add(toInfo(slot));
+            }
+            dirtyCount = 0;
+            return pending;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void remarkDirty(List<DatabaseManager.UserCheckInInfo> failed) {
+        lock.writeLock().lock();
+        try {
+            for (DatabaseManager.UserCheckInInfo info : failed) {
+                int slot = slotIndex.get(info.qqId, -1);
+                if (slot >= 0) {
+                    markDirty(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private DatabaseManager.UserCheckInInfo toInfo(int slot) {
+        DatabaseManager.UserCheckInInfo info = new DatabaseManager.UserCheckInInfo();
+        info.qqId = qqIds[slot];
+        info.qd = points[slot];
+        info.qdLastTime = toLocalDateTime(lastCheckInTimes[slot]);
+        info.regTime = toLocalDateTime(regTimes[slot]);
+        return info;
+    }
+    
+    private static long toMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZONE).toInstant().toEpochMilli() : NO_TIME;
+    }
+    
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return millis != NO_TIME ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE) : null;
+    }
+}
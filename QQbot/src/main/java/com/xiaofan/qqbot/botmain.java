@@ -64,7 +64,7 @@ public class botmain {
         logger.info("NapCat WebSocket地址: {}", QQBot.NAPCAT_WS_URL);
         logger.info("NapCat API地址: {}", QQBot.NAPCAT_API_URL);
         logger.info("监听所有群消息");
-        logger.info("触发词: '{}' -> 回复: '{}'", QQBot.TRIGGER_MESSAGE, QQBot.REPLY_MESSAGE);
+        logger.info("触发词: '{}' -> 回复: '{}'", ConfigManager.current().getTriggerMessage(), ConfigManager.current().getReplyMessage());
         logger.info("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         
         // 初始化并启动机器人
@@ -78,6 +78,7 @@ public class botmain {
                 bot.stop();
             }
             logger.info("服务已关闭");
+            LogConfig.shutdown();
         }));
         
         // 主线程保持运行